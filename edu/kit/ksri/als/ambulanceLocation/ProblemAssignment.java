@@ -8,7 +8,6 @@ import edu.kit.ksri.als.model.Model;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
 
 
 /**
@@ -46,17 +45,32 @@ public class ProblemAssignment {
 	 * @param assignmentMethod
 	 */
 	public ProblemAssignment (AmbulanceGraph graph, Solution solution, int numberOfSamples, int sampleSize, int baseSeed, double alpha, int assignmentMethod) {
+		this(graph, solution, numberOfSamples, sampleSize, baseSeed, alpha, assignmentMethod, 1, false); // legacy sampling method, reproduces earlier samples
+	}
+	
+	/**
+	 * Constructor for creating an assignment problem made up of random demand samples, see above.
+	 * @param graph
+	 * @param solution Set of base locations.
+	 * @param numberOfSamples m
+	 * @param sampleSize n: Number of demand scenarios within one sample.
+	 * @param baseSeed Seed value for the random number stream that generates the seeds for the random number streams of the individual scenarios.
+	 * @param alpha Target service level.
+	 * @param assignmentMethod
+	 * @param samplingMethod 0=alias tables, 1=linear search through the cumulative probabilities (legacy, see {@link Sample})
+	 * @param mergeDuplicateScenarios If true, identical scenarios of a sample are merged and their probabilities added up.
+	 */
+	public ProblemAssignment (AmbulanceGraph graph, Solution solution, int numberOfSamples, int sampleSize, int baseSeed, double alpha, int assignmentMethod, int samplingMethod, boolean mergeDuplicateScenarios) {
 		this.graph = graph;
 		this.solution = solution;
 		this.numberOfSamples = numberOfSamples;
 		this.sampleSize = sampleSize;
 		this.alpha = alpha;
 		this.baseSeed = baseSeed;
-		Random generator = new Random(baseSeed); // random number stream for the generation of seed values for the single samples
-		// create samples
-		for (int m=0; m<numberOfSamples; m++) {
-			samples.add(new Sample(graph, sampleSize, generator.nextInt()));
-		}
+		// create samples (in parallel, each from a random number stream of its own derived from the base seed)
+		SampleFactory factory = new SampleFactory(graph, sampleSize, samplingMethod);
+		factory.mergeDuplicateScenarios = mergeDuplicateScenarios;
+		samples.addAll(factory.createSamples(numberOfSamples, baseSeed));
 		this.assignmentMethod = assignmentMethod;
 	}
 	
@@ -267,11 +281,12 @@ public class ProblemAssignment {
 		for (Sample sample : samples) { // for all samples
 			sampleCounter++;
 			int scenarioCounter = 1;
-			for (int[] demand : sample.d) { // for all scenarios of the sample
+			int[] demand = new int[graph.demands.size()]; // decoded demands, reused for all scenarios
+			for (int w=0; w<sample.getNumberOfScenarios(); w++) { // for all scenarios of the sample
+				sample.getScenario(w, demand);
 				
-				 // calculate sum of demand for the scenario
-				int demandSum = 0;
-				for (int singleDemand : demand) demandSum += singleDemand;
+				 // calculate sum of demand for the scenario (from the packed volumes)
+				int demandSum = sample.d.getTotalDemand(w);
 				
 				// write results
 				// Database fields: graph	m	n	base_seed	sample_id	scenario_id	demand	probability
@@ -6,7 +6,6 @@ import edu.kit.ksri.als.graph.AmbulanceGraph;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Random;
 
 /**
  * Defines a location problem. Based on a graph with base nodes and demand nodes, 
@@ -52,17 +51,31 @@ public class ProblemLocation {
 	 * @param alpha Target service level.
 	 */
 	public ProblemLocation (AmbulanceGraph graph, double beta, int numberOfSamples, int sampleSize, int baseSeed, double alpha) {
+		this(graph, beta, numberOfSamples, sampleSize, baseSeed, alpha, 1, false); // legacy sampling method, reproduces earlier samples
+	}
+	
+	/**
+	 * Constructor for creating a location problem made up of random demand samples, see above.
+	 * @param graph
+	 * @param beta Factor balancing costs for driving with costs for construction. For details, read paper!
+	 * @param numberOfSamples m
+	 * @param sampleSize n : Number of demand scenarios within one sample.
+	 * @param baseSeed Seed value for the random number generator. Same seed always gives the same sequence of random numbers.
+	 * @param alpha Target service level.
+	 * @param samplingMethod 0=alias tables, 1=linear search through the cumulative probabilities (legacy, see {@link Sample})
+	 * @param mergeDuplicateScenarios If true, identical scenarios of a sample are merged and their probabilities added up.
+	 */
+	public ProblemLocation (AmbulanceGraph graph, double beta, int numberOfSamples, int sampleSize, int baseSeed, double alpha, int samplingMethod, boolean mergeDuplicateScenarios) {
 		this.graph = graph;
 		this.beta = beta;
 		this.numberOfSamples = numberOfSamples;
 		this.sampleSize = sampleSize;
 		this.alpha = alpha;
 		this.baseSeed = baseSeed;
-		Random generator = new Random(baseSeed); //generates random seed values for the single samples
-		// create samples
-		for (int m=0; m<numberOfSamples; m++) {
-			samples.add(new Sample(graph, sampleSize, generator.nextInt()));
-		}
+		// create samples (in parallel, each from a random number stream of its own derived from the base seed)
+		SampleFactory factory = new SampleFactory(graph, sampleSize, samplingMethod);
+		factory.mergeDuplicateScenarios = mergeDuplicateScenarios;
+		samples.addAll(factory.createSamples(numberOfSamples, baseSeed));
 	}
 	
 	
@@ -148,11 +161,12 @@ public class ProblemLocation {
 		for (Sample sample : samples) {
 			sampleCounter++;
 			int scenarioCounter = 1;
-			for (int[] demand : sample.d) { // for all scenarios of the sample
+			int[] demand = new int[graph.demands.size()]; // decoded demands, reused for all scenarios
+			for (int w=0; w<sample.getNumberOfScenarios(); w++) { // for all scenarios of the sample
+				sample.getScenario(w, demand);
 				
-				 // calculate total sum of demand for this scenario
-				int demandSum = 0;
-				for (int singleDemand : demand) demandSum += singleDemand;
+				 // calculate total sum of demand for this scenario (from the packed volumes)
+				int demandSum = sample.d.getTotalDemand(w);
 				
 				// write results
 				// Database fields: graph	m	n	base_seed	sample_id	scenario_id	demand	probability
@@ -1,13 +1,16 @@
 package edu.kit.ksri.als.ambulanceLocation;
 
 import edu.kit.ksri.als.graph.AmbulanceGraph;
-import edu.kit.ksri.als.graph.Base;
+import edu.kit.ksri.als.graph.CoverageIndex;
 import edu.kit.ksri.als.graph.Demand;
+import edu.kit.ksri.als.graph.DemandSampler;
+import edu.kit.ksri.als.graph.DrivingTimes;
 //import edu.kit.ksri.als.model.ModelALWUD;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Data type that contains all information required to execute the {@link ModelALWUD} or the assignment models.
@@ -17,14 +20,17 @@ import java.util.Random;
  * The naming of the variables in this class concurs with the paper.
  */
 public class Sample {
-	public double[] f;				//costs per base
-	public double[] g;				//costs per ambulance
-	public ArrayList<HashSet<Integer>> demandsCoveredByBase = new ArrayList<HashSet<Integer>>();	//I_j
-	public ArrayList<HashSet<Integer>> basesCoveringDemand  = new ArrayList<HashSet<Integer>>();	//J_i
-	public int[][] d;				//demands per node and scenario
+	public SampleContext context;	//data shared by all samples of the graph (must not be changed)
+	public double[] f;				//costs per base (shared)
+	public double[] g;				//costs per ambulance (shared)
+	public int[][] demandsCoveredByBase;	//I_j (shared)
+	public int[][] basesCoveringDemand;		//J_i (shared)
+	public CoverageIndex coverage;	//I_j and J_i as bitsets (shared)
+	public ScenarioStore d;			//demands per node and scenario (bit-packed, read with getDemand and getScenario)
 	public double[] pi; 			//probability per scenario
+	public int[] multiplicity;		//number of generated scenarios merged into each scenario (null if duplicates have not been merged)
 	Solution solution = null;
-	public double[][] drivingTimes;
+	public DrivingTimes drivingTimes;	//view on the driving times of the graph (shared)
 	
 	//auxiliary variables for creating a complete, non-random sample
 	int scenario;
@@ -32,38 +38,77 @@ public class Sample {
 	int numberOfScenarios;
 	
 	/**
-	 * Creates a random sample of n demand scenarios.
+	 * Creates a random sample of n demand scenarios. The demands are drawn by linear search through the cumulative probabilities (legacy),
+	 * so the same seed gives the same sample as before; use sampling method 0 for the alias tables of the graph ({@link DemandSampler}).
 	 * @param graph
 	 * @param sampleSize n: Number of scenarios.
 	 * @param seedValue Seed value for the random number generator. Same seed always gives the same sequence of random numbers.
-	 * @param alpha Target service level.
 	 */
 	public Sample (AmbulanceGraph graph, int sampleSize, int seedValue) {
+		this(graph, sampleSize, seedValue, 1);
+	}
+	
+	/**
+	 * Creates a random sample of n demand scenarios.
+	 * Both sampling methods draw one random number per demand and scenario, but map it to different demand volumes,
+	 * so the same seed gives different (equally distributed) samples with both methods.
+	 * @param graph
+	 * @param sampleSize n: Number of scenarios.
+	 * @param seedValue Seed value for the random number generator. Same seed always gives the same sequence of random numbers.
+	 * @param samplingMethod 0=alias tables (constant time per demand), 1=linear search through the cumulative probabilities (legacy, reproduces earlier samples)
+	 */
+	public Sample (AmbulanceGraph graph, int sampleSize, int seedValue, int samplingMethod) {
 		initializeSample(graph); // initialize standard parameters of a sample
-		
-		d = new int[sampleSize][graph.demands.size()]; // demand scenarios
+		generateScenarios(graph, sampleSize, new Random(seedValue), null, samplingMethod);
+	}
+	
+	/**
+	 * Creates a random sample of n demand scenarios from a random number stream of its own (see {@link SampleFactory}).
+	 * @param graph
+	 * @param sampleSize n: Number of scenarios.
+	 * @param generator Random number stream used only by this sample.
+	 * @param samplingMethod 0=alias tables (constant time per demand), 1=linear search through the cumulative probabilities
+	 */
+	public Sample (AmbulanceGraph graph, int sampleSize, SplittableRandom generator, int samplingMethod) {
+		initializeSample(graph); // initialize standard parameters of a sample
+		generateScenarios(graph, sampleSize, null, generator, samplingMethod);
+	}
+	
+	/**
+	 * Draws the demands of all scenarios, one random number per demand and scenario from either of the random number streams.
+	 */
+	void generateScenarios(AmbulanceGraph graph, int sampleSize, Random generator, SplittableRandom splittableGenerator, int samplingMethod) {
+		int numberOfDemands = graph.demands.size();
+		d = ScenarioStore.forDemands(sampleSize, graph.demands); // demand scenarios
 		pi = new double[sampleSize]; // demand scenario probabilities
+		int[] currentDemands = new int[numberOfDemands]; // demands of the current scenario before packing
 		
-		Random generator = new Random(seedValue); //random number stream for generating demands
+		DemandSampler sampler = (samplingMethod == 0) ? graph.getDemandSampler() : null;
 		
 		// generate demands for all scenarios of the sample
 		for(int n=0; n<sampleSize; n++) { //for all scenarios of the sample
+			Arrays.fill(currentDemands, 0); // no demand if the cumulative probabilities are not reached
 			
-			for (int i=0; i<graph.demands.size(); i++) { // for all demand nodes
-				double helpSum = 0.0; //cumulative probability of demands
-				double random = generator.nextDouble(); //generate probability (random number between 0 and 1)
+			for (int i=0; i<numberOfDemands; i++) { // for all demand nodes
+				double random = (generator != null) ? generator.nextDouble() : splittableGenerator.nextDouble(); //generate probability (random number between 0 and 1)
+				if (sampler != null) {
+					currentDemands[i] = sampler.sample(i, random); // set demand for scenario n at node i
+					continue;
+				}
 				
-				for (int demand=0; demand<graph.demands.get(i).probabilities.length; demand++) { //iterate through all possible demand probabilities of the node
-					helpSum += graph.demands.get(i).probabilities[demand]; // add probability of the current demand
+				double[] probabilities = graph.demands.get(i).probabilities;
+				double helpSum = 0.0; //cumulative probability of demands
+				for (int demand=0; demand<probabilities.length; demand++) { //iterate through all possible demand probabilities of the node
+					helpSum += probabilities[demand]; // add probability of the current demand
 					if (random<helpSum) { //find the demand that is associated to the cumulative probability
-						d[n][i] = demand; // set demand for scenario n at node i
+						currentDemands[i] = demand; // set demand for scenario n at node i
 						break; //break loop since there is no need to iterate through higher demands
 					}
 				}				
 			}
+			d.setScenario(n, currentDemands);
 			pi[n] = 1.0/(double)sampleSize; // uniform distribution: every generated scenario has the same probability
 		}
-		
 	}
 	
 	/**
@@ -79,7 +124,7 @@ public class Sample {
 
 		numberOfScenarios = 1;
 		for (Demand demand : graph.demands) numberOfScenarios *= demand.probabilities.length; //calculate #scenarios
-		d = new int[numberOfScenarios][graph.demands.size()]; // create array for all demand scenarios
+		d = ScenarioStore.forDemands(numberOfScenarios, graph.demands); // create store for all demand scenarios
 		pi = new double[numberOfScenarios]; // create array for all demand scenario probabilities
 		
 		scenario = 0;
@@ -90,30 +135,17 @@ public class Sample {
 	
 	/**
 	 * Initialize parameters that are equal for both random and non-random sample.
+	 * They are taken from the {@link SampleContext} of the graph, which is shared by all samples.
 	 * @param graph
 	 */
 	public void initializeSample(AmbulanceGraph graph) {
-		f = new double[graph.bases.size()];
-		g = new double[graph.bases.size()];
-		this.drivingTimes = graph.drivingTimes;
-		for (int j=0; j<graph.bases.size(); j++) {
-			f[j] = graph.bases.get(j).costs;
-			g[j] = graph.bases.get(j).costsPerAmbulance;
-			
-			HashSet<Integer> helpSet = new HashSet<Integer>(); //auxiliary variable to process demands covered by base j
-			for (Demand demand : graph.bases.get(j).coveredDemands) {
-				helpSet.add(graph.demands.indexOf(demand)); //add index of the demand (not index of the node)
-			}
-			demandsCoveredByBase.add(helpSet);
-		}
-		
-		for (int i=0; i<graph.demands.size(); i++) { //auxiliary variable to process bases covering demand i
-			HashSet<Integer> helpSet = new HashSet<Integer>();
-			for (Base base : graph.demands.get(i).basesCovering) {
-				helpSet.add(graph.bases.indexOf(base)); //add index of the base (not index of the node)
-			}
-			basesCoveringDemand.add(helpSet);
-		}
+		context = SampleContext.of(graph);
+		f = context.f;
+		g = context.g;
+		coverage = context.coverage;
+		demandsCoveredByBase = context.demandsCoveredByBase;
+		basesCoveringDemand = context.basesCoveringDemand;
+		drivingTimes = context.drivingTimes;
 	}
 	
 
@@ -125,7 +157,7 @@ public class Sample {
 	 */
 	public void generatePermutations(int depth, double currentProb, int[] currentDemands) {
 	    if(depth == demands.size()) { //if all demand nodes have been iterated
-	    	d[scenario] = currentDemands; // save demand scenario
+	    	d.setScenario(scenario, currentDemands); // save demand scenario (packing copies the demands)
 	    	pi[scenario++] = currentProb; // save probability of the demand scenario	
 	    	
 	    	// print status
@@ -136,8 +168,74 @@ public class Sample {
 	    
 	    for(int i = 0; i < demands.get(depth).probabilities.length; i++) { // for all possible demands of the current node
 	    	currentDemands[depth] = i; // save demand for current node
-	    	generatePermutations(depth + 1, currentProb*demands.get(depth).probabilities[i], currentDemands.clone()); // generate permutations for next node
+	    	generatePermutations(depth + 1, currentProb*demands.get(depth).probabilities[i], currentDemands); // generate permutations for next node
 	    }	    
 	}
+	
+	/**
+	 * Merges scenarios with identical demands into one scenario whose probability is the sum of their probabilities.
+	 * The remaining scenarios keep the order of their first occurrence; multiplicity holds the number of merged scenarios.
+	 * Models and evaluations then contain every distinct scenario only once, with the same expected values.
+	 * @return Number of scenarios removed.
+	 */
+	public int mergeDuplicateScenarios() {
+		int numberOfScenarios = d.numberOfScenarios;
+		int capacity = Integer.highestOneBit(Math.max(1, 2*numberOfScenarios-1)) << 1; // power of 2, at most half full
+		int[] table = new int[capacity]; // position of the scenario in the merged arrays + 1, 0 for empty slots
+		int[] hashes = new int[numberOfScenarios]; // hash of the demands per merged scenario
+		ScenarioStore mergedDemands = d.createEmpty(numberOfScenarios);
+		double[] mergedProbabilities = new double[numberOfScenarios];
+		int[] mergedMultiplicity = new int[numberOfScenarios];
+		int numberOfMergedScenarios = 0;
+		
+		for (int w=0; w<numberOfScenarios; w++) { // for all scenarios
+			int hash = d.hashScenario(w);
+			int slot = (hash ^ (hash >>> 16)) & (capacity-1);
+			while (table[slot] != 0) { // linear probing
+				int other = table[slot]-1;
+				if (hashes[other] == hash && mergedDemands.equalScenarios(other, d, w)) break;
+				slot = (slot+1) & (capacity-1);
+			}
+			if (table[slot] == 0) { // first occurrence of these demands
+				table[slot] = numberOfMergedScenarios+1;
+				hashes[numberOfMergedScenarios] = hash;
+				mergedDemands.copyScenario(numberOfMergedScenarios++, d, w);
+			}
+			int merged = table[slot]-1;
+			mergedProbabilities[merged] += pi[w];
+			mergedMultiplicity[merged] += (multiplicity == null) ? 1 : multiplicity[w];
+		}
+		
+		d = mergedDemands.copyOf(numberOfMergedScenarios);
+		pi = Arrays.copyOf(mergedProbabilities, numberOfMergedScenarios);
+		multiplicity = Arrays.copyOf(mergedMultiplicity, numberOfMergedScenarios);
+		return numberOfScenarios-numberOfMergedScenarios;
+	}
+	
+	/**
+	 * @return Number of demand scenarios of the sample.
+	 */
+	public int getNumberOfScenarios() {
+		return d.numberOfScenarios;
+	}
+	
+	/**
+	 * @param scenario Index of the scenario (0-based).
+	 * @param demand Index of the demand (0-based).
+	 * @return Demand volume of the demand in the scenario.
+	 */
+	public int getDemand(int scenario, int demand) {
+		return d.get(scenario, demand);
+	}
+	
+	/**
+	 * Decodes the demands of a scenario.
+	 * @param scenario Index of the scenario (0-based).
+	 * @param target Array of at least one entry per demand; reused for all scenarios to avoid allocations.
+	 * @return The target array holding the demand volume per demand.
+	 */
+	public int[] getScenario(int scenario, int[] target) {
+		return d.getScenario(scenario, target);
+	}
 
 }
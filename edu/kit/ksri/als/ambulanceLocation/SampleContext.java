@@ -0,0 +1,68 @@
+package edu.kit.ksri.als.ambulanceLocation;
+
+import edu.kit.ksri.als.graph.AmbulanceGraph;
+import edu.kit.ksri.als.graph.CoverageIndex;
+import edu.kit.ksri.als.graph.DrivingTimes;
+
+import java.util.WeakHashMap;
+
+/**
+ * Data of a graph that is the same for all its samples: costs of the bases, coverage and driving times.
+ * The context is created once per graph and time limit (maxTime) and shared by all {@link Sample}s, which only add their demand scenarios.
+ * A new context is created when the coverage or the driving times of the graph have changed since (see {@link AmbulanceGraph#getModificationCount()}),
+ * for example after a change of maxTime or of an edge.
+ *
+ * The coverage is copied, so samples keep the coverage they were created with; its arrays are shared and must not be changed.
+ * drivingTimes is a view on the rows of the graph, which are repaired in place when an edge changes.
+ */
+public final class SampleContext {
+
+	public final double maxTime; // time limit the coverage belongs to
+	public final int modificationCount; // modification count of the graph the context was created at
+	public final double[] f; // costs per base
+	public final double[] g; // costs per ambulance
+	public final CoverageIndex coverage; // I_j and J_i as bitsets (copy of the coverage of the graph)
+	public final int[][] demandsCoveredByBase; // I_j: indices of the demands covered by base j in increasing order
+	public final int[][] basesCoveringDemand; // J_i: indices of the bases covering demand i in increasing order
+	public final DrivingTimes drivingTimes; // view on the driving times of the graph
+
+	static final WeakHashMap<AmbulanceGraph,SampleContext> contexts = new WeakHashMap<AmbulanceGraph,SampleContext>(); // current context per graph
+
+	/**
+	 * Returns the context of a graph for its current maxTime and coverage; it is created only if there is none yet.
+	 * @param graph Graph whose coverage has been calculated.
+	 * @return The shared context.
+	 */
+	public static synchronized SampleContext of(AmbulanceGraph graph) {
+		SampleContext context = contexts.get(graph);
+		if (context == null || context.modificationCount != graph.getModificationCount() || context.maxTime != graph.getMaxTime()
+				|| context.drivingTimes != graph.getDrivingTimes() || context.f.length != graph.bases.size()) {
+			context = new SampleContext(graph);
+			contexts.put(graph, context);
+		}
+		return context;
+	}
+
+	/**
+	 * Copies the costs and converts the coverage into arrays of indices.
+	 * @param graph
+	 */
+	SampleContext(AmbulanceGraph graph) {
+		maxTime = graph.getMaxTime();
+		modificationCount = graph.getModificationCount();
+		f = new double[graph.bases.size()];
+		g = new double[graph.bases.size()];
+		for (int j=0; j<graph.bases.size(); j++) {
+			f[j] = graph.bases.get(j).costs;
+			g[j] = graph.bases.get(j).costsPerAmbulance;
+		}
+
+		// demands covered by base j and bases covering demand i (indices of bases and demands, not indices of the nodes)
+		coverage = new CoverageIndex(graph.coverage); // copy: the coverage of the graph changes in place when an edge changes
+		demandsCoveredByBase = new int[coverage.numberOfBases][];
+		for (int j=0; j<coverage.numberOfBases; j++) demandsCoveredByBase[j] = coverage.getDemandsCoveredByBase(j);
+		basesCoveringDemand = new int[coverage.numberOfDemands][];
+		for (int i=0; i<coverage.numberOfDemands; i++) basesCoveringDemand[i] = coverage.getBasesCoveringDemand(i);
+		drivingTimes = graph.getDrivingTimes();
+	}
+}
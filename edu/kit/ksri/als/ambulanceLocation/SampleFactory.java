@@ -0,0 +1,116 @@
+package edu.kit.ksri.als.ambulanceLocation;
+
+import edu.kit.ksri.als.graph.AmbulanceGraph;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Creates the m random samples of a problem on a pool of worker threads.
+ *
+ * Every sample draws from a random number stream of its own. The streams are derived from the base seed on the calling thread
+ * before any sample is generated, so the samples are bit-identical for every number of threads:
+ * with the alias tables (sampling method 0), the streams are split off a {@link SplittableRandom} seeded with the base seed;
+ * with the legacy sampling method 1, every sample is seeded with the next int of a {@link Random} seeded with the base seed, as before.
+ */
+public class SampleFactory {
+
+	AmbulanceGraph graph;
+	int sampleSize; // n: number of scenarios per sample
+	int samplingMethod; // 0=alias tables, 1=linear search through the cumulative probabilities (legacy)
+	int parallelism; // number of worker threads
+	public boolean mergeDuplicateScenarios = false; // merge the identical scenarios of every sample, see Sample#mergeDuplicateScenarios()
+
+	/**
+	 * Creates a factory using one worker thread per available processor.
+	 * @param graph
+	 * @param sampleSize n: Number of scenarios per sample.
+	 * @param samplingMethod 0=alias tables, 1=linear search through the cumulative probabilities (legacy, see {@link Sample})
+	 */
+	public SampleFactory(AmbulanceGraph graph, int sampleSize, int samplingMethod) {
+		this(graph, sampleSize, samplingMethod, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a factory.
+	 * @param graph
+	 * @param sampleSize n: Number of scenarios per sample.
+	 * @param samplingMethod 0=alias tables, 1=linear search through the cumulative probabilities (legacy, see {@link Sample})
+	 * @param parallelism Number of worker threads.
+	 */
+	public SampleFactory(AmbulanceGraph graph, int sampleSize, int samplingMethod, int parallelism) {
+		this.graph = graph;
+		this.sampleSize = sampleSize;
+		this.samplingMethod = samplingMethod;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Creates random samples.
+	 * @param numberOfSamples m
+	 * @param baseSeed Seed value from which the random number streams of all samples are derived.
+	 * @return The samples in the order of their streams.
+	 */
+	public ArrayList<Sample> createSamples(int numberOfSamples, int baseSeed) {
+		// derive the streams of all samples in a fixed order
+		ArrayList<SampleTask> tasks = new ArrayList<SampleTask>();
+		SplittableRandom splittableGenerator = new SplittableRandom(baseSeed);
+		Random generator = new Random(baseSeed); //generates random seed values for the single samples (legacy)
+		for (int m=0; m<numberOfSamples; m++) {
+			if (samplingMethod == 0) tasks.add(new SampleTask(splittableGenerator.split()));
+			else tasks.add(new SampleTask(generator.nextInt()));
+		}
+
+		// prepare the shared data of the graph before the workers read it
+		graph.getDemandSampler();
+		SampleContext.of(graph);
+
+		ArrayList<Sample> samples = new ArrayList<Sample>();
+		if (parallelism == 1 || numberOfSamples <= 1) {
+			for (SampleTask task : tasks) samples.add(task.call());
+			return samples;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, numberOfSamples));
+		try {
+			for (Future<Sample> result : pool.invokeAll(tasks)) samples.add(result.get());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Sample generation interrupted.", e);
+		} finally {
+			pool.shutdownNow();
+		}
+		return samples;
+	}
+
+	/**
+	 * Generates one sample from its own random number stream.
+	 */
+	class SampleTask implements Callable<Sample> {
+		SplittableRandom generator; // stream split off the base stream (sampling method 0)
+		int seedValue; // seed of the stream (legacy sampling method)
+
+		SampleTask(SplittableRandom generator) {
+			this.generator = generator;
+		}
+
+		SampleTask(int seedValue) {
+			this.seedValue = seedValue;
+		}
+
+		@Override
+		public Sample call() {
+			Sample sample = (generator != null) ? new Sample(graph, sampleSize, generator, samplingMethod) : new Sample(graph, sampleSize, seedValue, samplingMethod);
+			if (mergeDuplicateScenarios) sample.mergeDuplicateScenarios();
+			return sample;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package edu.kit.ksri.als.ambulanceLocation;
+
+import edu.kit.ksri.als.graph.Demand;
+
+import java.util.List;
+
+/**
+ * Compact storage of the demand scenarios of a sample: the demand volumes of all scenarios are bit-packed into one flat long array.
+ * Every volume takes as many bits as the largest volume of the graph needs (one bit for demands of 0 or 1),
+ * instead of the 32 bits (plus one array object per scenario) of an int[][].
+ *
+ * A word holds 64/bitsPerValue volumes and no volume spans two words, so a volume is read with one shift and one mask.
+ * Every scenario starts at a new word (wordsPerScenario words per scenario); scenarios are therefore compared and hashed word by word.
+ */
+public class ScenarioStore {
+
+	public final int numberOfScenarios;
+	public final int numberOfDemands;
+	final int bitsPerValue; // bits per demand volume
+	final int valuesPerWord; // demand volumes per long
+	final int wordsPerScenario; // longs per scenario
+	final long mask; // lowest bitsPerValue bits
+	final long[] words; // packed volumes: scenario w, demand i is in words[w*wordsPerScenario + i/valuesPerWord]
+
+	/**
+	 * Creates a store whose volumes are all 0.
+	 * @param numberOfScenarios
+	 * @param numberOfDemands
+	 * @param maxValue Largest demand volume that will be stored.
+	 */
+	public ScenarioStore(int numberOfScenarios, int numberOfDemands, int maxValue) {
+		this(numberOfScenarios, numberOfDemands, getBitsPerValue(maxValue), null);
+	}
+
+	ScenarioStore(int numberOfScenarios, int numberOfDemands, int bitsPerValue, long[] words) {
+		this.numberOfScenarios = numberOfScenarios;
+		this.numberOfDemands = numberOfDemands;
+		this.bitsPerValue = bitsPerValue;
+		valuesPerWord = 64/bitsPerValue;
+		wordsPerScenario = (numberOfDemands+valuesPerWord-1)/valuesPerWord;
+		mask = (bitsPerValue == 64) ? -1L : (1L << bitsPerValue)-1;
+		long size = (long) numberOfScenarios*wordsPerScenario;
+		if (size > Integer.MAX_VALUE-8) throw new IllegalArgumentException("Too many scenarios for one store: " + numberOfScenarios + " x " + numberOfDemands + " demands.");
+		this.words = (words != null) ? words : new long[(int) size];
+	}
+
+	/**
+	 * Creates a store for the scenarios of a graph, using as many bits per volume as its largest possible demand needs.
+	 * @param numberOfScenarios
+	 * @param demands Demands of the graph.
+	 * @return Empty store.
+	 */
+	public static ScenarioStore forDemands(int numberOfScenarios, List<Demand> demands) {
+		int maxValue = 0;
+		for (Demand demand : demands) maxValue = Math.max(maxValue, demand.probabilities.length-1);
+		return new ScenarioStore(numberOfScenarios, demands.size(), maxValue);
+	}
+
+	/**
+	 * @param maxValue Largest value to be stored.
+	 * @return Number of bits needed for the values 0 to maxValue (at least 1).
+	 */
+	public static int getBitsPerValue(int maxValue) {
+		if (maxValue < 0) throw new IllegalArgumentException("Negative demand volume: " + maxValue);
+		return Math.max(1, 32-Integer.numberOfLeadingZeros(maxValue));
+	}
+
+	/**
+	 * @param scenario Index of the scenario (0-based).
+	 * @param demand Index of the demand (0-based).
+	 * @return Demand volume.
+	 */
+	public int get(int scenario, int demand) {
+		long word = words[scenario*wordsPerScenario + demand/valuesPerWord];
+		return (int) ((word >>> ((demand%valuesPerWord)*bitsPerValue)) & mask);
+	}
+
+	/**
+	 * Sets a single demand volume.
+	 * @param scenario Index of the scenario (0-based).
+	 * @param demand Index of the demand (0-based).
+	 * @param value Demand volume between 0 and the largest volume of the store.
+	 */
+	public void set(int scenario, int demand, int value) {
+		if ((value & ~mask) != 0) throw new IllegalArgumentException("Demand volume " + value + " does not fit into " + bitsPerValue + " bits.");
+		int position = scenario*wordsPerScenario + demand/valuesPerWord;
+		int shift = (demand%valuesPerWord)*bitsPerValue;
+		words[position] = (words[position] & ~(mask << shift)) | ((long) value << shift);
+	}
+
+	/**
+	 * Decodes all demand volumes of a scenario.
+	 * @param scenario Index of the scenario (0-based).
+	 * @param target Array of at least numberOfDemands entries the volumes are written to.
+	 * @return The target array.
+	 */
+	public int[] getScenario(int scenario, int[] target) {
+		int position = scenario*wordsPerScenario;
+		int i = 0;
+		while (i < numberOfDemands) { // word by word
+			long word = words[position++];
+			int end = Math.min(numberOfDemands, i+valuesPerWord);
+			for (; i<end; i++) {
+				target[i] = (int) (word & mask);
+				word >>>= bitsPerValue;
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Encodes all demand volumes of a scenario.
+	 * @param scenario Index of the scenario (0-based).
+	 * @param values Demand volumes of the numberOfDemands demands.
+	 */
+	public void setScenario(int scenario, int[] values) {
+		int position = scenario*wordsPerScenario;
+		int i = 0;
+		while (i < numberOfDemands) { // word by word
+			int end = Math.min(numberOfDemands, i+valuesPerWord);
+			long word = 0L;
+			for (int shift=0; i<end; i++, shift+=bitsPerValue) {
+				if ((values[i] & ~mask) != 0) throw new IllegalArgumentException("Demand volume " + values[i] + " does not fit into " + bitsPerValue + " bits.");
+				word |= (long) values[i] << shift;
+			}
+			words[position++] = word;
+		}
+	}
+
+	/**
+	 * @param scenario Index of the scenario (0-based).
+	 * @return Sum of the demand volumes of the scenario.
+	 */
+	public int getTotalDemand(int scenario) {
+		int position = scenario*wordsPerScenario;
+		int sum = 0;
+		if (bitsPerValue == 1) { // count the set bits
+			for (int k=0; k<wordsPerScenario; k++) sum += Long.bitCount(words[position+k]);
+			return sum;
+		}
+		for (int i=0; i<numberOfDemands; i++) sum += get(scenario, i);
+		return sum;
+	}
+
+	/**
+	 * @param scenario Index of the scenario (0-based).
+	 * @return Hash code of the demand volumes of the scenario, computed from the packed words.
+	 */
+	public int hashScenario(int scenario) {
+		int position = scenario*wordsPerScenario;
+		long hash = 1;
+		for (int k=0; k<wordsPerScenario; k++) hash = 31*hash + words[position+k];
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * @param scenario Index of a scenario of this store.
+	 * @param other Store with the same layout (numberOfDemands and bits per value).
+	 * @param otherScenario Index of a scenario of the other store.
+	 * @return True if both scenarios have the same demand volumes.
+	 */
+	public boolean equalScenarios(int scenario, ScenarioStore other, int otherScenario) {
+		int position = scenario*wordsPerScenario;
+		int otherPosition = otherScenario*other.wordsPerScenario;
+		for (int k=0; k<wordsPerScenario; k++) {
+			if (words[position+k] != other.words[otherPosition+k]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Copies a scenario from a store with the same layout.
+	 * @param scenario Index of the scenario in this store.
+	 * @param source Store with the same layout (numberOfDemands and bits per value).
+	 * @param sourceScenario Index of the scenario in the source store.
+	 */
+	public void copyScenario(int scenario, ScenarioStore source, int sourceScenario) {
+		System.arraycopy(source.words, sourceScenario*source.wordsPerScenario, words, scenario*wordsPerScenario, wordsPerScenario);
+	}
+
+	/**
+	 * @param numberOfScenarios
+	 * @return Empty store with the same layout for the given number of scenarios.
+	 */
+	public ScenarioStore createEmpty(int numberOfScenarios) {
+		return new ScenarioStore(numberOfScenarios, numberOfDemands, bitsPerValue, null);
+	}
+
+	/**
+	 * @param numberOfScenarios
+	 * @return Store holding the first numberOfScenarios scenarios of this store.
+	 */
+	public ScenarioStore copyOf(int numberOfScenarios) {
+		long[] copy = new long[numberOfScenarios*wordsPerScenario];
+		System.arraycopy(words, 0, copy, 0, copy.length);
+		return new ScenarioStore(numberOfScenarios, numberOfDemands, bitsPerValue, copy);
+	}
+}
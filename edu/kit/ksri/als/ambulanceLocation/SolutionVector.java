@@ -0,0 +1,87 @@
+package edu.kit.ksri.als.ambulanceLocation;
+
+import java.util.Arrays;
+
+/**
+ * Number of ambulances per base (z) of a location solution, for example an imported solution that is available for the assignment.
+ * Two vectors are equal if they have the same content; the hash code is calculated once, so vectors can be deduplicated in hash sets.
+ * The text representation is the one of Arrays.toString, for example "[0, 2, 1]".
+ */
+public class SolutionVector {
+
+	public final int[] z; // number of ambulances per base (must not be changed)
+	final int hashCode;
+
+	/**
+	 * @param z Number of ambulances stationed at base j.
+	 */
+	public SolutionVector(int[] z) {
+		this.z = z;
+		this.hashCode = Arrays.hashCode(z);
+	}
+
+	/**
+	 * Parses a list of integers separated by "," with optional brackets, for example "[0, 2, 1]" or "0,2,1". White space is ignored.
+	 * @param text
+	 * @return The vector.
+	 * @throws NumberFormatException If the text contains anything else or an entry is empty.
+	 */
+	public static SolutionVector parse(CharSequence text) {
+		int length = text.length();
+		int numberOfValues = 1;
+		for (int i=0; i<length; i++) if (text.charAt(i) == ',') numberOfValues++;
+
+		int[] z = new int[numberOfValues];
+		int value = 0;
+		long number = 0;
+		boolean negative = false;
+		boolean digits = false; // current entry contains a digit
+		for (int i=0; i<=length; i++) {
+			char c = (i < length) ? text.charAt(i) : ','; // the end of the text ends the last entry
+			if (c >= '0' && c <= '9') {
+				number = 10*number + (c-'0');
+				if (number > Integer.MAX_VALUE) throw new NumberFormatException("Number too large in \""+text+"\".");
+				digits = true;
+			}
+			else if (c == ',') {
+				if (!digits) throw new NumberFormatException("Empty entry in \""+text+"\".");
+				z[value++] = (int) (negative ? -number : number);
+				number = 0;
+				negative = false;
+				digits = false;
+			}
+			else if (c == '-' && !digits && !negative) {
+				negative = true;
+			}
+			else if (c != '[' && c != ']' && !Character.isWhitespace(c)) {
+				throw new NumberFormatException("Unexpected character '"+c+"' in \""+text+"\".");
+			}
+		}
+		return new SolutionVector(z);
+	}
+
+	/**
+	 * @return Solution with the numbers of ambulances only (as needed for the assignment).
+	 */
+	public Solution toSolution() {
+		return new Solution(new int[0], new int[0][0][0], z, 0, 0, 0); //only z relevant
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) return true;
+		if (!(other instanceof SolutionVector)) return false;
+		SolutionVector vector = (SolutionVector) other;
+		return hashCode == vector.hashCode && Arrays.equals(z, vector.z);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(z);
+	}
+}
@@ -0,0 +1,157 @@
+package edu.kit.ksri.als.dataExchange;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads the cell values of a CSV or TSV file (UTF-8) with the same columns as the sheets of an Excel import file.
+ *
+ * The file is memory-mapped with a {@link FileChannel} in windows of WINDOW_SIZE bytes, and the bytes are copied directly into a {@link SheetRows}:
+ * no String is created per cell, and the rows are indexed while they are read. The rows take about as much heap as the file
+ * (its UTF-8 bytes plus a few bytes per cell and row), so files larger than 2 GB can be read if the heap is large enough.
+ * The first line is the title row. It also determines the delimiter: tab for .tsv files, otherwise the most frequent of tab, "," and ";" in the title row.
+ * Values may be enclosed in double quotes (as in RFC 4180), which is required if they contain the delimiter, for example
+ * "1,5;-;2" in a file delimited by ",". A double quote that does not start a value is an ordinary character.
+ * Lines end with "\n", "\r\n" or "\r"; empty lines and lines without any value (for example ",,,,") are skipped.
+ */
+class DelimitedTextReader {
+
+	static final long WINDOW_SIZE = 1L << 28; // bytes mapped at once (256 MB)
+
+	FileChannel channel;
+	long size; // size of the file in bytes
+	MappedByteBuffer window;
+	long windowStart = 0; // position of the window in the file
+
+	byte delimiter;
+	byte[] value = new byte[256]; // bytes of the current cell
+	int valueLength = 0;
+
+	/**
+	 * Reads all rows of a file except the title row.
+	 * @param file CSV or TSV file.
+	 * @param graphNameColumn Column with the graph name by which the rows are indexed, 0-based.
+	 * @return Cell values of the rows.
+	 * @throws IOException
+	 */
+	static SheetRows read(File file, int graphNameColumn) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			DelimitedTextReader reader = new DelimitedTextReader();
+			reader.channel = randomAccessFile.getChannel();
+			reader.size = reader.channel.size();
+			reader.delimiter = file.getName().toLowerCase().endsWith(".tsv") ? (byte) '\t' : reader.detectDelimiter();
+			return reader.readRows(new SheetRows(graphNameColumn));
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * @return The most frequent of tab, "," and ";" in the title row (outside of quotes), "," if there is none.
+	 * @throws IOException
+	 */
+	byte detectDelimiter() throws IOException {
+		int tabs = 0, commas = 0, semicolons = 0;
+		boolean quoted = false;
+		byte previous = ',';
+		for (long position=0; position<size; position++) {
+			byte b = getByte(position);
+			if (b == '"' && (quoted || previous == '\t' || previous == ',' || previous == ';')) quoted = !quoted; // quotes start only at the beginning of a value
+			previous = b;
+			if (b == '"' || quoted) continue;
+			else if (b == '\n' || b == '\r') break;
+			else if (b == '\t') tabs++;
+			else if (b == ',') commas++;
+			else if (b == ';') semicolons++;
+		}
+		if (tabs > 0 && tabs >= commas && tabs >= semicolons) return '\t';
+		if (semicolons > commas) return ';';
+		return ',';
+	}
+
+	/**
+	 * Parses all lines of the file.
+	 * @param rows Receives the cell values of all rows except the title row.
+	 * @return The rows.
+	 * @throws IOException
+	 */
+	SheetRows readRows(SheetRows rows) throws IOException {
+		boolean titleRowSkipped = false;
+		boolean quoted = false; // inside a quoted value
+		boolean valueStart = true; // no character of the current cell read yet
+		boolean lineEmpty = true; // no character of the current line read yet
+
+		long position = 0;
+		if (size >= 3 && getByte(0) == (byte) 0xEF && getByte(1) == (byte) 0xBB && getByte(2) == (byte) 0xBF) position = 3; // skip byte order mark
+		for (; position<=size; position++) {
+			byte b = (position < size) ? getByte(position) : (byte) '\n'; // the end of the file ends the last line
+			if (quoted) {
+				if (b != '"') append(b);
+				else if (position+1 < size && getByte(position+1) == '"') append(getByte(++position)); // escaped quote ""
+				else quoted = false;
+				continue;
+			}
+			if (b == '"' && valueStart) {
+				quoted = true;
+				valueStart = false;
+				lineEmpty = false;
+			}
+			else if (b == delimiter) {
+				takeValue(rows, titleRowSkipped);
+				valueStart = true;
+				lineEmpty = false;
+			}
+			else if (b == '\n' || b == '\r') {
+				if (lineEmpty) continue; // empty line or second byte of "\r\n"
+				takeValue(rows, titleRowSkipped);
+				if (!titleRowSkipped) titleRowSkipped = true;
+				else rows.endRow(); // lines of delimiters only (as exported by Excel) are discarded
+				valueStart = true;
+				lineEmpty = true;
+			}
+			else {
+				append(b);
+				valueStart = false;
+				lineEmpty = false;
+			}
+		}
+		rows.trimToSize();
+		return rows;
+	}
+
+	/**
+	 * @param position Position in the file.
+	 * @return The byte at the position (maps another window of the file if necessary).
+	 * @throws IOException
+	 */
+	byte getByte(long position) throws IOException {
+		if (window == null || position < windowStart || position >= windowStart + window.limit()) {
+			windowStart = position;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+		}
+		return window.get((int) (position - windowStart));
+	}
+
+	/**
+	 * Appends a byte to the value of the current cell.
+	 */
+	void append(byte b) {
+		if (valueLength == value.length) value = Arrays.copyOf(value, 2*value.length);
+		value[valueLength++] = b;
+	}
+
+	/**
+	 * Adds the value of the current cell to the rows. The next cell starts empty.
+	 * @param rows
+	 * @param add False for the cells of the title row, which are dropped.
+	 */
+	void takeValue(SheetRows rows, boolean add) {
+		if (add) rows.addCell(value, valueLength);
+		valueLength = 0;
+	}
+}
@@ -0,0 +1,319 @@
+package edu.kit.ksri.als.dataExchange;
+
+import edu.kit.ksri.als.graph.AmbulanceGraph;
+import edu.kit.ksri.als.graph.Base;
+import edu.kit.ksri.als.graph.Demand;
+import edu.kit.ksri.als.graph.DrivingTimes;
+import edu.kit.ksri.als.graph.ReachableDemands;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Persistent cache for the driving times and the reachable demands of an {@link AmbulanceGraph}.
+ *
+ * Every result is stored in a file of its own. The name of the file is a SHA-256 hash of everything the result depends on:
+ * the number of nodes, the edges (CSR arrays), the nodes of the bases and demands, whether the full matrix is calculated and the time limit.
+ * Hence, an identical graph imported again (also under a different name or by another program instance) finds its result,
+ * whereas any change of the graph leads to a different file.
+ *
+ * Files are read and written through memory mappings (FileChannel.map, in windows of at most 1 GB, see {@link MappedFile}).
+ * They are written to a temporary file first and then renamed, so that several processes may share the cache directory.
+ * On a cache hit, the rows of driving times are not copied: the graph reads them from the mapped file (see {@link DrivingTimes}, encoding 3),
+ * so they need no heap and several JVMs share them through the page cache. Since a cache file is never changed once it has been renamed,
+ * the mapping stays valid even if the file is replaced or deleted by another process. Only the reachable demands are read into arrays.
+ *
+ * The cache directory is "AmbulanceLocation/Cache" in the home directory of the user, unless the system property "als.cacheDirectory" is set.
+ * The files of the cache are limited to maxSize bytes in total: after every write, the least recently used files are deleted.
+ *
+ * File layout (big-endian):
+ * magic "ALSCACHE", version, hash (32 bytes), numberOfNodes, numberOfBases, numberOfDemands, fullMatrix (0/1),
+ * maxTime, drivingTimesBound, maxDrivingTime of the reachable demands, numberOfRows, node indices of the rows (0-based),
+ * rows of driving times, number of reachable demands per base, demand indices, driving times of the reachable demands.
+ */
+public class DrivingTimesCache {
+
+	public static boolean enabled = true; // if false, nothing is read from or written to the cache
+	public static File directory = getDefaultDirectory(); // directory containing the cache files
+	public static long maxSize = 16L << 30; // maximum total size of the cache files in bytes (16 GB)
+
+	static final byte[] MAGIC = {'A','L','S','C','A','C','H','E'};
+	static final int VERSION = 1;
+	static final String FILE_EXTENSION = ".alsc";
+	static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+	/**
+	 * Sets the driving times and the coverage of a graph from the cache if an entry for the graph exists.
+	 * @param graph Graph whose bases and demands have been read and indexed.
+	 * @return True if the graph has been loaded from the cache, false if the driving times need to be calculated.
+	 */
+	public static boolean load(AmbulanceGraph graph) {
+		if (!enabled) return false;
+		byte[] key = calculateKey(graph);
+		File file = getFile(key);
+		if (!file.exists()) return false;
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+			MappedFile buffer = new MappedFile(channel, FileChannel.MapMode.READ_ONLY, channel.size(), 0);
+
+			// check header
+			byte[] magic = buffer.get(new byte[MAGIC.length]);
+			if (!MessageDigest.isEqual(magic, MAGIC) || buffer.getInt() != VERSION) return false;
+			byte[] storedKey = buffer.get(new byte[key.length]);
+			if (!MessageDigest.isEqual(storedKey, key)) return false;
+			buffer.map(buffer.position() + 4*4 + 8); // skip numberOfNodes, numberOfBases, numberOfDemands, fullMatrix and maxTime (already part of the key)
+			getDrivingTimes(buffer, graph, true);
+			file.setLastModified(System.currentTimeMillis()); // recently used, see cleanUp()
+			return true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (RuntimeException e) { // truncated or otherwise corrupt file
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the driving times and the reachable demands of a graph to the cache.
+	 * @param graph Graph whose driving times and coverage have been calculated.
+	 */
+	public static void save(AmbulanceGraph graph) {
+		if (!enabled) return;
+		byte[] key = calculateKey(graph);
+		long size = MAGIC.length + 4 + key.length + 4*4 + 8 + getSize(graph);
+
+		if (size > maxSize) return; // would push everything else out of the cache
+		File temporaryFile = null;
+		try {
+			directory.mkdirs();
+			File file = getFile(key);
+			temporaryFile = File.createTempFile("cache", TEMPORARY_FILE_EXTENSION, directory);
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(temporaryFile, "rw"); FileChannel channel = randomAccessFile.getChannel()) {
+				MappedFile buffer = new MappedFile(channel, FileChannel.MapMode.READ_WRITE, size, 0);
+
+				// header
+				buffer.put(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.put(key);
+				buffer.putInt(graph.nodes.size());
+				buffer.putInt(graph.bases.size());
+				buffer.putInt(graph.demands.size());
+				buffer.putInt(graph.drivingTimesMethod == 0 ? 0 : 1);
+				buffer.putDouble(graph.getMaxTime());
+				putDrivingTimes(buffer, graph);
+				buffer.force();
+			}
+			Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			temporaryFile = null;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (RuntimeException e) { // for example if the disk is full; the driving times of the graph are not affected
+			e.printStackTrace();
+		} finally {
+			if (temporaryFile != null) temporaryFile.delete();
+		}
+		cleanUp();
+	}
+
+	/**
+	 * Deletes the least recently used cache files until their total size is at most maxSize,
+	 * as well as temporary files that have been left behind by a process that was terminated while writing (older than a day).
+	 */
+	public static synchronized void cleanUp() {
+		File[] files = directory.listFiles();
+		if (files == null) return;
+		long now = System.currentTimeMillis();
+		long totalSize = 0;
+		ArrayList<File> cacheFiles = new ArrayList<File>();
+		for (File file : files) {
+			if (file.getName().endsWith(TEMPORARY_FILE_EXTENSION) && file.lastModified() < now - 24*60*60*1000L) file.delete();
+			if (!file.isFile() || !file.getName().endsWith(FILE_EXTENSION)) continue;
+			cacheFiles.add(file);
+			totalSize += file.length();
+		}
+		if (totalSize <= maxSize) return;
+
+		// oldest first
+		final HashMap<File,Long> lastUsed = new HashMap<File,Long>();
+		for (File file : cacheFiles) lastUsed.put(file, file.lastModified());
+		Collections.sort(cacheFiles, new Comparator<File>() {
+			@Override
+			public int compare(File file1, File file2) {
+				return Long.compare(lastUsed.get(file1), lastUsed.get(file2));
+			}
+		});
+		for (File file : cacheFiles) {
+			if (totalSize <= maxSize) break;
+			long length = file.length();
+			if (file.delete()) totalSize -= length;
+		}
+	}
+
+	/**
+	 * @return Directory given by the system property "als.cacheDirectory", otherwise "AmbulanceLocation/Cache" in the home directory of the user.
+	 */
+	static File getDefaultDirectory() {
+		String directoryName = System.getProperty("als.cacheDirectory");
+		if (directoryName != null) return new File(directoryName);
+		return new File(new File(System.getProperty("user.home"), "AmbulanceLocation"), "Cache");
+	}
+
+	/**
+	 * @param graph
+	 * @return Number of bytes written by {@link #putDrivingTimes(MappedFile, AmbulanceGraph)}.
+	 */
+	static long getSize(AmbulanceGraph graph) {
+		int numberOfNodes = graph.nodes.size();
+		int numberOfRows = 0;
+		if (graph.drivingTimes == null) numberOfRows = graph.getDrivingTimes().numberOfRows; // rows mapped from the cache
+		else for (double[] row : graph.drivingTimes) if (row != null) numberOfRows++;
+		long numberOfEntries = 0; // total number of reachable demands
+		for (int[] demandsOfBase : graph.reachableDemands.demands) numberOfEntries += demandsOfBase.length;
+		return 2*8 + 4 + 4L*numberOfRows + 8L*numberOfRows*numberOfNodes
+				+ 4L*graph.bases.size() + 4L*numberOfEntries + 8L*numberOfEntries;
+	}
+
+	/**
+	 * @param graph
+	 * @return True if the exact driving times and the reachable demands of the graph are available (as matrix or as rows mapped from the cache).
+	 */
+	static boolean hasExactDrivingTimes(AmbulanceGraph graph) {
+		if (graph.reachableDemands == null) return false;
+		return graph.drivingTimes != null || (graph.getDrivingTimes() != null && graph.getDrivingTimes().encoding == 3);
+	}
+
+	/**
+	 * Writes the driving times and the reachable demands of a graph, starting with drivingTimesBound (see file layout).
+	 * Also used for the coverage of a {@link GraphSnapshot}.
+	 * @param buffer
+	 * @param graph Graph with exact driving times and coverage (see {@link #hasExactDrivingTimes(AmbulanceGraph)}).
+	 * @throws IOException
+	 */
+	static void putDrivingTimes(MappedFile buffer, AmbulanceGraph graph) throws IOException {
+		int numberOfNodes = graph.nodes.size();
+		ReachableDemands reachableDemands = graph.reachableDemands;
+		buffer.putDouble(graph.getDrivingTimesBound());
+		buffer.putDouble(reachableDemands.maxDrivingTime);
+
+		// rows of driving times
+		if (graph.drivingTimes != null) {
+			int numberOfRows = 0;
+			for (double[] row : graph.drivingTimes) if (row != null) numberOfRows++;
+			buffer.putInt(numberOfRows);
+			for (int i=0; i<numberOfNodes; i++) if (graph.drivingTimes[i] != null) buffer.putInt(i);
+			for (double[] row : graph.drivingTimes) if (row != null) buffer.putDoubles(row);
+		}
+		else { // rows mapped from the cache
+			DrivingTimes drivingTimes = graph.getDrivingTimes();
+			buffer.putInt(drivingTimes.numberOfRows);
+			for (int i=0; i<numberOfNodes; i++) if (drivingTimes.hasRow(i)) buffer.putInt(i);
+			double[] row = new double[numberOfNodes];
+			for (int i=0; i<numberOfNodes; i++) if (drivingTimes.hasRow(i)) buffer.putDoubles(drivingTimes.getRow(i, row));
+		}
+
+		// reachable demands of every base
+		for (int[] demandsOfBase : reachableDemands.demands) buffer.putInt(demandsOfBase.length);
+		for (int[] demandsOfBase : reachableDemands.demands) buffer.putInts(demandsOfBase);
+		for (double[] drivingTimesOfBase : reachableDemands.drivingTimes) buffer.putDoubles(drivingTimesOfBase);
+	}
+
+	/**
+	 * Reads what {@link #putDrivingTimes(MappedFile, AmbulanceGraph)} has written and sets it in the graph.
+	 * @param buffer
+	 * @param graph Graph with the same nodes, bases and demands (already indexed).
+	 * @param mapRows If true, the rows of driving times are read from the mapped file by the graph instead of being copied
+	 * (only for files that are not changed afterwards, as the files of the cache).
+	 * @throws IOException
+	 */
+	static void getDrivingTimes(MappedFile buffer, AmbulanceGraph graph, boolean mapRows) throws IOException {
+		int numberOfNodes = graph.nodes.size();
+		int numberOfBases = graph.bases.size();
+		double drivingTimesBound = buffer.getDouble();
+		double maxDrivingTime = buffer.getDouble();
+
+		// rows of driving times
+		int numberOfRows = buffer.getInt();
+		int[] rowNodes = buffer.getInts(new int[numberOfRows]);
+		double[][] drivingTimes = null;
+		DrivingTimes mappedDrivingTimes = null;
+		if (mapRows) mappedDrivingTimes = new DrivingTimes(numberOfNodes, rowNodes, buffer.mapRows(numberOfRows, numberOfNodes));
+		else {
+			drivingTimes = new double[numberOfNodes][];
+			for (int r=0; r<numberOfRows; r++) drivingTimes[rowNodes[r]] = buffer.getDoubles(new double[numberOfNodes]);
+		}
+
+		// reachable demands of every base
+		ReachableDemands reachableDemands = new ReachableDemands(numberOfBases, graph.demands.size(), maxDrivingTime);
+		int[] numbersOfReachableDemands = buffer.getInts(new int[numberOfBases]);
+		for (int j=0; j<numberOfBases; j++) reachableDemands.demands[j] = buffer.getInts(new int[numbersOfReachableDemands[j]]);
+		for (int j=0; j<numberOfBases; j++) reachableDemands.drivingTimes[j] = buffer.getDoubles(new double[numbersOfReachableDemands[j]]);
+
+		if (mapRows) graph.setDrivingTimes(mappedDrivingTimes, drivingTimesBound, reachableDemands);
+		else graph.setDrivingTimes(drivingTimes, drivingTimesBound, reachableDemands);
+	}
+
+	/**
+	 * Calculates the key of a graph from everything its driving times and coverage depend on.
+	 * @param graph
+	 * @return SHA-256 hash (32 bytes).
+	 */
+	public static byte[] calculateKey(AmbulanceGraph graph) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every Java platform supports SHA-256
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+		buffer.putInt(graph.nodes.size());
+		buffer.putInt(graph.drivingTimesMethod == 0 ? 0 : 1); // both full matrix methods give the same driving times
+		buffer.putDouble(graph.getMaxTime());
+		for (int offset : graph.edgeOffsets) buffer = update(digest, buffer, 4).putInt(offset);
+		for (int target : graph.edgeTargets) buffer = update(digest, buffer, 4).putInt(target);
+		for (double weight : graph.edgeWeights) buffer = update(digest, buffer, 8).putDouble(weight);
+		buffer = update(digest, buffer, 4).putInt(graph.bases.size());
+		for (Base base : graph.bases) buffer = update(digest, buffer, 4).putInt(base.node.index);
+		buffer = update(digest, buffer, 4).putInt(graph.demands.size());
+		for (Demand demand : graph.demands) buffer = update(digest, buffer, 4).putInt(demand.node.index);
+		update(digest, buffer, buffer.capacity());
+		return digest.digest();
+	}
+
+	/**
+	 * Feeds the content of the buffer to the digest if there are less than a number of bytes left in the buffer.
+	 * @param digest
+	 * @param buffer
+	 * @param bytes Number of bytes that are written next.
+	 * @return The buffer, ready to be written.
+	 */
+	static ByteBuffer update(MessageDigest digest, ByteBuffer buffer, int bytes) {
+		if (buffer.remaining() < bytes) {
+			buffer.flip();
+			digest.update(buffer);
+			buffer.clear();
+		}
+		return buffer;
+	}
+
+	/**
+	 * @param key
+	 * @return Cache file of the key.
+	 */
+	static File getFile(byte[] key) {
+		StringBuilder name = new StringBuilder();
+		for (byte b : key) name.append(String.format("%02x", b));
+		return new File(directory, name.append(FILE_EXTENSION).toString());
+	}
+}
@@ -0,0 +1,146 @@
+package edu.kit.ksri.als.dataExchange;
+
+import edu.kit.ksri.als.graph.AmbulanceGraph;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports several graphs of one import file at once. The graphs are built concurrently on a pool of worker threads.
+ * All workers read the same cell values and row index of the file (see {@link ImportData#share()}), so the file is read only once.
+ * If the workbook of the file is kept open (no streaming mode), the graphs are built one after the other.
+ * Every graph is handed to a {@link GraphHandler} as soon as it is built, so it can be stored (for example in a {@link GraphRegistry}
+ * whose memory budget then applies during the import) instead of holding all graphs until the import is finished.
+ */
+public class GraphImporter {
+
+	ImportData file;
+	int drivingTimesMethod; // 0=bounded Dijkstra from the bases, 1=full matrix (Tripel algorithm), 2=full matrix (parallel tiled Tripel algorithm)
+	int parallelism; // number of worker threads
+
+	/**
+	 * Creates an importer using one worker thread per available processor.
+	 * @param file Import file.
+	 * @param drivingTimesMethod 0=bounded Dijkstra from the bases, 1=full matrix (Tripel algorithm), 2=full matrix (parallel tiled Tripel algorithm)
+	 */
+	public GraphImporter(ImportData file, int drivingTimesMethod) {
+		this(file, drivingTimesMethod, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an importer.
+	 * @param file Import file.
+	 * @param drivingTimesMethod 0=bounded Dijkstra from the bases, 1=full matrix (Tripel algorithm), 2=full matrix (parallel tiled Tripel algorithm)
+	 * @param parallelism Number of worker threads.
+	 */
+	public GraphImporter(ImportData file, int drivingTimesMethod, int parallelism) {
+		this.file = file;
+		this.drivingTimesMethod = drivingTimesMethod;
+		this.parallelism = file.isStreaming() ? Math.max(1, parallelism) : 1;
+	}
+
+	/**
+	 * Receives the graphs of an import (or the graphs built by a {@link GraphRegistry}) one by one.
+	 */
+	public interface GraphHandler {
+		/**
+		 * Called on the thread that imports (or built) the graphs, in the order in which the graphs are finished.
+		 * @param graphName
+		 * @param graph The built graph.
+		 */
+		void graphBuilt(String graphName, AmbulanceGraph graph);
+	}
+
+	/**
+	 * Builds graphs from the import file. Graphs that are not in the file are skipped;
+	 * if a graph cannot be built, the error is printed and the graph is skipped as well.
+	 * All graphs are held in memory until the method returns; use {@link #importGraphs(Collection, GraphHandler)} for many large graphs.
+	 * @param graphNames Names of the graphs to import.
+	 * @return The built graphs by name (complete once the method returns).
+	 */
+	public TreeMap<String,AmbulanceGraph> importGraphs(Collection<String> graphNames) {
+		final TreeMap<String,AmbulanceGraph> graphs = new TreeMap<String,AmbulanceGraph>();
+		importGraphs(graphNames, new GraphHandler() {
+			@Override
+			public void graphBuilt(String graphName, AmbulanceGraph graph) {
+				graphs.put(graphName, graph);
+			}
+		});
+		return graphs;
+	}
+
+	/**
+	 * Builds graphs from the import file and hands every graph to a handler as soon as it is built.
+	 * At most one graph per worker thread is being built at a time, and this importer keeps no reference to finished graphs.
+	 * Graphs that are not in the file are skipped; if a graph cannot be built, the error is printed and the graph is skipped as well.
+	 * @param graphNames Names of the graphs to import.
+	 * @param handler Receives the built graphs (on the calling thread).
+	 * @return Number of graphs built.
+	 */
+	public int importGraphs(Collection<String> graphNames, GraphHandler handler) {
+		ArrayList<String> graphsInFile = new ArrayList<String>();
+		for (String graphName : graphNames) {
+			if (file.getRowsOfGraph(graphName).length > 0) graphsInFile.add(graphName); // creates the row index before the workers start
+		}
+		if (graphsInFile.isEmpty()) return 0;
+		int numberOfGraphs = 0;
+
+		if (parallelism == 1 || graphsInFile.size() == 1) {
+			for (String graphName : graphsInFile) {
+				try {
+					handler.graphBuilt(graphName, new AmbulanceGraph(graphName, file, drivingTimesMethod));
+					numberOfGraphs++;
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+			return numberOfGraphs;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, graphsInFile.size()));
+		try {
+			CompletionService<AmbulanceGraph> results = new ExecutorCompletionService<AmbulanceGraph>(pool); // returns the graphs as they are finished
+			for (String graphName : graphsInFile) results.submit(new GraphTask(graphName, file.share()));
+			for (int g=0; g<graphsInFile.size(); g++) {
+				try {
+					AmbulanceGraph graph = results.take().get();
+					handler.graphBuilt(graph.name, graph);
+					numberOfGraphs++;
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+				}
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdownNow();
+		}
+		return numberOfGraphs;
+	}
+
+	/**
+	 * Builds one graph with an interface of its own to the rows of the import file.
+	 */
+	class GraphTask implements Callable<AmbulanceGraph> {
+		String graphName;
+		ImportData rows;
+
+		GraphTask(String graphName, ImportData rows) {
+			this.graphName = graphName;
+			this.rows = rows;
+		}
+
+		@Override
+		public AmbulanceGraph call() {
+			return new AmbulanceGraph(graphName, rows, drivingTimesMethod);
+		}
+	}
+}
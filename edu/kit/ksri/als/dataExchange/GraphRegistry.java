@@ -0,0 +1,463 @@
+package edu.kit.ksri.als.dataExchange;
+
+import edu.kit.ksri.als.graph.AmbulanceGraph;
+import edu.kit.ksri.als.graph.Base;
+import edu.kit.ksri.als.graph.Demand;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Registry of all graphs of a session by name. For every graph, only a lightweight {@link GraphDescriptor} is kept permanently;
+ * the {@link AmbulanceGraph} itself is built on first access and kept as long as the estimated memory of all built graphs
+ * stays within memoryBudget. Beyond the budget, the least recently used graphs are evicted: their current state is written
+ * to a {@link GraphSnapshot} in the snapshot directory, from which they are built again when they are needed the next time.
+ * A graph that has not changed since it was built from its import file or snapshot is evicted without writing a snapshot.
+ * The snapshots are written by a background thread, so adding or requesting a graph (for example on the event thread) does not wait for them.
+ * Until its snapshot has been written, an evicted graph stays in memory and is returned again if it is requested, instead of being rebuilt.
+ *
+ * Graphs in use (for example by running problems) must be pinned with {@link #acquire(String)} and {@link #release(String)}:
+ * pinned graphs are never evicted. A graph that is evicted while a reference obtained with {@link #get(String)} is still used
+ * becomes a second copy: changes to it (for example of edges) are not seen by the graph rebuilt from the snapshot.
+ *
+ * A rebuilt graph has the same nodes, edges, bases, demands, driving times and coverage, but neither a contractionHierarchy
+ * nor a compact drivingTimesEncoding. All methods are thread-safe, so graphs can be requested from worker threads.
+ * Graphs are built outside the lock of the registry: while a graph is built, other graphs can be requested (and built in parallel),
+ * and threads requesting the same graph wait for the one build of it.
+ */
+public class GraphRegistry {
+
+	public long memoryBudget; // estimated number of bytes all built graphs may use together
+	public File directory; // directory for the snapshots of evicted graphs
+	public int numberOfBuilds = 0; // number of graphs built on access (for statistics)
+	public int numberOfEvictions = 0; // number of evicted graphs (for statistics)
+	public GraphImporter.GraphHandler buildHandler; // receives every graph built on access, on the thread that built it (may be null)
+
+	TreeMap<String,GraphDescriptor> descriptors = new TreeMap<String,GraphDescriptor>(); // all graphs by name
+	LinkedHashMap<String,AmbulanceGraph> builtGraphs = new LinkedHashMap<String,AmbulanceGraph>(16, 0.75f, true); // in order of access, least recently used first
+	HashMap<String,SpillTask> spillingGraphs = new HashMap<String,SpillTask>(); // evicted graphs whose snapshot is being written
+	HashMap<String,FutureTask<AmbulanceGraph>> builds = new HashMap<String,FutureTask<AmbulanceGraph>>(); // graphs being built
+	HashMap<String,Integer> pins = new HashMap<String,Integer>(); // number of users per pinned graph
+	HashMap<String,Long> memoryOfGraphs = new HashMap<String,Long>(); // estimated memory per built or spilling graph
+	long usedMemory = 0; // estimated memory of all built graphs (without the spilling graphs)
+	ExecutorService spillThread; // writes the snapshots of evicted graphs one after the other (created on first eviction)
+
+	/**
+	 * Creates a registry that may use half of the maximum heap size and stores snapshots in the directory "Snapshots" of the {@link DrivingTimesCache}.
+	 */
+	public GraphRegistry() {
+		this(Runtime.getRuntime().maxMemory()/2, new File(DrivingTimesCache.directory, "Snapshots"));
+	}
+
+	/**
+	 * Creates a registry.
+	 * @param memoryBudget Estimated number of bytes all built graphs may use together.
+	 * @param directory Directory for the snapshots of evicted graphs.
+	 */
+	public GraphRegistry(long memoryBudget, File directory) {
+		this.memoryBudget = memoryBudget;
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns a graph and builds it if necessary. Afterwards, it is the most recently used graph.
+	 * The graph is built on the calling thread without holding the lock of the registry; concurrent requests for it wait for this build.
+	 * @param name
+	 * @return The graph, null if there is no graph with this name or it cannot be built.
+	 */
+	public AmbulanceGraph get(String name) {
+		FutureTask<AmbulanceGraph> build;
+		boolean building = false; // true if this thread builds the graph
+		synchronized (this) {
+			AmbulanceGraph graph = getBuilt(name);
+			if (graph != null) return graph;
+			build = builds.get(name);
+			if (build == null) { // not being built by another thread
+				GraphDescriptor descriptor = descriptors.get(name);
+				if (descriptor == null) return null;
+				build = new FutureTask<AmbulanceGraph>(new BuildTask(descriptor));
+				builds.put(name, build);
+				building = true;
+			}
+		}
+		if (building) build.run();
+		AmbulanceGraph graph = null;
+		try {
+			graph = build.get();
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		if (building) {
+			synchronized (this) {
+				if (builds.get(name) == build) { // not replaced while it was built
+					builds.remove(name); // the graph is built again on the next request if the build failed
+					if (graph != null) {
+						numberOfBuilds++;
+						addBuiltGraph(name, graph);
+					}
+				}
+			}
+			if (graph != null && buildHandler != null) buildHandler.graphBuilt(name, graph);
+		}
+		return graph;
+	}
+
+	/**
+	 * Returns a graph like {@link #get(String)} and pins it: it is not evicted before {@link #release(String)} is called as often as this method.
+	 * @param name
+	 * @return The graph, null if there is no graph with this name or it cannot be built (then release must not be called).
+	 */
+	public AmbulanceGraph acquire(String name) {
+		while (true) {
+			AmbulanceGraph graph = get(name);
+			if (graph == null) return null;
+			synchronized (this) {
+				if (getBuilt(name) == graph) { // not evicted or replaced since it was returned
+					pins.put(name, pins.containsKey(name) ? pins.get(name)+1 : 1);
+					return graph;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ends a use of a graph that has been pinned with {@link #acquire(String)}. Once all uses have ended, the graph may be evicted again.
+	 * @param name
+	 */
+	public synchronized void release(String name) {
+		Integer numberOfPins = pins.get(name);
+		if (numberOfPins == null) return;
+		if (numberOfPins > 1) pins.put(name, numberOfPins-1);
+		else pins.remove(name);
+		evict(); // the budget may have been exceeded while the graph was pinned
+	}
+
+	/**
+	 * Adds a graph that has already been built (replaces a graph with the same name).
+	 * @param name
+	 * @param graph
+	 */
+	public synchronized void put(String name, AmbulanceGraph graph) {
+		removeBuiltGraph(name);
+		descriptors.put(name, new GraphDescriptor(graph.name));
+		addBuiltGraph(name, graph);
+	}
+
+	/**
+	 * Adds graphs that have already been built.
+	 * @param graphs Graphs by name.
+	 */
+	public synchronized void putAll(Map<String,AmbulanceGraph> graphs) {
+		for (Map.Entry<String,AmbulanceGraph> entry : graphs.entrySet()) put(entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * Adds a graph that is built on first access (replaces a graph with the same name).
+	 * @param name
+	 * @param descriptor Describes how to build the graph.
+	 */
+	public synchronized void register(String name, GraphDescriptor descriptor) {
+		removeBuiltGraph(name);
+		descriptors.put(name, descriptor);
+	}
+
+	/**
+	 * @param name
+	 * @return True if there is a graph with this name (built or not).
+	 */
+	public synchronized boolean containsKey(String name) {
+		return descriptors.containsKey(name);
+	}
+
+	/**
+	 * @param name
+	 * @return True if the graph is built at the moment.
+	 */
+	public synchronized boolean isBuilt(String name) {
+		return builtGraphs.containsKey(name);
+	}
+
+	/**
+	 * @return Names of all graphs in alphabetical order.
+	 */
+	public synchronized TreeSet<String> keySet() {
+		return new TreeSet<String>(descriptors.keySet());
+	}
+
+	/**
+	 * @return Estimated number of bytes used by the built graphs.
+	 */
+	public synchronized long getUsedMemory() {
+		return usedMemory;
+	}
+
+	/**
+	 * Returns a graph if it is built or still in memory while its snapshot is written (then it is kept again). Afterwards, it is the most recently used graph.
+	 * @return The graph, null if it has to be built.
+	 */
+	AmbulanceGraph getBuilt(String name) {
+		AmbulanceGraph graph = builtGraphs.get(name);
+		if (graph != null) return graph;
+		SpillTask spill = spillingGraphs.remove(name);
+		if (spill == null) return null;
+		memoryOfGraphs.remove(name); // evicted, but still in memory: keep it (the snapshot being written is not used)
+		addBuiltGraph(name, spill.graph);
+		return spill.graph;
+	}
+
+	/**
+	 * Makes a graph the most recently used one and evicts other graphs if the memory budget is exceeded.
+	 */
+	void addBuiltGraph(String name, AmbulanceGraph graph) {
+		long memory = estimateMemory(graph);
+		builtGraphs.put(name, graph);
+		memoryOfGraphs.put(name, memory);
+		usedMemory += memory;
+		evict();
+	}
+
+	/**
+	 * Forgets the built version of a graph (without writing a snapshot). A build that is running is not added to the registry.
+	 */
+	void removeBuiltGraph(String name) {
+		if (builtGraphs.remove(name) != null) usedMemory -= memoryOfGraphs.remove(name);
+		if (spillingGraphs.remove(name) != null) memoryOfGraphs.remove(name);
+		builds.remove(name);
+	}
+
+	/**
+	 * Evicts the least recently used graphs until the memory budget is kept: they are handed to the spill thread, which writes their snapshots.
+	 * The most recently used graph and pinned graphs are never evicted.
+	 */
+	void evict() {
+		if (usedMemory <= memoryBudget) return;
+		ArrayList<String> names = new ArrayList<String>(builtGraphs.keySet()); // least recently used first
+		for (int k=0; k<names.size()-1 && usedMemory > memoryBudget; k++) {
+			String name = names.get(k);
+			if (pins.containsKey(name)) continue; // in use
+			SpillTask spill = new SpillTask(name, builtGraphs.remove(name));
+			usedMemory -= memoryOfGraphs.get(name);
+			spillingGraphs.put(name, spill);
+			if (spillThread == null) {
+				spillThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "GraphRegistry spill");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			spillThread.execute(spill);
+		}
+	}
+
+	/**
+	 * Waits until all snapshots of evicted graphs have been written.
+	 * @throws InterruptedException
+	 */
+	public void awaitSpills() throws InterruptedException {
+		ExecutorService thread;
+		synchronized (this) {
+			thread = spillThread;
+		}
+		if (thread == null) return;
+		try {
+			thread.submit(new Runnable() {
+				@Override
+				public void run() {} // runs after all spills submitted so far
+			}).get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Builds a graph from its descriptor (run by the thread that requested the graph first).
+	 */
+	static class BuildTask implements Callable<AmbulanceGraph> {
+		GraphDescriptor descriptor;
+
+		BuildTask(GraphDescriptor descriptor) {
+			this.descriptor = descriptor;
+		}
+
+		@Override
+		public AmbulanceGraph call() throws IOException {
+			return descriptor.build();
+		}
+	}
+
+	/**
+	 * Writes the snapshot of an evicted graph and frees the graph afterwards, unless it has been requested again in the meantime.
+	 * If the snapshot cannot be written, the graph is kept, since it could not be built again.
+	 */
+	class SpillTask implements Runnable {
+		String name;
+		AmbulanceGraph graph;
+
+		SpillTask(String name, AmbulanceGraph graph) {
+			this.name = name;
+			this.graph = graph;
+		}
+
+		@Override
+		public void run() {
+			GraphDescriptor descriptor;
+			synchronized (GraphRegistry.this) {
+				if (spillingGraphs.get(name) != this) return; // requested again or replaced meanwhile
+				descriptor = descriptors.get(name);
+			}
+			boolean written = false;
+			try {
+				descriptor.spill(graph, directory);
+				written = true;
+			} catch (IOException e) {
+				e.printStackTrace();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+			synchronized (GraphRegistry.this) {
+				if (spillingGraphs.get(name) != this) return; // requested again or replaced while the snapshot was written
+				spillingGraphs.remove(name);
+				if (written) {
+					memoryOfGraphs.remove(name);
+					numberOfEvictions++;
+				}
+				else { // keep the graph
+					builtGraphs.put(name, graph);
+					usedMemory += memoryOfGraphs.get(name);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Estimates the memory of a graph from the sizes of its arrays and lists (including the driving times).
+	 * @param graph
+	 * @return Number of bytes.
+	 */
+	public static long estimateMemory(AmbulanceGraph graph) {
+		long memory = 128L*graph.nodes.size(); // node, name and coordinates
+		memory += 4L*graph.edgeOffsets.length + 12L*graph.edgeTargets.length;
+		memory += 128L*graph.bases.size();
+		for (Demand demand : graph.demands) memory += 128 + 8L*demand.probabilities.length;
+		if (graph.coverage != null) {
+			memory += 8L*graph.bases.size()*((graph.demands.size()+63)/64) + 8L*graph.demands.size()*((graph.bases.size()+63)/64); // bitsets
+			for (Base base : graph.bases) memory += 2*64L*base.coveredDemands.size(); // entries of the sets of covered demands and covering bases
+		}
+		if (graph.reachableDemands != null) {
+			for (int[] demandsOfBase : graph.reachableDemands.demands) memory += 12L*demandsOfBase.length;
+		}
+		if (graph.drivingTimes != null || graph.reachableDemands != null) memory += graph.getDrivingTimes().getMemory();
+		return memory;
+	}
+
+	/**
+	 * Describes how a graph of the registry is built: from an import file, from a snapshot file, or not at all
+	 * (for graphs that have been added after they were built). Once a graph has been evicted, it is built from its own snapshot,
+	 * unless it has not changed since it was built (then it is built again from its import file or snapshot).
+	 */
+	public static class GraphDescriptor {
+		public String graphName; // name of the graph in the import file or snapshot
+		ImportData file; // import file (null if the graph is not built from an import file)
+		int drivingTimesMethod;
+		File snapshot; // snapshot file (null if the graph is not built from a snapshot)
+		boolean ownSnapshot = false; // true if the snapshot has been written by the registry
+		int modificationCountOfSource = -1; // modification count of the graph when it was built or saved (-1 if it has no source)
+		double maxTimeOfSource; // time limit of the graph when it was built or saved
+
+		/**
+		 * Describes a graph that cannot be built (until it is evicted for the first time).
+		 * @param graphName
+		 */
+		GraphDescriptor(String graphName) {
+			this.graphName = graphName;
+		}
+
+		/**
+		 * Describes a graph of an import file.
+		 * @param file
+		 * @param graphName
+		 * @param drivingTimesMethod 0=bounded Dijkstra from the bases, 1=full matrix (Tripel algorithm), 2=full matrix (parallel tiled Tripel algorithm)
+		 */
+		public GraphDescriptor(ImportData file, String graphName, int drivingTimesMethod) {
+			this.graphName = graphName;
+			this.file = file;
+			this.drivingTimesMethod = drivingTimesMethod;
+		}
+
+		/**
+		 * Describes a graph of a snapshot file.
+		 * @param snapshot Snapshot whose header has been read.
+		 */
+		public GraphDescriptor(GraphSnapshot snapshot) {
+			this.graphName = snapshot.graphName;
+			this.snapshot = snapshot.file;
+		}
+
+		/**
+		 * @return A new graph.
+		 * @throws IOException If the snapshot cannot be read.
+		 */
+		AmbulanceGraph build() throws IOException {
+			AmbulanceGraph graph;
+			if (snapshot != null) graph = GraphSnapshot.load(snapshot);
+			else if (file == null) throw new IOException("Graph "+graphName+" has no source to be built from.");
+			else if (file.isStreaming()) graph = new AmbulanceGraph(graphName, file.share(), drivingTimesMethod);
+			else {
+				synchronized (file) { // an opened workbook is read by one graph at a time
+					graph = new AmbulanceGraph(graphName, file, drivingTimesMethod);
+				}
+			}
+			setSource(graph);
+			return graph;
+		}
+
+		/**
+		 * Writes the current state of a graph to the snapshot of the registry, unless the graph has not changed since it was built or saved.
+		 * @param graph
+		 * @param directory
+		 * @throws IOException
+		 */
+		void spill(AmbulanceGraph graph, File directory) throws IOException {
+			if (graph.getModificationCount() == modificationCountOfSource && graph.getMaxTime() == maxTimeOfSource) return; // can be built again from its source
+			int modificationCount = graph.getModificationCount(); // before saving, so changes while saving are written next time
+			double maxTime = graph.getMaxTime();
+			if (!ownSnapshot) {
+				directory.mkdirs();
+				File file = File.createTempFile("graph", GraphSnapshot.FILE_EXTENSION, directory);
+				file.deleteOnExit();
+				GraphSnapshot.save(graph, file, true);
+				snapshot = file; // only once it is complete
+				ownSnapshot = true;
+			}
+			else GraphSnapshot.save(graph, snapshot, true);
+			modificationCountOfSource = modificationCount;
+			maxTimeOfSource = maxTime;
+		}
+
+		/**
+		 * Remembers the state of a graph that has just been built, so it is not saved on eviction unless it changes.
+		 */
+		void setSource(AmbulanceGraph graph) {
+			modificationCountOfSource = graph.getModificationCount();
+			maxTimeOfSource = graph.getMaxTime();
+		}
+	}
+}
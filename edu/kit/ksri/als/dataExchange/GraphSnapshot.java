@@ -0,0 +1,249 @@
+package edu.kit.ksri.als.dataExchange;
+
+import edu.kit.ksri.als.graph.AmbulanceGraph;
+import edu.kit.ksri.als.graph.Base;
+import edu.kit.ksri.als.graph.Demand;
+import edu.kit.ksri.als.graph.Node;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Binary snapshot of a fully built {@link AmbulanceGraph} (file ending ".alsg"), so that a graph does not have to be imported from Excel again.
+ *
+ * {@link #open(File)} reads only the header. The graph itself is built from the memory-mapped file by {@link #build()}
+ * (in windows of at most 1 GB, see {@link MappedFile}),
+ * which copies the arrays in bulk and does not parse any text except the node names. If the snapshot contains the coverage
+ * (driving times and reachable demands), nothing is calculated; otherwise the coverage is calculated like after an import
+ * (or read from the {@link DrivingTimesCache}). The coverage is only written if the graph keeps its double[][] driving times.
+ *
+ * File layout (big-endian):
+ * magic "ALSGRAPH", version, hasCoverage (0/1), drivingTimesMethod, maxTime, numberOfNodes, numberOfEdges, numberOfBases, numberOfDemands,
+ * number of probabilities of all demands, length of the graph name in bytes, graph name (UTF-8),
+ * per node the length of its name in bytes and the name (UTF-8), x and y coordinates per node,
+ * edgeOffsets, edgeTargets, edgeWeights, node indices of the bases (0-based), costs and costs per ambulance per base,
+ * node indices of the demands (0-based), start of the probabilities of every demand (numberOfDemands+1 offsets), probabilities,
+ * and optionally the coverage as in the {@link DrivingTimesCache} (from drivingTimesBound on).
+ */
+public class GraphSnapshot {
+
+	static final byte[] MAGIC = {'A','L','S','G','R','A','P','H'};
+	static final int VERSION = 1;
+	public static final String FILE_EXTENSION = ".alsg";
+
+	public File file;
+	public String graphName;
+	public boolean hasCoverage;
+	public int drivingTimesMethod;
+	public double maxTime;
+	public int numberOfNodes;
+	public int numberOfEdges;
+	public int numberOfBases;
+	public int numberOfDemands;
+	int numberOfProbabilities;
+	long dataStart; // position behind the header
+
+	/**
+	 * Reads the header of a snapshot file.
+	 * @param file
+	 * @return The snapshot.
+	 * @throws IOException If the file cannot be read or is no snapshot of this version.
+	 */
+	public static GraphSnapshot open(File file) throws IOException {
+		GraphSnapshot snapshot = new GraphSnapshot();
+		snapshot.file = file;
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+			MappedFile buffer = new MappedFile(channel, FileChannel.MapMode.READ_ONLY, channel.size(), 0);
+			snapshot.readHeader(buffer);
+			snapshot.dataStart = buffer.position();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Reads the header from the beginning of the file.
+	 * @throws IOException If the file is no snapshot of this version or corrupt.
+	 */
+	void readHeader(MappedFile buffer) throws IOException {
+		try {
+			byte[] magic = buffer.get(new byte[MAGIC.length]);
+			if (!Arrays.equals(magic, MAGIC)) throw new IOException(file.getName()+" is no graph snapshot.");
+			int version = buffer.getInt();
+			if (version != VERSION) throw new IOException(file.getName()+" has snapshot version "+version+", expected "+VERSION+".");
+			hasCoverage = (buffer.getInt() == 1);
+			drivingTimesMethod = buffer.getInt();
+			maxTime = buffer.getDouble();
+			numberOfNodes = buffer.getInt();
+			numberOfEdges = buffer.getInt();
+			numberOfBases = buffer.getInt();
+			numberOfDemands = buffer.getInt();
+			numberOfProbabilities = buffer.getInt();
+			graphName = buffer.getString();
+		} catch (RuntimeException e) { // truncated or otherwise corrupt file
+			throw new IOException(file.getName()+" is corrupt.", e);
+		}
+	}
+
+	/**
+	 * Reads a graph from a snapshot file.
+	 * @param file
+	 * @return The graph.
+	 * @throws IOException
+	 */
+	public static AmbulanceGraph load(File file) throws IOException {
+		return open(file).build();
+	}
+
+	/**
+	 * Builds the graph from the mapped file. Every call creates a new graph and maps the file again,
+	 * so that several graphs can be built at the same time.
+	 * @return The graph (with the name stored in the snapshot).
+	 * @throws IOException If the file cannot be read or is corrupt.
+	 */
+	public AmbulanceGraph build() throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+			return build(new MappedFile(channel, FileChannel.MapMode.READ_ONLY, channel.size(), dataStart));
+		}
+	}
+
+	/**
+	 * Builds the graph from the data behind the header.
+	 */
+	AmbulanceGraph build(MappedFile buffer) throws IOException {
+		try {
+			AmbulanceGraph graph = new AmbulanceGraph(graphName, drivingTimesMethod, maxTime);
+
+			// nodes
+			String[] names = new String[numberOfNodes];
+			for (int i=0; i<numberOfNodes; i++) names[i] = buffer.getString();
+			double[] coordinates = buffer.getDoubles(new double[2*numberOfNodes]);
+			graph.nodes.ensureCapacity(numberOfNodes);
+			for (int i=0; i<numberOfNodes; i++) graph.nodes.add(new Node(i+1, names[i], new Point2D.Double(coordinates[2*i], coordinates[2*i+1]))); //node id is 1-based
+
+			// edges
+			graph.edgeOffsets = buffer.getInts(new int[numberOfNodes+1]);
+			graph.edgeTargets = buffer.getInts(new int[numberOfEdges]);
+			graph.edgeWeights = buffer.getDoubles(new double[numberOfEdges]);
+
+			// bases
+			int[] baseNodes = buffer.getInts(new int[numberOfBases]);
+			double[] costs = buffer.getDoubles(new double[2*numberOfBases]);
+			for (int j=0; j<numberOfBases; j++) graph.bases.add(new Base(graph.nodes.get(baseNodes[j]), costs[2*j], costs[2*j+1]));
+
+			// demands
+			int[] demandNodes = buffer.getInts(new int[numberOfDemands]);
+			int[] probabilityOffsets = buffer.getInts(new int[numberOfDemands+1]);
+			double[] probabilities = buffer.getDoubles(new double[numberOfProbabilities]);
+			for (int i=0; i<numberOfDemands; i++) {
+				graph.demands.add(new Demand(graph.nodes.get(demandNodes[i]), Arrays.copyOfRange(probabilities, probabilityOffsets[i], probabilityOffsets[i+1])));
+			}
+
+			// coverage
+			if (hasCoverage) {
+				graph.assignIndices();
+				DrivingTimesCache.getDrivingTimes(buffer, graph, false); // copied, since the snapshots of the registry are replaced whenever an evicted graph is saved again
+			}
+			else {
+				graph.calculateCoverage();
+			}
+			return graph;
+		} catch (RuntimeException e) { // truncated or otherwise corrupt file
+			throw new IOException(file.getName()+" is corrupt.", e);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of a graph. The file is written to a temporary file first and then renamed.
+	 * @param graph
+	 * @param file
+	 * @param withCoverage If true, the driving times and the reachable demands are stored as well (only possible if the exact driving times exist, see DrivingTimesCache.hasExactDrivingTimes).
+	 * @throws IOException
+	 */
+	public static void save(AmbulanceGraph graph, File file, boolean withCoverage) throws IOException {
+		withCoverage = withCoverage && DrivingTimesCache.hasExactDrivingTimes(graph);
+		int numberOfNodes = graph.nodes.size();
+		int numberOfEdges = graph.edgeTargets.length;
+		int numberOfBases = graph.bases.size();
+		int numberOfDemands = graph.demands.size();
+		int numberOfProbabilities = 0;
+		for (Demand demand : graph.demands) numberOfProbabilities += demand.probabilities.length;
+		byte[] graphName = graph.name.getBytes(StandardCharsets.UTF_8);
+		byte[][] names = new byte[numberOfNodes][];
+		long sizeOfNames = 0;
+		for (Node node : graph.nodes) {
+			names[node.index-1] = node.name.getBytes(StandardCharsets.UTF_8); //node id is 1-based
+			sizeOfNames += 4 + names[node.index-1].length;
+		}
+
+		long size = MAGIC.length + 4 + 3*4 + 8 + 5*4 + 4 + graphName.length
+				+ sizeOfNames + 16L*numberOfNodes
+				+ 4L*(numberOfNodes+1) + 4L*numberOfEdges + 8L*numberOfEdges
+				+ 4L*numberOfBases + 16L*numberOfBases
+				+ 4L*numberOfDemands + 4L*(numberOfDemands+1) + 8L*numberOfProbabilities
+				+ (withCoverage ? DrivingTimesCache.getSize(graph) : 0);
+
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temporaryFile = File.createTempFile("snapshot", ".tmp", directory);
+		try {
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(temporaryFile, "rw"); FileChannel channel = randomAccessFile.getChannel()) {
+				MappedFile buffer = new MappedFile(channel, FileChannel.MapMode.READ_WRITE, size, 0);
+
+				// header
+				buffer.put(MAGIC);
+				buffer.putInt(VERSION);
+				buffer.putInt(withCoverage ? 1 : 0);
+				buffer.putInt(graph.drivingTimesMethod);
+				buffer.putDouble(graph.getMaxTime());
+				buffer.putInt(numberOfNodes);
+				buffer.putInt(numberOfEdges);
+				buffer.putInt(numberOfBases);
+				buffer.putInt(numberOfDemands);
+				buffer.putInt(numberOfProbabilities);
+				buffer.putString(graphName);
+
+				// nodes
+				for (byte[] name : names) buffer.putString(name);
+				for (Node node : graph.nodes) {
+					buffer.putDouble(node.coordinates.x);
+					buffer.putDouble(node.coordinates.y);
+				}
+
+				// edges
+				buffer.putInts(graph.edgeOffsets);
+				buffer.putInts(graph.edgeTargets);
+				buffer.putDoubles(graph.edgeWeights);
+
+				// bases
+				for (Base base : graph.bases) buffer.putInt(base.node.index-1); //node id is 1-based
+				for (Base base : graph.bases) {
+					buffer.putDouble(base.costs);
+					buffer.putDouble(base.costsPerAmbulance);
+				}
+
+				// demands
+				for (Demand demand : graph.demands) buffer.putInt(demand.node.index-1); //node id is 1-based
+				int offset = 0;
+				buffer.putInt(offset);
+				for (Demand demand : graph.demands) buffer.putInt(offset += demand.probabilities.length);
+				for (Demand demand : graph.demands) buffer.putDoubles(demand.probabilities);
+
+				// coverage
+				if (withCoverage) DrivingTimesCache.putDrivingTimes(buffer, graph);
+				buffer.force();
+			}
+			Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			temporaryFile = null;
+		} catch (RuntimeException e) { // for example if the disk is full
+			throw new IOException("Snapshot of graph "+graph.name+" could not be written.", e);
+		} finally {
+			if (temporaryFile != null) temporaryFile.delete();
+		}
+	}
+}
@@ -1,20 +1,36 @@
 package edu.kit.ksri.als.dataExchange;
 
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.TreeSet;
 
 /**
- * Provides interface to a dedicated Excel file.
+ * Provides interface to a dedicated Excel file, or to a CSV/TSV file with the same columns.
+ * 
+ * All instances of this class that keep a workbook open are referenced in a static ArrayList.
+ * In streaming mode, only the cell values of the first two sheets are read (see {@link StreamingSheetReader}) and no workbook is kept.
+ * The values are kept in compact form in memory ({@link SheetRows}); Strings are only created for the current row.
+ * 
+ * The first sheet contains one row per node. The edges of a node are either stored in the node row as a dense list of 
+ * weights to all nodes (column H), or in the optional second sheet as sparse edge list with one row per edge: 
+ * graph name, name of the origin node, name of the destination node and weight (columns A to D).
  * 
- * All instances of this class are referenced in a static ArrayList.
+ * CSV and TSV files (.csv, .tsv) are always read like in streaming mode (see {@link DelimitedTextReader}).
+ * The first sheet is the file itself, the optional edge sheet is a file with the same name and ending ".edges.csv" or ".edges.tsv" in the same directory.
  *
  */
 public class ImportData {
@@ -26,19 +42,71 @@ public class ImportData {
 
 	public XSSFWorkbook workbook; // workbook of the import file
 	public XSSFSheet sheet;
+	public XSSFSheet edgeSheet; // sparse edge list (null if the workbook has only one sheet)
 	public Iterator<Row> rowIterator;
 	private Row currentRow;
+	
+	// streaming mode
+	SheetRows rows; // cell values of all rows of the first sheet except the title row (null if the workbook is opened)
+	SheetRows edgeRows; // cell values of all rows of the edge sheet except the title row
+	int nextRow = 0; // position of the next row in rows
+	private String[] currentCells; // cell values of the current row
+	
+	HashMap<String,int[]> rowIndex; // positions of the rows of every graph (created with the first access)
+	HashMap<String,int[]> edgeRowIndex; // positions of the rows of the edge sheet of every graph
+	int graphNameColumn = 0; // column A in Excel
 
 	/**
 	 * Creates interface to an import Excel file.
 	 * @param fileName	Name of the import file.
 	 */
 	public ImportData(String fileName) {
+		this(fileName, false);
+	}
+	
+	/**
+	 * Creates interface to an import Excel file.
+	 * @param fileName	Name of the import file.
+	 * @param streaming If true, the cell values of the first two sheets are read with the POI event model and the workbook is not opened.
+	 */
+	public ImportData(String fileName, boolean streaming) {
+		file = new File(fileName);
+		if (isDelimitedText(file)) {
+			rows = new SheetRows(graphNameColumn); // no rows if the file cannot be read
+			edgeRows = new SheetRows(graphNameColumn);
+			try {
+				rows = DelimitedTextReader.read(file, graphNameColumn);
+				File edgeFile = getEdgeFile(file);
+				if (edgeFile.exists()) edgeRows = DelimitedTextReader.read(edgeFile, graphNameColumn);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		if (streaming) {
+			rows = new SheetRows(graphNameColumn); // no rows if the file cannot be read
+			edgeRows = new SheetRows(graphNameColumn);
+			try {
+				ArrayList<SheetRows> sheets = StreamingSheetReader.read(file, 2, graphNameColumn);
+				if (sheets.size() > 0) rows = sheets.get(0);
+				if (sheets.size() > 1) edgeRows = sheets.get(1);
+			} catch (IOException e) {
+				e.printStackTrace();
+			} catch (OpenXML4JException e) {
+				e.printStackTrace();
+			} catch (SAXException e) {
+				e.printStackTrace();
+			} catch (ParserConfigurationException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		
 		try {
-			file = new File(fileName);
 			fileInputStream = new FileInputStream(file); //create FileInputStream for import file
 			workbook = new XSSFWorkbook(fileInputStream); //open Excel workbook of import file
 			sheet = workbook.getSheetAt(0);//get first (and usually only) sheet of the Excel file
+			if (workbook.getNumberOfSheets() > 1) edgeSheet = workbook.getSheetAt(1); // sparse edge list
 
 			rowIterator = sheet.iterator(); //create sheet iterator
 			rowIterator.next(); //skip first row (which is the title row)
@@ -51,19 +119,188 @@ public class ImportData {
 		}
 	}
 
+	/**
+	 * Creates an interface that shares the cell values and the row index of another one, but has its own current row.
+	 */
+	ImportData(ImportData importData) {
+		file = importData.file;
+		rows = importData.rows;
+		edgeRows = importData.edgeRows;
+		rowIndex = importData.rowIndex;
+		edgeRowIndex = importData.edgeRowIndex;
+	}
+	
+	/**
+	 * Creates an interface for another thread: the cell values and the row index are shared, the current row is not.
+	 * The row index is created first if necessary. Only possible in streaming mode or for CSV/TSV files.
+	 * @return New interface to the same rows.
+	 */
+	public ImportData share() {
+		if (rows == null) throw new IllegalStateException("An opened workbook cannot be shared between threads.");
+		if (rowIndex == null) createRowIndex();
+		return new ImportData(this);
+	}
+	
+	/**
+	 * @return True if the cell values have been read (streaming mode or CSV/TSV file) and no workbook is kept open.
+	 */
+	public boolean isStreaming() {
+		return rows != null;
+	}
+	
+	/**
+	 * @param file
+	 * @return True if the file is a CSV or TSV file (judging by its ending).
+	 */
+	public static boolean isDelimitedText(File file) {
+		String fileName = file.getName().toLowerCase();
+		return fileName.endsWith(".csv") || fileName.endsWith(".tsv");
+	}
+	
+	/**
+	 * @param file CSV or TSV file with the nodes.
+	 * @return File with the sparse edge list that belongs to the file, for example "Graphs.edges.csv" for "Graphs.csv" (may not exist).
+	 */
+	static File getEdgeFile(File file) {
+		String fileName = file.getName();
+		int dot = fileName.lastIndexOf('.');
+		return new File(file.getAbsoluteFile().getParentFile(), fileName.substring(0, dot)+".edges"+fileName.substring(dot));
+	}
+
+	public boolean hasNextRow() {
+		if (rows != null) return nextRow < rows.size();
+		return rowIterator.hasNext();
+	}
+
 	public void getNextRow() {
-		currentRow = rowIterator.next();
+		if (rows != null) currentCells = rows.getRow(nextRow++);
+		else currentRow = rowIterator.next();
+	}
+	
+	/**
+	 * Starts reading the rows from the beginning again (the row after the title row is the next row).
+	 */
+	public void reset() {
+		if (rows != null) {
+			nextRow = 0;
+		}
+		else {
+			rowIterator = sheet.iterator();
+			rowIterator.next(); //skip first row (which is the title row)
+		}
+	}
+
+	/**
+	 * Makes a row the current row.
+	 * @param row Position of the row as returned by {@link #getRowsOfGraph(String)}.
+	 */
+	public void goToRow(int row) {
+		if (rows != null) currentCells = rows.getRow(row);
+		else currentRow = sheet.getRow(row);
+	}
+	
+	/**
+	 * Makes a row of the edge sheet the current row.
+	 * @param row Position of the row as returned by {@link #getEdgeRowsOfGraph(String)}.
+	 */
+	public void goToEdgeRow(int row) {
+		if (rows != null) currentCells = edgeRows.getRow(row);
+		else currentRow = edgeSheet.getRow(row);
+	}
+	
+	/**
+	 * @param graphName
+	 * @return Positions of all rows of a graph (in the order of the file), empty if the file contains no such graph.
+	 */
+	public int[] getRowsOfGraph(String graphName) {
+		if (rowIndex == null) createRowIndex();
+		int[] rowsOfGraph = rowIndex.get(graphName);
+		return (rowsOfGraph == null) ? new int[0] : rowsOfGraph;
+	}
+	
+	/**
+	 * @param graphName
+	 * @return Positions of all rows of the edge sheet that belong to a graph, empty if there are none.
+	 */
+	public int[] getEdgeRowsOfGraph(String graphName) {
+		if (rowIndex == null) createRowIndex();
+		int[] rowsOfGraph = edgeRowIndex.get(graphName);
+		return (rowsOfGraph == null) ? new int[0] : rowsOfGraph;
+	}
+	
+	/**
+	 * @return Names of all graphs in the file in alphabetical order.
+	 */
+	public TreeSet<String> getGraphNames() {
+		if (rowIndex == null) createRowIndex();
+		return new TreeSet<String>(rowIndex.keySet());
+	}
+	
+	/**
+	 * Reads the graph name of every row once and stores the positions of the rows per graph, for the node sheet and the edge sheet.
+	 */
+	void createRowIndex() {
+		if (rows != null) { // indexed while reading
+			edgeRowIndex = edgeRows.getRowIndex();
+			rowIndex = rows.getRowIndex();
+		}
+		else {
+			edgeRowIndex = (edgeSheet == null) ? new HashMap<String,int[]>() : createRowIndex(edgeSheet);
+			rowIndex = createRowIndex(sheet);
+		}
+	}
+	
+	/**
+	 * @param sheetOfWorkbook Sheet of the opened workbook.
+	 * @return Row numbers per graph.
+	 */
+	HashMap<String,int[]> createRowIndex(XSSFSheet sheetOfWorkbook) {
+		HashMap<String,int[]> index = new HashMap<String,int[]>();
+		HashMap<String,Integer> numberOfRows = new HashMap<String,Integer>();
+		Iterator<Row> iterator = sheetOfWorkbook.iterator();
+		iterator.next(); //skip first row (which is the title row)
+		while (iterator.hasNext()) {
+			Row row = iterator.next();
+			if (row.getCell(graphNameColumn) == null) continue; // row without graph name (for example an empty row)
+			addToRowIndex(index, numberOfRows, row.getCell(graphNameColumn).getStringCellValue(), row.getRowNum());
+		}
+		return trimRowIndex(index, numberOfRows);
+	}
+	
+	/**
+	 * Cuts the arrays of row positions to their actual length.
+	 */
+	static HashMap<String,int[]> trimRowIndex(HashMap<String,int[]> index, HashMap<String,Integer> numberOfRows) {
+		for (String graphName : numberOfRows.keySet()) index.put(graphName, Arrays.copyOf(index.get(graphName), numberOfRows.get(graphName)));
+		return index;
+	}
+	
+	/**
+	 * Appends the position of a row to the rows of its graph.
+	 */
+	static void addToRowIndex(HashMap<String,int[]> index, HashMap<String,Integer> numberOfRows, String graphName, int row) {
+		int[] rowsOfGraph = index.get(graphName);
+		int count = numberOfRows.containsKey(graphName) ? numberOfRows.get(graphName) : 0;
+		if (rowsOfGraph == null || count == rowsOfGraph.length) {
+			rowsOfGraph = (rowsOfGraph == null) ? new int[16] : Arrays.copyOf(rowsOfGraph, 2*count);
+			index.put(graphName, rowsOfGraph);
+		}
+		rowsOfGraph[count] = row;
+		numberOfRows.put(graphName, count+1);
 	}
 
 	public String getCellInCurrentRowAsString(int cellNumber) {
+		if (rows != null) return (cellNumber < currentCells.length) ? currentCells[cellNumber] : null;
 		return currentRow.getCell(cellNumber).getStringCellValue();
 	}
 
 	public double getCellInCurrentRowAsDouble(int cellNumber) {
+		if (rows != null) return Double.parseDouble(currentCells[cellNumber].replace(',', '.')); // CSV files may use German number notation
 		return currentRow.getCell(cellNumber).getNumericCellValue();
 	}
 
 	public boolean isCellInCurrentRowNotNull (int cellNumber) {
+		if (rows != null) return (cellNumber < currentCells.length && currentCells[cellNumber] != null);
 		return (currentRow.getCell(cellNumber) != null);
 	}
 	
@@ -0,0 +1,210 @@
+package edu.kit.ksri.als.dataExchange;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequential access to a file of any size through memory mappings (FileChannel.map).
+ * A single mapping is limited to 2 GB, so the file is mapped in windows of at most WINDOW_SIZE bytes:
+ * whenever a value does not fit into the current window, the next window is mapped from the position of the value on.
+ * Arrays are read and written in parts that fit into the window, so a row of driving times may span several windows.
+ * Mappings remain valid after the channel is closed.
+ */
+class MappedFile {
+
+	static final long WINDOW_SIZE = 1L << 30; // bytes mapped at once (1 GB)
+
+	FileChannel channel;
+	FileChannel.MapMode mode;
+	long size; // size of the file (of the mapped part when writing)
+	MappedByteBuffer window;
+	long windowStart = 0; // position of the window in the file
+
+	/**
+	 * @param channel Channel of the file.
+	 * @param mode READ_ONLY to read, READ_WRITE to write.
+	 * @param size Number of bytes that will be read or written.
+	 * @param position Position to start at.
+	 * @throws IOException
+	 */
+	MappedFile(FileChannel channel, FileChannel.MapMode mode, long size, long position) throws IOException {
+		this.channel = channel;
+		this.mode = mode;
+		this.size = size;
+		map(position);
+	}
+
+	/**
+	 * @return Current position in the file.
+	 */
+	long position() {
+		return windowStart + window.position();
+	}
+
+	/**
+	 * Maps the window starting at a position.
+	 */
+	void map(long position) throws IOException {
+		if (mode == FileChannel.MapMode.READ_WRITE && window != null) window.force();
+		windowStart = position;
+		window = channel.map(mode, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+	}
+
+	/**
+	 * Makes sure that the window contains the next bytes.
+	 * @param bytes Number of bytes (at most WINDOW_SIZE).
+	 * @return The window, positioned at the current position.
+	 */
+	MappedByteBuffer require(int bytes) throws IOException {
+		if (window.remaining() < bytes) map(position());
+		return window;
+	}
+
+	/**
+	 * @param bytes Number of bytes wanted.
+	 * @return Number of bytes of the window from the current position on (the next window is mapped if the current one is used up).
+	 */
+	int available(long bytes) throws IOException {
+		if (!window.hasRemaining()) map(position());
+		return (int) Math.min(bytes, window.remaining());
+	}
+
+	/**
+	 * Writes all changes to the storage device.
+	 */
+	void force() {
+		window.force();
+	}
+
+	int getInt() throws IOException {
+		return require(4).getInt();
+	}
+
+	double getDouble() throws IOException {
+		return require(8).getDouble();
+	}
+
+	void putInt(int value) throws IOException {
+		require(4).putInt(value);
+	}
+
+	void putDouble(double value) throws IOException {
+		require(8).putDouble(value);
+	}
+
+	/**
+	 * Fills an array from the file.
+	 * @return The array.
+	 */
+	byte[] get(byte[] values) throws IOException {
+		for (int offset=0; offset<values.length; ) {
+			int length = available(values.length-offset);
+			window.get(values, offset, length);
+			offset += length;
+		}
+		return values;
+	}
+
+	/**
+	 * Writes an array to the file.
+	 */
+	void put(byte[] values) throws IOException {
+		for (int offset=0; offset<values.length; ) {
+			int length = available(values.length-offset);
+			window.put(values, offset, length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Fills an array from the file.
+	 * @return The array.
+	 */
+	int[] getInts(int[] values) throws IOException {
+		for (int offset=0; offset<values.length; ) {
+			int length = (int) Math.min(values.length-offset, WINDOW_SIZE/4);
+			require(4*length).asIntBuffer().get(values, offset, length);
+			window.position(window.position() + 4*length);
+			offset += length;
+		}
+		return values;
+	}
+
+	/**
+	 * Writes an array to the file.
+	 */
+	void putInts(int[] values) throws IOException {
+		for (int offset=0; offset<values.length; ) {
+			int length = (int) Math.min(values.length-offset, WINDOW_SIZE/4);
+			require(4*length).asIntBuffer().put(values, offset, length);
+			window.position(window.position() + 4*length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Fills an array from the file.
+	 * @return The array.
+	 */
+	double[] getDoubles(double[] values) throws IOException {
+		for (int offset=0; offset<values.length; ) {
+			int length = (int) Math.min(values.length-offset, WINDOW_SIZE/8);
+			require(8*length).asDoubleBuffer().get(values, offset, length);
+			window.position(window.position() + 8*length);
+			offset += length;
+		}
+		return values;
+	}
+
+	/**
+	 * Writes an array to the file.
+	 */
+	void putDoubles(double[] values) throws IOException {
+		for (int offset=0; offset<values.length; ) {
+			int length = (int) Math.min(values.length-offset, WINDOW_SIZE/8);
+			require(8*length).asDoubleBuffer().put(values, offset, length);
+			window.position(window.position() + 8*length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Maps rows of doubles at the current position for reading them later (without copying them) and moves behind them.
+	 * The rows are split into windows of at most WINDOW_SIZE bytes (at least one row per window), and a row never spans two windows.
+	 * The windows stay valid after the channel has been closed.
+	 * @param numberOfRows
+	 * @param rowLength Number of doubles per row.
+	 * @return The windows.
+	 */
+	DoubleBuffer[] mapRows(int numberOfRows, int rowLength) throws IOException {
+		long rowSize = 8L*rowLength;
+		if (numberOfRows == 0 || rowSize == 0) return new DoubleBuffer[0];
+		int rowsPerWindow = (int) Math.max(1, Math.min(numberOfRows, WINDOW_SIZE/rowSize));
+		long start = position();
+		DoubleBuffer[] windows = new DoubleBuffer[(numberOfRows+rowsPerWindow-1)/rowsPerWindow];
+		for (int w=0; w<windows.length; w++) {
+			int rows = Math.min(rowsPerWindow, numberOfRows - w*rowsPerWindow);
+			windows[w] = channel.map(mode, start + w*rowsPerWindow*rowSize, rows*rowSize).asDoubleBuffer();
+		}
+		map(start + numberOfRows*rowSize);
+		return windows;
+	}
+
+	/**
+	 * Reads a String stored as length in bytes and UTF-8 bytes.
+	 */
+	String getString() throws IOException {
+		return new String(get(new byte[getInt()]), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes a String as length in bytes and UTF-8 bytes.
+	 */
+	void putString(byte[] utf8) throws IOException {
+		putInt(utf8.length);
+		put(utf8);
+	}
+}
@@ -0,0 +1,145 @@
+package edu.kit.ksri.als.dataExchange;
+
+/**
+ * Parses lists of decimal numbers separated by ";" as used for the edge weights and the demand probabilities in the import files,
+ * for example "1,5;-;12.25". Both German (",") and English (".") decimal notation are accepted. The entry "-" means no value
+ * (it is allowed for edge weights, but not for probabilities, see {@link #toProbabilities(CharSequence)}).
+ * Empty entries (for example the second one of "1;;2") are no numbers and are rejected, so a missing value is not taken for "-".
+ *
+ * The characters are read directly from the text, so no intermediate Strings or Double objects are created.
+ * Numbers with up to 15 significant digits (and at most 22 decimal places) are converted with a single exact division,
+ * which gives the same result as Double.parseDouble. Other numbers (for example with exponent) are passed to Double.parseDouble.
+ *
+ * An instance can be reused for any number of texts.
+ */
+public class NumberListTokenizer {
+
+	static final double[] POWERS_OF_TEN = new double[23]; // 10^0 to 10^22 are exact doubles
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i=1; i<POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = 10.0*POWERS_OF_TEN[i-1];
+	}
+
+	CharSequence text;
+	int position; // start of the next entry
+	int end;
+
+	/**
+	 * Starts reading a new text.
+	 * @param text List of numbers separated by ";". A ";" at the end is ignored.
+	 */
+	public void setText(CharSequence text) {
+		this.text = text;
+		position = 0;
+		end = text.length();
+	}
+
+	/**
+	 * @return True if there is another entry.
+	 */
+	public boolean hasNext() {
+		return position < end;
+	}
+
+	/**
+	 * Reads the next entry.
+	 * @return The number, or Double.NaN if the entry is "-".
+	 * @throws NumberFormatException If the entry is empty or no number.
+	 */
+	public double next() {
+		int start = position;
+		int stop = start;
+		while (stop < end && text.charAt(stop) != ';') stop++;
+		position = stop+1;
+		return parse(start, stop);
+	}
+
+	/**
+	 * Counts the entries of the text, independent of how many have been read.
+	 * @return Number of entries.
+	 */
+	public int count() {
+		if (end == 0) return 0;
+		int count = 1;
+		for (int i=0; i<end-1; i++) { // a separator at the end does not start another entry
+			if (text.charAt(i) == ';') count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Reads all entries of a text into an array.
+	 * @param text List of numbers separated by ";".
+	 * @return One number per entry (Double.NaN for "-").
+	 */
+	public double[] toArray(CharSequence text) {
+		setText(text);
+		double[] values = new double[count()];
+		for (int i=0; i<values.length; i++) values[i] = next();
+		return values;
+	}
+
+	/**
+	 * Reads a probability distribution into an array. Every entry must be a number; "-" is rejected
+	 * instead of being returned as Double.NaN, which would make every sum of the probabilities NaN.
+	 * @param text List of probabilities separated by ";".
+	 * @return One probability per entry.
+	 * @throws NumberFormatException If an entry is missing or no number.
+	 */
+	public double[] toProbabilities(CharSequence text) {
+		double[] values = toArray(text);
+		for (int i=0; i<values.length; i++) {
+			if (Double.isNaN(values[i])) throw new NumberFormatException("Probability "+(i+1)+" is missing in \""+text+"\".");
+		}
+		return values;
+	}
+
+	/**
+	 * Parses a number between two positions of the text.
+	 * @param start First character.
+	 * @param stop Position behind the last character.
+	 * @return The number, or Double.NaN for "-".
+	 * @throws NumberFormatException If the entry is empty or no number.
+	 */
+	double parse(int start, int stop) {
+		// ignore surrounding white space
+		while (start < stop && Character.isWhitespace(text.charAt(start))) start++;
+		while (stop > start && Character.isWhitespace(text.charAt(stop-1))) stop--;
+		if (start == stop) throw new NumberFormatException("Empty entry in \""+text+"\"."); // only "-" means no value
+		if (stop-start == 1 && text.charAt(start) == '-') return Double.NaN; // no value
+
+		int i = start;
+		boolean negative = false;
+		if (text.charAt(i) == '-' || text.charAt(i) == '+') negative = (text.charAt(i++) == '-');
+
+		long mantissa = 0; // all digits without the decimal separator
+		int numberOfDigits = 0;
+		int decimalPlaces = -1; // -1 as long as there is no decimal separator
+		for (; i<stop; i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (mantissa > 99999999999999L) return parseSlowly(start, stop); // more than 15 significant digits
+				mantissa = 10*mantissa + (c-'0');
+				numberOfDigits++;
+				if (decimalPlaces >= 0) decimalPlaces++;
+			}
+			else if ((c == ',' || c == '.') && decimalPlaces < 0) {
+				decimalPlaces = 0;
+			}
+			else {
+				return parseSlowly(start, stop); // for example an exponent
+			}
+		}
+		if (numberOfDigits == 0 || decimalPlaces >= POWERS_OF_TEN.length) return parseSlowly(start, stop);
+
+		double value = (decimalPlaces > 0) ? mantissa/POWERS_OF_TEN[decimalPlaces] : mantissa; // mantissa < 2^53, so the division is rounded correctly
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a number with Double.parseDouble (only for numbers that cannot be converted exactly by {@link #parse(int, int)}).
+	 */
+	double parseSlowly(int start, int stop) {
+		return Double.parseDouble(text.subSequence(start, stop).toString().replace(',', '.'));
+	}
+}
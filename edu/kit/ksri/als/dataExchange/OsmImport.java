@@ -0,0 +1,477 @@
+package edu.kit.ksri.als.dataExchange;
+
+import edu.kit.ksri.als.graph.AmbulanceGraph;
+import edu.kit.ksri.als.graph.Base;
+import edu.kit.ksri.als.graph.BasicGraph;
+import edu.kit.ksri.als.graph.Demand;
+import edu.kit.ksri.als.graph.Node;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Creates graphs from the road network of an OpenStreetMap extract (.osm.pbf), see {@link OsmPbfReader}.
+ *
+ * The road network is read once in two passes over the file: the ways with a tag highway listed in speeds, then the coordinates
+ * of their nodes. Chains of nodes of degree 2 are simplified: a graph node is only created at junctions (nodes shared by several ways),
+ * at the ends of ways, at the borders of the extract, and at the nodes next to the locations of bases and demands.
+ * The weight of an edge is the driving time in minutes along the simplified chain (length divided by the speed of the road class or by maxspeed).
+ * One-way streets yield edges in one direction only. Node names are the OSM node ids, coordinates are longitude (x) and latitude (y) in degrees.
+ *
+ * Bases and demands are read from a side file in the format of the graph import (Excel, CSV or TSV, see {@link ImportData}):
+ * one row per location with graph name, location name, base (0/1), demand (0/1), costs per base, costs per ambulance, demand probabilities,
+ * and longitude and latitude in columns I and J (column H is not used). Every location is placed at the nearest road node,
+ * which is then named after the location.
+ */
+public class OsmImport {
+
+	public File file;
+	public HashMap<String,Double> speeds = getDefaultSpeeds(); // speed in km/h per value of the tag highway (roads of other types are not imported)
+	public int numberOfSkippedLocations = 0; // locations of the last created graph that could not be placed on the road network (no coordinates or no road nodes)
+	int parallelism; // number of worker threads decoding the file
+
+	// road network before simplification (read once), indexed by position in nodeIds
+	long[] nodeIds; // OSM ids of all nodes of the imported ways, ascending
+	double[] latitudes; // NaN if the node is not in the extract
+	double[] longitudes;
+	boolean[] junctions; // nodes that become graph nodes in any case
+	int[] wayOffsets; // the nodes of way w are wayNodes[wayOffsets[w]] to wayNodes[wayOffsets[w+1]-1]
+	int[] wayNodes; // positions of the nodes in nodeIds
+	double[] waySpeeds; // km/h
+	byte[] wayDirections; // 0=both directions, 1=only in the direction of the way, -1=only against it
+	int numberOfWays = 0;
+
+	// grid index of the nodes inside the extract for placing locations (created on first use)
+	int[] gridOffsets; // the nodes in cell c are gridNodes[gridOffsets[c]] to gridNodes[gridOffsets[c+1]-1], cells row by row
+	int[] gridNodes; // positions in nodeIds
+	double gridLongitude, gridLatitude; // south-west corner of the grid
+	double gridCellSize; // in degrees
+	int gridColumns, gridRows;
+
+	// column numbers in the side file (0-based), as in the graph import
+	int nodeNameColumn				= 1; // column B in Excel
+	int isBaseColumn 				= 2; // column C in Excel
+	int isDemandColumn				= 3; // column D in Excel
+	int baseCostsColumn 			= 4; // column E in Excel
+	int ambulanceCostsColumn		= 5; // column F in Excel
+	int demandProbabilitiesColumn 	= 6; // column G in Excel
+	int longitudeColumn 			= 8; // column I in Excel
+	int latitudeColumn 				= 9; // column J in Excel
+
+	/**
+	 * @param fileName Name of the OpenStreetMap extract (.osm.pbf).
+	 */
+	public OsmImport(String fileName) {
+		this(fileName, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param fileName Name of the OpenStreetMap extract (.osm.pbf).
+	 * @param parallelism Number of worker threads decoding the file.
+	 */
+	public OsmImport(String fileName, int parallelism) {
+		this.file = new File(fileName);
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return Typical speeds in km/h for the road classes usable by ambulances.
+	 */
+	public static HashMap<String,Double> getDefaultSpeeds() {
+		HashMap<String,Double> speeds = new HashMap<String,Double>();
+		speeds.put("motorway", 120.0);
+		speeds.put("motorway_link", 60.0);
+		speeds.put("trunk", 100.0);
+		speeds.put("trunk_link", 50.0);
+		speeds.put("primary", 80.0);
+		speeds.put("primary_link", 40.0);
+		speeds.put("secondary", 70.0);
+		speeds.put("secondary_link", 35.0);
+		speeds.put("tertiary", 60.0);
+		speeds.put("tertiary_link", 30.0);
+		speeds.put("unclassified", 45.0);
+		speeds.put("residential", 30.0);
+		speeds.put("living_street", 10.0);
+		speeds.put("service", 15.0);
+		speeds.put("road", 30.0);
+		return speeds;
+	}
+
+	/**
+	 * Reads the road network from the file (only on the first call).
+	 * @throws IOException If the file cannot be read.
+	 */
+	public synchronized void read() throws IOException {
+		if (nodeIds != null) return;
+		OsmPbfReader reader = new OsmPbfReader(file, parallelism);
+
+		// (1) read the roads with their node ids
+		long[][] refs = new long[1][1024]; // node ids of all ways (in an array to be grown inside the handler)
+		int[] numberOfRefs = {0};
+		wayOffsets = new int[1024];
+		waySpeeds = new double[1024];
+		wayDirections = new byte[1024];
+		numberOfWays = 0;
+		reader.readWays(speeds.keySet(), new OsmPbfReader.WayHandler() {
+			public void way(OsmPbfReader.Way way) {
+				if (way.refs.length < 2) return;
+				if (numberOfWays+1 == wayOffsets.length) {
+					wayOffsets = Arrays.copyOf(wayOffsets, 2*wayOffsets.length);
+					waySpeeds = Arrays.copyOf(waySpeeds, wayOffsets.length);
+					wayDirections = Arrays.copyOf(wayDirections, wayOffsets.length);
+				}
+				if (numberOfRefs[0]+way.refs.length > refs[0].length) refs[0] = Arrays.copyOf(refs[0], Math.max(2*refs[0].length, numberOfRefs[0]+way.refs.length));
+				System.arraycopy(way.refs, 0, refs[0], numberOfRefs[0], way.refs.length);
+				numberOfRefs[0] += way.refs.length;
+				waySpeeds[numberOfWays] = getSpeed(way);
+				wayDirections[numberOfWays] = getDirection(way);
+				wayOffsets[++numberOfWays] = numberOfRefs[0];
+			}
+		});
+		wayOffsets = Arrays.copyOf(wayOffsets, numberOfWays+1);
+		waySpeeds = Arrays.copyOf(waySpeeds, numberOfWays);
+		wayDirections = Arrays.copyOf(wayDirections, numberOfWays);
+
+		// (2) number the nodes: sorted ids without duplicates
+		long[] ids = Arrays.copyOf(refs[0], numberOfRefs[0]);
+		Arrays.parallelSort(ids);
+		int numberOfNodes = 0;
+		for (int i=0; i<ids.length; i++) {
+			if (i == 0 || ids[i] != ids[i-1]) ids[numberOfNodes++] = ids[i];
+		}
+		nodeIds = Arrays.copyOf(ids, numberOfNodes);
+		ids = null;
+
+		// (3) replace the ids by positions and find the junctions (nodes referenced more than once) and the ends of the ways
+		wayNodes = new int[numberOfRefs[0]];
+		int[] references = new int[numberOfNodes];
+		for (int k=0; k<numberOfRefs[0]; k++) {
+			wayNodes[k] = Arrays.binarySearch(nodeIds, refs[0][k]);
+			references[wayNodes[k]]++;
+		}
+		refs[0] = null;
+		junctions = new boolean[numberOfNodes];
+		for (int p=0; p<numberOfNodes; p++) junctions[p] = (references[p] > 1);
+		for (int w=0; w<numberOfWays; w++) {
+			junctions[wayNodes[wayOffsets[w]]] = true;
+			junctions[wayNodes[wayOffsets[w+1]-1]] = true;
+		}
+
+		// (4) read the coordinates of the nodes
+		latitudes = new double[numberOfNodes];
+		longitudes = new double[numberOfNodes];
+		Arrays.fill(latitudes, Double.NaN);
+		Arrays.fill(longitudes, Double.NaN);
+		reader.readNodes(nodeIds, new OsmPbfReader.NodeHandler() {
+			public void node(int position, double latitude, double longitude) {
+				latitudes[position] = latitude;
+				longitudes[position] = longitude;
+			}
+		});
+
+		// (5) ways leaving the extract end at the last node inside
+		for (int w=0; w<numberOfWays; w++) {
+			for (int k=wayOffsets[w]; k<wayOffsets[w+1]; k++) {
+				if (!Double.isNaN(latitudes[wayNodes[k]])) continue;
+				if (k > wayOffsets[w]) junctions[wayNodes[k-1]] = true;
+				if (k+1 < wayOffsets[w+1]) junctions[wayNodes[k+1]] = true;
+			}
+		}
+	}
+
+	/**
+	 * Creates a graph of the road network without bases and demands.
+	 * @param graphName
+	 * @return The graph.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public BasicGraph createGraph(String graphName) throws IOException {
+		read();
+		BasicGraph graph = new BasicGraph(graphName);
+		createNodesAndEdges(graph, junctions);
+		return graph;
+	}
+
+	/**
+	 * Creates an ambulance graph of the road network with the bases and demands of a graph in the side file and calculates its coverage
+	 * for the default time limit (AmbulanceGraph.DEFAULT_MAX_TIME, as for graphs of an import file).
+	 * @param graphName Name of the graph in the side file.
+	 * @param sideFile File with the locations of bases and demands.
+	 * @param drivingTimesMethod 0=bounded Dijkstra from the bases (only driving times up to maxTime), 1=full matrix (Tripel algorithm),
+	 * 2=full matrix (parallel tiled Tripel algorithm)
+	 * @return The graph. Locations that cannot be placed (no coordinates) are skipped and counted in numberOfSkippedLocations.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public AmbulanceGraph createGraph(String graphName, ImportData sideFile, int drivingTimesMethod) throws IOException {
+		return createGraph(graphName, sideFile, drivingTimesMethod, AmbulanceGraph.DEFAULT_MAX_TIME);
+	}
+
+	/**
+	 * Creates an ambulance graph of the road network with the bases and demands of a graph in the side file and calculates its coverage.
+	 * @param graphName Name of the graph in the side file.
+	 * @param sideFile File with the locations of bases and demands.
+	 * @param drivingTimesMethod 0=bounded Dijkstra from the bases (only driving times up to maxTime), 1=full matrix (Tripel algorithm),
+	 * 2=full matrix (parallel tiled Tripel algorithm)
+	 * @param maxTime Time limit for reaching an emergency.
+	 * @return The graph. Locations that cannot be placed (no coordinates) are skipped and counted in numberOfSkippedLocations.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public AmbulanceGraph createGraph(String graphName, ImportData sideFile, int drivingTimesMethod, double maxTime) throws IOException {
+		read();
+		numberOfSkippedLocations = 0;
+
+		// place the locations at the nearest road nodes, which are kept in the simplified graph
+		int[] rows = sideFile.getRowsOfGraph(graphName);
+		int[] locations = new int[rows.length]; // position of the road node per row, -1 without coordinates
+		boolean[] keep = junctions.clone();
+		for (int r=0; r<rows.length; r++) {
+			sideFile.goToRow(rows[r]);
+			locations[r] = -1;
+			if (!sideFile.isCellInCurrentRowNotNull(longitudeColumn) || !sideFile.isCellInCurrentRowNotNull(latitudeColumn)) {
+				numberOfSkippedLocations++; // no coordinates
+				continue;
+			}
+			locations[r] = findNearestNode(sideFile.getCellInCurrentRowAsDouble(longitudeColumn), sideFile.getCellInCurrentRowAsDouble(latitudeColumn));
+			if (locations[r] >= 0) keep[locations[r]] = true;
+			else numberOfSkippedLocations++; // no road nodes
+		}
+
+		AmbulanceGraph graph = new AmbulanceGraph(graphName, drivingTimesMethod, maxTime);
+		int[] graphNodes = createNodesAndEdges(graph, keep);
+
+		// create bases and demands
+		NumberListTokenizer tokenizer = new NumberListTokenizer(); // parses the demand probabilities without creating Strings
+		boolean[] named = new boolean[graph.nodes.size()];
+		for (int r=0; r<rows.length; r++) {
+			if (locations[r] < 0) continue;
+			sideFile.goToRow(rows[r]);
+			Node node = graph.nodes.get(graphNodes[locations[r]]);
+			if (!named[node.index-1]) { //node id is 1-based
+				node.name = sideFile.getCellInCurrentRowAsString(nodeNameColumn); // the first location at a node gives it its name
+				named[node.index-1] = true;
+			}
+			if (sideFile.getCellInCurrentRowAsDouble(isBaseColumn) == 1) {
+				graph.bases.add(new Base(node, sideFile.getCellInCurrentRowAsDouble(baseCostsColumn), sideFile.getCellInCurrentRowAsDouble(ambulanceCostsColumn)));
+			}
+			if (sideFile.getCellInCurrentRowAsDouble(isDemandColumn) == 1) {
+				graph.demands.add(new Demand(node, tokenizer.toProbabilities(sideFile.getCellInCurrentRowAsString(demandProbabilitiesColumn))));
+			}
+		}
+
+		graph.calculateCoverage();
+		return graph;
+	}
+
+	/**
+	 * Creates the nodes to keep and the edges along the ways between them.
+	 * @param graph Graph without nodes and edges.
+	 * @param keep Nodes to keep (by position in nodeIds).
+	 * @return 0-based index of the graph node per position in nodeIds, -1 for removed nodes.
+	 */
+	int[] createNodesAndEdges(BasicGraph graph, boolean[] keep) {
+		int[] graphNodes = new int[nodeIds.length];
+		for (int p=0; p<nodeIds.length; p++) {
+			graphNodes[p] = -1;
+			if (!keep[p] || Double.isNaN(latitudes[p])) continue;
+			graphNodes[p] = graph.nodes.size();
+			graph.nodes.add(new Node(graph.nodes.size()+1, String.valueOf(nodeIds[p]), new Point2D.Double(longitudes[p], latitudes[p]))); //node id is 1-based
+		}
+
+		// follow every way and create an edge per chain between two kept nodes
+		int[] sources = new int[1024];
+		int[] targets = new int[1024];
+		double[] weights = new double[1024];
+		int numberOfEdges = 0;
+		for (int w=0; w<numberOfWays; w++) {
+			int start = -1; // kept node at the start of the current chain (position in nodeIds)
+			int previous = -1;
+			double length = 0; // in meters
+			for (int k=wayOffsets[w]; k<wayOffsets[w+1]; k++) {
+				int p = wayNodes[k];
+				if (Double.isNaN(latitudes[p])) { // outside of the extract
+					start = -1;
+					continue;
+				}
+				if (start >= 0) length += getDistance(previous, p);
+				previous = p;
+				if (graphNodes[p] < 0) continue;
+				if (start >= 0 && start != p) {
+					if (numberOfEdges+2 > sources.length) {
+						sources = Arrays.copyOf(sources, 2*sources.length);
+						targets = Arrays.copyOf(targets, sources.length);
+						weights = Arrays.copyOf(weights, sources.length);
+					}
+					double drivingTime = 0.06*length/waySpeeds[w]; // minutes
+					if (wayDirections[w] >= 0) {
+						sources[numberOfEdges] = graphNodes[start];
+						targets[numberOfEdges] = graphNodes[p];
+						weights[numberOfEdges++] = drivingTime;
+					}
+					if (wayDirections[w] <= 0) {
+						sources[numberOfEdges] = graphNodes[p];
+						targets[numberOfEdges] = graphNodes[start];
+						weights[numberOfEdges++] = drivingTime;
+					}
+				}
+				start = p;
+				length = 0;
+			}
+		}
+
+		// store the edges in CSR format (counting sort by origin node), parallel edges are merged to the fastest one
+		int numberOfNodes = graph.nodes.size();
+		int[] offsets = new int[numberOfNodes+1];
+		for (int e=0; e<numberOfEdges; e++) offsets[sources[e]+1]++;
+		for (int i=0; i<numberOfNodes; i++) offsets[i+1] += offsets[i];
+		int[] sortedTargets = new int[numberOfEdges];
+		double[] sortedWeights = new double[numberOfEdges];
+		int[] positions = Arrays.copyOf(offsets, numberOfNodes);
+		for (int e=0; e<numberOfEdges; e++) {
+			sortedTargets[positions[sources[e]]] = targets[e];
+			sortedWeights[positions[sources[e]]++] = weights[e];
+		}
+		int[] lastEdge = new int[numberOfNodes]; // position of the last edge to a target from the current origin node
+		Arrays.fill(lastEdge, -1);
+		graph.edgeOffsets = new int[numberOfNodes+1];
+		int numberOfMergedEdges = 0;
+		for (int i=0; i<numberOfNodes; i++) {
+			for (int e=offsets[i]; e<offsets[i+1]; e++) {
+				int target = sortedTargets[e];
+				if (lastEdge[target] >= graph.edgeOffsets[i]) { // parallel edge
+					sortedWeights[lastEdge[target]] = Math.min(sortedWeights[lastEdge[target]], sortedWeights[e]);
+					continue;
+				}
+				lastEdge[target] = numberOfMergedEdges;
+				sortedTargets[numberOfMergedEdges] = target;
+				sortedWeights[numberOfMergedEdges++] = sortedWeights[e];
+			}
+			graph.edgeOffsets[i+1] = numberOfMergedEdges;
+		}
+		graph.edgeTargets = Arrays.copyOf(sortedTargets, numberOfMergedEdges);
+		graph.edgeWeights = Arrays.copyOf(sortedWeights, numberOfMergedEdges);
+		return graphNodes;
+	}
+
+	/**
+	 * Finds the road node nearest to a location.
+	 * The cells of the grid index are searched in rings around the location until no closer node can be found.
+	 * @param longitude In degrees.
+	 * @param latitude In degrees.
+	 * @return Position of the node in nodeIds, -1 if there are no nodes.
+	 */
+	int findNearestNode(double longitude, double latitude) {
+		if (gridOffsets == null) createGrid();
+		double scale = Math.cos(Math.toRadians(latitude)); // length of a degree of longitude relative to a degree of latitude
+		int column = Math.max(0, Math.min(gridColumns-1, (int) ((longitude-gridLongitude)/gridCellSize)));
+		int row = Math.max(0, Math.min(gridRows-1, (int) ((latitude-gridLatitude)/gridCellSize)));
+		int nearest = -1;
+		double minDistance = Double.POSITIVE_INFINITY;
+		for (int ring=0; ring<Math.max(gridColumns, gridRows); ring++) {
+			double bound = (ring-1)*gridCellSize*Math.min(1, scale); // nodes outside of the rings searched so far are at least this far away
+			if (ring > 0 && bound > 0 && bound*bound > minDistance) break;
+			for (int y=row-ring; y<=row+ring; y++) {
+				if (y < 0 || y >= gridRows) continue;
+				for (int x=column-ring; x<=column+ring; x++) {
+					if (x < 0 || x >= gridColumns) continue;
+					if (y != row-ring && y != row+ring && x != column-ring && x != column+ring) continue; // only the border of the ring
+					int cell = y*gridColumns+x;
+					for (int c=gridOffsets[cell]; c<gridOffsets[cell+1]; c++) {
+						int p = gridNodes[c];
+						double dx = (longitudes[p]-longitude)*scale;
+						double dy = latitudes[p]-latitude;
+						double distance = dx*dx + dy*dy;
+						if (distance < minDistance || (distance == minDistance && p < nearest)) {
+							minDistance = distance;
+							nearest = p;
+						}
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Sorts the nodes inside the extract into a grid of square cells (in degrees) with about four nodes per cell (CSR format).
+	 */
+	void createGrid() {
+		double minLongitude = Double.POSITIVE_INFINITY, maxLongitude = Double.NEGATIVE_INFINITY;
+		double minLatitude = Double.POSITIVE_INFINITY, maxLatitude = Double.NEGATIVE_INFINITY;
+		int numberOfNodes = 0;
+		for (int p=0; p<nodeIds.length; p++) {
+			if (Double.isNaN(latitudes[p])) continue;
+			minLongitude = Math.min(minLongitude, longitudes[p]);
+			maxLongitude = Math.max(maxLongitude, longitudes[p]);
+			minLatitude = Math.min(minLatitude, latitudes[p]);
+			maxLatitude = Math.max(maxLatitude, latitudes[p]);
+			numberOfNodes++;
+		}
+		gridLongitude = (numberOfNodes > 0) ? minLongitude : 0;
+		gridLatitude = (numberOfNodes > 0) ? minLatitude : 0;
+		double area = (numberOfNodes > 0) ? Math.max(maxLongitude-minLongitude, 1e-6)*Math.max(maxLatitude-minLatitude, 1e-6) : 1;
+		gridCellSize = Math.sqrt(4*area/Math.max(1, numberOfNodes));
+		gridColumns = (numberOfNodes > 0) ? (int) ((maxLongitude-minLongitude)/gridCellSize)+1 : 1;
+		gridRows = (numberOfNodes > 0) ? (int) ((maxLatitude-minLatitude)/gridCellSize)+1 : 1;
+
+		int[] cells = new int[nodeIds.length];
+		gridOffsets = new int[gridColumns*gridRows+1];
+		for (int p=0; p<nodeIds.length; p++) {
+			if (Double.isNaN(latitudes[p])) {
+				cells[p] = -1;
+				continue;
+			}
+			int column = Math.min(gridColumns-1, (int) ((longitudes[p]-gridLongitude)/gridCellSize));
+			int row = Math.min(gridRows-1, (int) ((latitudes[p]-gridLatitude)/gridCellSize));
+			cells[p] = row*gridColumns+column;
+			gridOffsets[cells[p]+1]++;
+		}
+		for (int cell=0; cell<gridColumns*gridRows; cell++) gridOffsets[cell+1] += gridOffsets[cell];
+		gridNodes = new int[numberOfNodes];
+		int[] positions = Arrays.copyOf(gridOffsets, gridColumns*gridRows);
+		for (int p=0; p<nodeIds.length; p++) {
+			if (cells[p] >= 0) gridNodes[positions[cells[p]]++] = p;
+		}
+	}
+
+	/**
+	 * @return Great-circle distance between two nodes in meters (haversine formula).
+	 */
+	double getDistance(int from, int to) {
+		double phi1 = Math.toRadians(latitudes[from]);
+		double phi2 = Math.toRadians(latitudes[to]);
+		double sinLatitude = Math.sin(0.5*(phi2-phi1));
+		double sinLongitude = Math.sin(0.5*Math.toRadians(longitudes[to]-longitudes[from]));
+		double a = sinLatitude*sinLatitude + Math.cos(phi1)*Math.cos(phi2)*sinLongitude*sinLongitude;
+		return 2*6371008.8*Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	/**
+	 * @return Speed in km/h from the tag maxspeed (numbers in km/h or mph), otherwise the speed of the road class.
+	 */
+	double getSpeed(OsmPbfReader.Way way) {
+		double speed = speeds.get(way.highway);
+		if (way.maxspeed == null) return speed;
+		int end = 0;
+		while (end < way.maxspeed.length() && Character.isDigit(way.maxspeed.charAt(end))) end++;
+		if (end == 0) return speed; // for example "none" or "DE:urban"
+		double maxspeed = Double.parseDouble(way.maxspeed.substring(0, end));
+		if (way.maxspeed.contains("mph")) maxspeed *= 1.609344;
+		return (maxspeed > 0) ? maxspeed : speed;
+	}
+
+	/**
+	 * @return 0=both directions, 1=only in the direction of the way, -1=only against it (tag oneway; motorways and roundabouts are one-way by default).
+	 */
+	static byte getDirection(OsmPbfReader.Way way) {
+		if (way.oneway != null) {
+			if (way.oneway.equals("yes") || way.oneway.equals("true") || way.oneway.equals("1")) return 1;
+			if (way.oneway.equals("-1") || way.oneway.equals("reverse")) return -1;
+			if (way.oneway.equals("no") || way.oneway.equals("false") || way.oneway.equals("0")) return 0;
+		}
+		if (way.highway.equals("motorway") || "roundabout".equals(way.junction) || "circular".equals(way.junction)) return 1;
+		return 0;
+	}
+}
@@ -0,0 +1,497 @@
+package edu.kit.ksri.als.dataExchange;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads ways and node coordinates from an OpenStreetMap extract in PBF format (.osm.pbf).
+ *
+ * The file is read as a stream of blocks. The blocks are decompressed and decoded on a pool of worker threads;
+ * the results are handed to the handler on the calling thread in the order of the file, so the handler needs no synchronization.
+ * Only the parts of the format needed for road networks are decoded: ways with their tags and node references,
+ * and the coordinates of nodes (plain and dense). Relations and metadata are skipped.
+ * Blocks must be uncompressed or zlib-compressed (as written by all common tools).
+ */
+public class OsmPbfReader {
+
+	public File file;
+	int parallelism; // number of worker threads decoding blocks
+
+	/**
+	 * Creates a reader using one worker thread per available processor.
+	 * @param file PBF file.
+	 */
+	public OsmPbfReader(File file) {
+		this(file, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a reader.
+	 * @param file PBF file.
+	 * @param parallelism Number of worker threads.
+	 */
+	public OsmPbfReader(File file, int parallelism) {
+		this.file = file;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Receives ways in the order of the file.
+	 */
+	public interface WayHandler {
+		void way(Way way);
+	}
+
+	/**
+	 * Receives node coordinates in the order of the file.
+	 */
+	public interface NodeHandler {
+		/**
+		 * @param position Position of the node id in the array of requested ids.
+		 * @param latitude In degrees.
+		 * @param longitude In degrees.
+		 */
+		void node(int position, double latitude, double longitude);
+	}
+
+	/**
+	 * A way with the tags relevant for routing.
+	 */
+	public static class Way {
+		public long id;
+		public long[] refs; // ids of the nodes of the way in their order
+		public String highway; // value of the tag highway
+		public String maxspeed; // value of the tag maxspeed (null if missing)
+		public String oneway; // value of the tag oneway (null if missing)
+		public String junction; // value of the tag junction (null if missing)
+	}
+
+	/**
+	 * Reads all ways with a tag highway of one of the given values.
+	 * @param highways Values of the tag highway to read, for example "primary".
+	 * @param handler
+	 * @throws IOException If the file cannot be read or uses features that are not supported.
+	 */
+	public void readWays(Set<String> highways, WayHandler handler) throws IOException {
+		readBlocks(new BlockDecoder() {
+			@Override
+			Runnable decode(byte[] block) {
+				ArrayList<Way> ways = decodeWays(block, highways);
+				return new Runnable() {
+					public void run() {
+						for (Way way : ways) handler.way(way);
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * Reads the coordinates of the given nodes. Nodes that are not in the file are not reported.
+	 * @param nodeIds Ids of the nodes to read, sorted in ascending order without duplicates.
+	 * @param handler
+	 * @throws IOException If the file cannot be read or uses features that are not supported.
+	 */
+	public void readNodes(long[] nodeIds, NodeHandler handler) throws IOException {
+		readBlocks(new BlockDecoder() {
+			@Override
+			Runnable decode(byte[] block) {
+				NodeList nodes = decodeNodes(block, nodeIds);
+				return new Runnable() {
+					public void run() {
+						for (int n=0; n<nodes.size; n++) handler.node(nodes.positions[n], nodes.latitudes[n], nodes.longitudes[n]);
+					}
+				};
+			}
+		});
+	}
+
+	/**
+	 * Decodes one data block on a worker thread; the returned task is run on the calling thread.
+	 */
+	abstract static class BlockDecoder {
+		abstract Runnable decode(byte[] block);
+	}
+
+	/**
+	 * Reads the file block by block and decodes the data blocks in parallel.
+	 * At most two blocks per worker thread are held in memory at a time.
+	 */
+	void readBlocks(BlockDecoder decoder) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		ArrayDeque<Future<Runnable>> pending = new ArrayDeque<Future<Runnable>>();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			while (true) {
+				int headerLength;
+				try {
+					headerLength = in.readInt(); // length of the BlobHeader (big endian)
+				} catch (EOFException e) {
+					break; // end of file
+				}
+				ProtobufReader header = new ProtobufReader(readBytes(in, headerLength));
+				String type = null;
+				int blobLength = 0;
+				while (header.next()) {
+					if (header.field == 1) type = header.string();
+					else if (header.field == 3) blobLength = (int) header.varint();
+					else header.skip();
+				}
+				byte[] blob = readBytes(in, blobLength);
+
+				if ("OSMHeader".equals(type)) {
+					checkHeader(uncompress(blob));
+				}
+				else if ("OSMData".equals(type)) {
+					pending.add(pool.submit(new Callable<Runnable>() {
+						public Runnable call() throws IOException {
+							return decoder.decode(uncompress(blob));
+						}
+					}));
+					if (pending.size() >= 2*parallelism) pending.poll().get().run();
+				}
+				// blocks of other types are skipped
+			}
+			while (!pending.isEmpty()) pending.poll().get().run();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException("Block of "+file.getName()+" cannot be decoded.", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Reading "+file.getName()+" interrupted.", e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	static byte[] readBytes(DataInputStream in, int length) throws IOException {
+		if (length < 0 || length > 64 << 20) throw new IOException("Invalid block size "+length+".");
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Returns the content of a Blob message.
+	 * @throws IOException If the content is compressed with a method other than zlib.
+	 */
+	static byte[] uncompress(byte[] blob) throws IOException {
+		ProtobufReader reader = new ProtobufReader(blob);
+		byte[] raw = null;
+		int rawSize = -1;
+		int zlibStart = -1, zlibEnd = -1;
+		while (reader.next()) {
+			if (reader.field == 1) raw = reader.bytes();
+			else if (reader.field == 2) rawSize = (int) reader.varint();
+			else if (reader.field == 3) {
+				zlibEnd = reader.message();
+				zlibStart = reader.position;
+				reader.position = zlibEnd;
+			}
+			else if (reader.field == 4 || reader.field == 6 || reader.field == 7 || reader.field == 8) throw new IOException("Compression method "+reader.field+" of PBF blocks not supported (only zlib).");
+			else reader.skip();
+		}
+		if (raw != null) return raw;
+		if (zlibStart < 0 || rawSize < 0) throw new IOException("Empty PBF block.");
+
+		byte[] content = new byte[rawSize];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(blob, zlibStart, zlibEnd-zlibStart);
+			int length = 0;
+			while (length < rawSize && !inflater.finished()) {
+				int inflated = inflater.inflate(content, length, rawSize-length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				length += inflated;
+			}
+			if (length != rawSize) throw new IOException("PBF block shorter than declared.");
+		} catch (DataFormatException e) {
+			throw new IOException("PBF block cannot be decompressed.", e);
+		} finally {
+			inflater.end();
+		}
+		return content;
+	}
+
+	/**
+	 * Checks that the file requires no features beyond the OSM schema and dense nodes.
+	 */
+	static void checkHeader(byte[] headerBlock) throws IOException {
+		ProtobufReader reader = new ProtobufReader(headerBlock);
+		while (reader.next()) {
+			if (reader.field == 4) { // required_features
+				String feature = reader.string();
+				if (!feature.equals("OsmSchema-V0.6") && !feature.equals("DenseNodes")) throw new IOException("PBF feature "+feature+" not supported.");
+			}
+			else reader.skip();
+		}
+	}
+
+	/**
+	 * Reads the string table of a PrimitiveBlock.
+	 */
+	static String[] decodeStringTable(ProtobufReader reader) {
+		ArrayList<String> strings = new ArrayList<String>();
+		int end = reader.message();
+		while (reader.position < end && reader.next()) {
+			if (reader.field == 1) strings.add(reader.string());
+			else reader.skip();
+		}
+		return strings.toArray(new String[strings.size()]);
+	}
+
+	/**
+	 * Decodes the ways of a PrimitiveBlock whose tag highway has one of the given values.
+	 */
+	static ArrayList<Way> decodeWays(byte[] block, Set<String> highways) {
+		ArrayList<Way> ways = new ArrayList<Way>();
+		ProtobufReader reader = new ProtobufReader(block);
+		String[] strings = new String[0];
+		while (reader.next()) {
+			if (reader.field == 1) strings = decodeStringTable(reader); // the string table precedes the groups
+			else if (reader.field == 2) { // PrimitiveGroup
+				int groupEnd = reader.message();
+				while (reader.position < groupEnd && reader.next()) {
+					if (reader.field == 3) { // Way
+						int wayEnd = reader.message();
+						Way way = decodeWay(reader, wayEnd, strings, highways);
+						if (way != null) ways.add(way);
+						reader.position = wayEnd;
+					}
+					else reader.skip(); // nodes, dense nodes, relations
+				}
+			}
+			else reader.skip();
+		}
+		return ways;
+	}
+
+	/**
+	 * Decodes a Way message (null if it is not a way of the given highway values).
+	 */
+	static Way decodeWay(ProtobufReader reader, int end, String[] strings, Set<String> highways) {
+		Way way = new Way();
+		int[] keys = new int[0];
+		int[] values = new int[0];
+		long[] refs = new long[0];
+		while (reader.position < end && reader.next()) {
+			if (reader.field == 1) way.id = reader.varint();
+			else if (reader.field == 2) keys = reader.packedInts();
+			else if (reader.field == 3) values = reader.packedInts();
+			else if (reader.field == 8) refs = reader.packedDeltaLongs();
+			else reader.skip();
+		}
+		for (int t=0; t<keys.length && t<values.length; t++) {
+			String key = strings[keys[t]];
+			if (key.equals("highway")) way.highway = strings[values[t]];
+			else if (key.equals("maxspeed")) way.maxspeed = strings[values[t]];
+			else if (key.equals("oneway")) way.oneway = strings[values[t]];
+			else if (key.equals("junction")) way.junction = strings[values[t]];
+		}
+		if (way.highway == null || !highways.contains(way.highway)) return null;
+		way.refs = refs;
+		return way;
+	}
+
+	/**
+	 * Coordinates of requested nodes found in one block.
+	 */
+	static class NodeList {
+		int size = 0;
+		int[] positions = new int[64];
+		double[] latitudes = new double[64];
+		double[] longitudes = new double[64];
+
+		void add(int position, double latitude, double longitude) {
+			if (size == positions.length) {
+				positions = Arrays.copyOf(positions, 2*size);
+				latitudes = Arrays.copyOf(latitudes, 2*size);
+				longitudes = Arrays.copyOf(longitudes, 2*size);
+			}
+			positions[size] = position;
+			latitudes[size] = latitude;
+			longitudes[size++] = longitude;
+		}
+	}
+
+	/**
+	 * Decodes the coordinates of the requested nodes of a PrimitiveBlock.
+	 */
+	static NodeList decodeNodes(byte[] block, long[] nodeIds) {
+		NodeList nodes = new NodeList();
+		ProtobufReader reader = new ProtobufReader(block);
+		long granularity = 100; // in nanodegrees
+		long latitudeOffset = 0, longitudeOffset = 0;
+		ArrayList<int[]> groups = new ArrayList<int[]>(); // start and end of the groups (the block parameters may follow them)
+		while (reader.next()) {
+			if (reader.field == 2) {
+				int groupEnd = reader.message();
+				groups.add(new int[] {reader.position, groupEnd});
+				reader.position = groupEnd;
+			}
+			else if (reader.field == 17) granularity = reader.varint();
+			else if (reader.field == 19) latitudeOffset = reader.varint();
+			else if (reader.field == 20) longitudeOffset = reader.varint();
+			else reader.skip();
+		}
+		for (int[] group : groups) {
+			reader.position = group[0];
+			while (reader.position < group[1] && reader.next()) {
+				if (reader.field == 1) { // Node
+					int nodeEnd = reader.message();
+					long id = 0, latitude = 0, longitude = 0;
+					while (reader.position < nodeEnd && reader.next()) {
+						if (reader.field == 1) id = reader.signedVarint();
+						else if (reader.field == 8) latitude = reader.signedVarint();
+						else if (reader.field == 9) longitude = reader.signedVarint();
+						else reader.skip();
+					}
+					int position = Arrays.binarySearch(nodeIds, id);
+					if (position >= 0) nodes.add(position, 1e-9*(latitudeOffset+granularity*latitude), 1e-9*(longitudeOffset+granularity*longitude));
+				}
+				else if (reader.field == 2) { // DenseNodes
+					int denseEnd = reader.message();
+					long[] ids = new long[0], latitudes = new long[0], longitudes = new long[0];
+					while (reader.position < denseEnd && reader.next()) {
+						if (reader.field == 1) ids = reader.packedDeltaLongs();
+						else if (reader.field == 8) latitudes = reader.packedDeltaLongs();
+						else if (reader.field == 9) longitudes = reader.packedDeltaLongs();
+						else reader.skip(); // metadata and tags
+					}
+					int position = 0;
+					for (int n=0; n<ids.length && n<latitudes.length && n<longitudes.length; n++) {
+						// ids are usually ascending: search only behind the last match
+						int from = (position < nodeIds.length && (position == 0 || nodeIds[position-1] < ids[n])) ? position : 0;
+						int found = Arrays.binarySearch(nodeIds, from, nodeIds.length, ids[n]);
+						if (found >= 0) {
+							nodes.add(found, 1e-9*(latitudeOffset+granularity*latitudes[n]), 1e-9*(longitudeOffset+granularity*longitudes[n]));
+							position = found+1;
+						}
+						else position = -found-1;
+					}
+				}
+				else reader.skip(); // ways, relations
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Minimal reader for the protocol buffer wire format on a byte array.
+	 * After {@link #next()}, field and wireType describe the current field, whose value must be read or skipped.
+	 */
+	static class ProtobufReader {
+		byte[] buffer;
+		int position = 0;
+		int field; // number of the current field
+		int wireType; // 0=varint, 1=64 bit, 2=length-delimited, 5=32 bit
+
+		ProtobufReader(byte[] buffer) {
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Reads the key of the next field.
+		 * @return False at the end of the buffer.
+		 */
+		boolean next() {
+			if (position >= buffer.length) return false;
+			long key = varint();
+			field = (int) (key >>> 3);
+			wireType = (int) (key & 7);
+			return true;
+		}
+
+		long varint() {
+			long value = 0;
+			for (int shift=0; shift<64; shift+=7) {
+				byte b = buffer[position++];
+				value |= (long) (b & 0x7F) << shift;
+				if (b >= 0) return value;
+			}
+			throw new IllegalStateException("Malformed varint at position "+position+".");
+		}
+
+		long signedVarint() {
+			long value = varint();
+			return (value >>> 1) ^ -(value & 1); // zigzag decoding
+		}
+
+		/**
+		 * Reads the length of a length-delimited field; the position is then at the start of its content.
+		 * @return End of the content.
+		 */
+		int message() {
+			int length = (int) varint();
+			return position+length;
+		}
+
+		byte[] bytes() {
+			int end = message();
+			byte[] bytes = Arrays.copyOfRange(buffer, position, end);
+			position = end;
+			return bytes;
+		}
+
+		String string() {
+			int end = message();
+			String string = new String(buffer, position, end-position, StandardCharsets.UTF_8);
+			position = end;
+			return string;
+		}
+
+		/**
+		 * Reads packed unsigned 32 bit integers (or a single unpacked one).
+		 */
+		int[] packedInts() {
+			if (wireType == 0) return new int[] {(int) varint()};
+			int end = message();
+			int[] values = new int[end-position]; // at least one byte per value
+			int size = 0;
+			while (position < end) values[size++] = (int) varint();
+			return Arrays.copyOf(values, size);
+		}
+
+		/**
+		 * Reads packed, delta-coded signed 64 bit integers (or a single unpacked one).
+		 */
+		long[] packedDeltaLongs() {
+			if (wireType == 0) return new long[] {signedVarint()};
+			int end = message();
+			long[] values = new long[end-position];
+			int size = 0;
+			long value = 0;
+			while (position < end) {
+				value += signedVarint();
+				values[size++] = value;
+			}
+			return Arrays.copyOf(values, size);
+		}
+
+		/**
+		 * Skips the value of the current field.
+		 */
+		void skip() {
+			if (wireType == 0) varint();
+			else if (wireType == 1) position += 8;
+			else if (wireType == 2) position = message();
+			else if (wireType == 5) position += 4;
+			else throw new IllegalStateException("Unsupported wire type "+wireType+".");
+		}
+	}
+}
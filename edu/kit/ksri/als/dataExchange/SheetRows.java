@@ -0,0 +1,227 @@
+package edu.kit.ksri.als.dataExchange;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Cell values of the rows of a sheet, as read by {@link StreamingSheetReader} or {@link DelimitedTextReader}.
+ *
+ * The cells are stored as UTF-8 bytes in chunks of CHUNK_SIZE bytes: every row is the number of its cells followed by
+ * the length and the bytes of every cell (numbers as variable-length integers of 7 bits per byte), and a row never spans two chunks.
+ * Only the position of every row is kept as long (chunk in the upper, offset in the lower 32 bits), so the text of a sheet
+ * is not limited to 2 GB, and it takes about as much memory as the file (one byte per ASCII character plus one or two bytes per cell).
+ * Strings are created only for the row that is read (see {@link #getRow(int)}). Empty cells have no bytes and are returned as null.
+ * Rows are numbered by int, so a sheet holds at most MAX_ARRAY_LENGTH rows.
+ *
+ * The rows are indexed by the graph name (see {@link #getRowIndex()}) while they are added, so the sheet is not scanned a second time.
+ * Rows without graph name (for example rows of formatted empty cells) are kept but not indexed.
+ */
+class SheetRows {
+
+	static final int CHUNK_SIZE = 1 << 24; // bytes per chunk (16 MB), larger rows get a chunk of their own
+	static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8; // largest array, also the largest number of rows
+
+	int graphNameColumn; // column with the graph name, 0-based
+	byte[][] chunks = new byte[4][]; // rows one after the other
+	int numberOfChunks = 0;
+	int chunkFill = 0; // used bytes of the last chunk
+	long[] rowStarts = new long[1 << 8]; // position of every row: chunk << 32 | offset in the chunk
+	int numberOfRows = 0;
+
+	// current row while its cells are added
+	byte[] row = new byte[256]; // length and bytes of every cell
+	int rowLength = 0;
+	int numberOfCells = 0;
+	int usedRowLength = 0; // length of the row without trailing empty cells
+	int numberOfUsedCells = 0; // number of cells without trailing empty cells
+	int graphNameStart, graphNameLength; // bytes of the graph name in row (graphNameLength 0 if the cell is empty)
+
+	HashMap<String,int[]> rowIndex = new HashMap<String,int[]>(); // positions of the rows of every graph
+	HashMap<String,Integer> numberOfRowsPerGraph = new HashMap<String,Integer>();
+	String lastGraphName; // graph name of the previous row (rows of a graph usually follow each other)
+	byte[] lastGraphNameBytes = new byte[0];
+	boolean rowIndexTrimmed = false;
+
+	/**
+	 * @param graphNameColumn Column with the graph name, 0-based.
+	 */
+	SheetRows(int graphNameColumn) {
+		this.graphNameColumn = graphNameColumn;
+	}
+
+	/**
+	 * @return Number of rows.
+	 */
+	int size() {
+		return numberOfRows;
+	}
+
+	/**
+	 * Appends a cell to the current row.
+	 * @param value Value of the cell (null or empty for an empty cell).
+	 */
+	void addCell(CharSequence value) {
+		if (value == null || value.length() == 0) addCell(row, 0);
+		else {
+			byte[] utf8 = value.toString().getBytes(StandardCharsets.UTF_8);
+			addCell(utf8, utf8.length);
+		}
+	}
+
+	/**
+	 * Appends a cell to the current row.
+	 * @param value UTF-8 encoded value of the cell.
+	 * @param length Number of bytes of the value (0 for an empty cell).
+	 */
+	void addCell(byte[] value, int length) {
+		ensureRowCapacity(5+length);
+		rowLength = putNumber(row, rowLength, length);
+		if (numberOfCells == graphNameColumn) {
+			graphNameStart = rowLength;
+			graphNameLength = length;
+		}
+		System.arraycopy(value, 0, row, rowLength, length);
+		rowLength += length;
+		numberOfCells++;
+		if (length > 0) { // not a trailing empty cell (so far)
+			usedRowLength = rowLength;
+			numberOfUsedCells = numberOfCells;
+		}
+	}
+
+	/**
+	 * Appends all cells of a row and ends the row.
+	 * @param cells Cell values indexed by column (null for empty cells).
+	 */
+	void addRow(String[] cells) {
+		for (String cell : cells) addCell(cell);
+		endRow();
+	}
+
+	/**
+	 * Ends the current row. Trailing empty cells are removed; a row without any value is discarded.
+	 * @throws IllegalStateException If the sheet has more than MAX_ARRAY_LENGTH rows.
+	 */
+	void endRow() {
+		if (numberOfUsedCells > 0) { // row without any value otherwise
+			if (numberOfRows == MAX_ARRAY_LENGTH) throw new IllegalStateException("The sheet has more than "+MAX_ARRAY_LENGTH+" rows, which cannot be imported.");
+			if (numberOfRows == rowStarts.length) rowStarts = Arrays.copyOf(rowStarts, (int) Math.min(MAX_ARRAY_LENGTH, Math.max(256, 2L*rowStarts.length)));
+
+			// copy the row into the last chunk (or a new one)
+			byte[] numberOfCellsBytes = new byte[5];
+			int prefixLength = putNumber(numberOfCellsBytes, 0, numberOfUsedCells);
+			int length = prefixLength + usedRowLength;
+			if (numberOfChunks == 0 || chunkFill + length > chunks[numberOfChunks-1].length) {
+				if (numberOfChunks == chunks.length) chunks = Arrays.copyOf(chunks, Math.max(4, 2*chunks.length));
+				chunks[numberOfChunks++] = new byte[Math.max(CHUNK_SIZE, length)];
+				chunkFill = 0;
+			}
+			byte[] chunk = chunks[numberOfChunks-1];
+			rowStarts[numberOfRows++] = ((long) (numberOfChunks-1) << 32) | chunkFill;
+			System.arraycopy(numberOfCellsBytes, 0, chunk, chunkFill, prefixLength);
+			System.arraycopy(row, 0, chunk, chunkFill+prefixLength, usedRowLength);
+			chunkFill += length;
+
+			// index the row by its graph name
+			if (graphNameColumn < numberOfUsedCells && graphNameLength > 0) { // row without graph name otherwise
+				if (!equalsLastGraphName()) { // same String for all rows of a graph
+					lastGraphNameBytes = Arrays.copyOfRange(row, graphNameStart, graphNameStart+graphNameLength);
+					lastGraphName = new String(lastGraphNameBytes, StandardCharsets.UTF_8);
+				}
+				ImportData.addToRowIndex(rowIndex, numberOfRowsPerGraph, lastGraphName, numberOfRows-1);
+			}
+		}
+		rowLength = 0;
+		numberOfCells = 0;
+		usedRowLength = 0;
+		numberOfUsedCells = 0;
+		graphNameLength = 0;
+	}
+
+	/**
+	 * Releases the unused capacity once all rows have been added.
+	 */
+	void trimToSize() {
+		if (numberOfChunks > 0) chunks[numberOfChunks-1] = Arrays.copyOf(chunks[numberOfChunks-1], chunkFill);
+		chunks = Arrays.copyOf(chunks, numberOfChunks);
+		rowStarts = Arrays.copyOf(rowStarts, numberOfRows);
+		row = new byte[256];
+	}
+
+	/**
+	 * @param row Position of the row, 0-based.
+	 * @return Cell values of the row indexed by column (null for empty cells). The array is new for every call.
+	 */
+	String[] getRow(int row) {
+		long start = rowStarts[row];
+		byte[] chunk = chunks[(int) (start >>> 32)];
+		int[] position = new int[] {(int) start}; // advanced by getNumber
+		String[] cells = new String[getNumber(chunk, position)];
+		for (int k=0; k<cells.length; k++) {
+			int length = getNumber(chunk, position);
+			if (length > 0) cells[k] = new String(chunk, position[0], length, StandardCharsets.UTF_8);
+			position[0] += length;
+		}
+		return cells;
+	}
+
+	/**
+	 * @return Positions of the rows of every graph (in the order of the sheet).
+	 */
+	synchronized HashMap<String,int[]> getRowIndex() {
+		if (!rowIndexTrimmed) {
+			ImportData.trimRowIndex(rowIndex, numberOfRowsPerGraph);
+			numberOfRowsPerGraph = null; // all rows have been added
+			rowIndexTrimmed = true;
+		}
+		return rowIndex;
+	}
+
+	/**
+	 * @return True if the graph name of the current row has the same bytes as the one of the previous row.
+	 */
+	boolean equalsLastGraphName() {
+		if (lastGraphName == null || graphNameLength != lastGraphNameBytes.length) return false;
+		for (int k=0; k<graphNameLength; k++) {
+			if (row[graphNameStart+k] != lastGraphNameBytes[k]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Grows the buffer of the current row so that another length bytes fit.
+	 * @throws IllegalStateException If a single row exceeds 2 GB.
+	 */
+	void ensureRowCapacity(int length) {
+		long required = (long) rowLength + length;
+		if (required > MAX_ARRAY_LENGTH) throw new IllegalStateException("A row of the sheet is larger than 2 GB.");
+		if (required > row.length) row = Arrays.copyOf(row, (int) Math.min(MAX_ARRAY_LENGTH, Math.max(2L*row.length, required)));
+	}
+
+	/**
+	 * Writes a non-negative number with 7 bits per byte (the highest bit marks that another byte follows).
+	 * @return Position behind the number.
+	 */
+	static int putNumber(byte[] bytes, int position, int number) {
+		while (number >= 0x80) {
+			bytes[position++] = (byte) (number | 0x80);
+			number >>>= 7;
+		}
+		bytes[position++] = (byte) number;
+		return position;
+	}
+
+	/**
+	 * Reads a number written by {@link #putNumber(byte[], int, int)}.
+	 * @param position Position of the number, set to the position behind it.
+	 */
+	static int getNumber(byte[] bytes, int[] position) {
+		int number = 0;
+		for (int shift=0; ; shift+=7) {
+			byte b = bytes[position[0]++];
+			number |= (b & 0x7F) << shift;
+			if (b >= 0) return number;
+		}
+	}
+}
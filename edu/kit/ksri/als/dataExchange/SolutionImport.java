@@ -0,0 +1,101 @@
+package edu.kit.ksri.als.dataExchange;
+
+import edu.kit.ksri.als.ambulanceLocation.SolutionVector;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * Reads location solutions (graph name and numbers of ambulances per base) from a sheet of an Excel file,
+ * for example the results exported by the location problem.
+ *
+ * The sheet is read with the POI event model ({@link StreamingSheetReader}): every row is parsed into a {@link SolutionVector}
+ * as soon as it has been read, and only the vectors are kept. Identical vectors of a graph are stored once.
+ */
+public class SolutionImport {
+
+	public File file;
+	public int numberOfRows = 0; // rows read (without title row)
+	public int numberOfDuplicates = 0; // rows whose solution has already been read for the same graph
+	public int numberOfInvalidRows = 0; // rows without graph name or with a solution that cannot be parsed
+
+	/**
+	 * @param fileName Name of the Excel file (.xlsx).
+	 */
+	public SolutionImport(String fileName) {
+		file = new File(fileName);
+	}
+
+	/**
+	 * @return Names of all sheets of the file (empty if the file cannot be read).
+	 */
+	public ArrayList<String> getSheetNames() {
+		try {
+			return StreamingSheetReader.readSheetNames(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (OpenXML4JException e) {
+			e.printStackTrace();
+		}
+		return new ArrayList<String>();
+	}
+
+	/**
+	 * Reads the solutions of a sheet. The numbers of rows, duplicates and invalid rows are counted for this sheet only.
+	 * @param sheetName
+	 * @param columnGraph Column with the graph name (0-based).
+	 * @param columnSolution Column with the solution, for example "[0, 2, 1]" (0-based).
+	 * @return Distinct solutions per graph in the order of the sheet.
+	 * @throws IOException If the sheet does not exist or cannot be read.
+	 */
+	public LinkedHashMap<String,LinkedHashSet<SolutionVector>> read(String sheetName, int columnGraph, int columnSolution) throws IOException {
+		numberOfRows = 0;
+		numberOfDuplicates = 0;
+		numberOfInvalidRows = 0;
+		LinkedHashMap<String,LinkedHashSet<SolutionVector>> solutions = new LinkedHashMap<String,LinkedHashSet<SolutionVector>>();
+		StreamingSheetReader.SheetHandler sheet = new StreamingSheetReader.SheetHandler() {
+			@Override
+			void addRow(String[] cells) {
+				numberOfRows++;
+				String graphName = (columnGraph < cells.length) ? cells[columnGraph] : null;
+				String solution = (columnSolution < cells.length) ? cells[columnSolution] : null;
+				if (graphName == null || solution == null) {
+					numberOfInvalidRows++;
+					return;
+				}
+				SolutionVector vector;
+				try {
+					vector = SolutionVector.parse(solution);
+				} catch (NumberFormatException e) {
+					numberOfInvalidRows++;
+					return;
+				}
+				LinkedHashSet<SolutionVector> solutionsOfGraph = solutions.get(graphName);
+				if (solutionsOfGraph == null) {
+					solutionsOfGraph = new LinkedHashSet<SolutionVector>();
+					solutions.put(graphName, solutionsOfGraph);
+				}
+				if (!solutionsOfGraph.add(vector)) numberOfDuplicates++;
+			}
+		};
+
+		boolean found;
+		try {
+			found = StreamingSheetReader.read(file, sheetName, sheet);
+		} catch (OpenXML4JException e) {
+			throw new IOException(file.getName()+" cannot be read: "+e.getMessage(), e);
+		} catch (SAXException e) {
+			throw new IOException(file.getName()+" cannot be read: "+e.getMessage(), e);
+		} catch (ParserConfigurationException e) {
+			throw new IOException(file.getName()+" cannot be read: "+e.getMessage(), e);
+		}
+		if (!found) throw new IOException("Sheet "+sheetName+" not found in "+file.getName()+".");
+		return solutions;
+	}
+}
@@ -0,0 +1,266 @@
+package edu.kit.ksri.als.dataExchange;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Reads the cell values of the first sheets of an Excel file with the POI event model ({@link XSSFReader} and SAX handlers)
+ * instead of opening the workbook. Only the values of the cells are kept (in a {@link SheetRows}): shared strings as their text,
+ * all other cells (numbers, booleans, inline strings) as the raw text stored in the file.
+ * Thus, numbers are not rounded by any cell format.
+ */
+class StreamingSheetReader {
+
+	/**
+	 * Reads all rows of the first sheets except their title rows.
+	 * @param file Excel file (.xlsx).
+	 * @param maxNumberOfSheets Number of sheets to read (if the file has fewer sheets, all sheets are read).
+	 * @param graphNameColumn Column with the graph name by which the rows are indexed, 0-based.
+	 * @return Cell values of the rows per sheet.
+	 * @throws IOException
+	 * @throws OpenXML4JException
+	 * @throws SAXException
+	 * @throws ParserConfigurationException
+	 */
+	static ArrayList<SheetRows> read(File file, int maxNumberOfSheets, int graphNameColumn) throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+		OPCPackage excelPackage = OPCPackage.open(file, PackageAccess.READ);
+		try {
+			XSSFReader reader = new XSSFReader(excelPackage);
+			ArrayList<String> sharedStrings = readSharedStrings(reader);
+
+			// read rows of the sheets in the order of the workbook
+			ArrayList<SheetRows> sheets = new ArrayList<SheetRows>();
+			Iterator<InputStream> sheetsData = reader.getSheetsData();
+			while (sheetsData.hasNext() && sheets.size() < maxNumberOfSheets) {
+				SheetHandler sheet = new SheetHandler();
+				sheet.sharedStrings = sharedStrings;
+				sheet.rows = new SheetRows(graphNameColumn);
+				parseSheet(sheetsData.next(), sheet);
+				sheet.rows.trimToSize();
+				sheets.add(sheet.rows);
+			}
+			return sheets;
+		} finally {
+			excelPackage.revert(); // close without saving
+		}
+	}
+
+	/**
+	 * Reads the rows of one sheet except its title row and passes them to a handler one by one.
+	 * @param file Excel file (.xlsx).
+	 * @param sheetName Name of the sheet.
+	 * @param sheet Handler that receives the rows (see {@link SheetHandler#addRow(String[])}).
+	 * @return False if the workbook has no sheet with this name.
+	 * @throws IOException
+	 * @throws OpenXML4JException
+	 * @throws SAXException
+	 * @throws ParserConfigurationException
+	 */
+	static boolean read(File file, String sheetName, SheetHandler sheet) throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+		OPCPackage excelPackage = OPCPackage.open(file, PackageAccess.READ);
+		try {
+			XSSFReader reader = new XSSFReader(excelPackage);
+			XSSFReader.SheetIterator sheetsData = (XSSFReader.SheetIterator) reader.getSheetsData();
+			while (sheetsData.hasNext()) {
+				InputStream sheetData = sheetsData.next();
+				if (!sheetsData.getSheetName().equals(sheetName)) {
+					sheetData.close();
+					continue;
+				}
+				sheet.sharedStrings = readSharedStrings(reader); // only needed for this sheet
+				parseSheet(sheetData, sheet);
+				return true;
+			}
+			return false;
+		} finally {
+			excelPackage.revert(); // close without saving
+		}
+	}
+
+	/**
+	 * @param file Excel file (.xlsx).
+	 * @return Names of all sheets in the order of the workbook.
+	 * @throws IOException
+	 * @throws OpenXML4JException
+	 */
+	static ArrayList<String> readSheetNames(File file) throws IOException, OpenXML4JException {
+		OPCPackage excelPackage = OPCPackage.open(file, PackageAccess.READ);
+		try {
+			ArrayList<String> sheetNames = new ArrayList<String>();
+			XSSFReader.SheetIterator sheetsData = (XSSFReader.SheetIterator) new XSSFReader(excelPackage).getSheetsData();
+			while (sheetsData.hasNext()) {
+				sheetsData.next().close(); // the content of the sheet is not read
+				sheetNames.add(sheetsData.getSheetName());
+			}
+			return sheetNames;
+		} finally {
+			excelPackage.revert(); // close without saving
+		}
+	}
+
+	/**
+	 * @param reader
+	 * @return Shared strings table of the workbook (empty if the workbook has no text).
+	 */
+	static ArrayList<String> readSharedStrings(XSSFReader reader) throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+		SharedStringsHandler sharedStrings = new SharedStringsHandler();
+		InputStream sharedStringsData = reader.getSharedStringsData();
+		if (sharedStringsData != null) { // workbooks without any text have no shared strings
+			try {
+				parse(sharedStringsData, sharedStrings);
+			} finally {
+				sharedStringsData.close();
+			}
+		}
+		return sharedStrings.strings;
+	}
+
+	/**
+	 * Parses a sheet and closes its data.
+	 */
+	static void parseSheet(InputStream sheetData, SheetHandler sheet) throws IOException, SAXException, ParserConfigurationException {
+		try {
+			parse(sheetData, sheet);
+		} finally {
+			sheetData.close();
+		}
+	}
+
+	/**
+	 * Parses an XML part of the Excel file.
+	 * @param data
+	 * @param handler
+	 */
+	static void parse(InputStream data, DefaultHandler handler) throws IOException, SAXException, ParserConfigurationException {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true); // Excel files never contain a DTD
+		XMLReader xmlReader = factory.newSAXParser().getXMLReader();
+		xmlReader.setContentHandler(handler);
+		xmlReader.parse(new InputSource(data));
+	}
+
+	/**
+	 * Collects the shared strings table (elements si) of the workbook. Rich text runs are concatenated, phonetic runs are ignored.
+	 */
+	static class SharedStringsHandler extends DefaultHandler {
+		ArrayList<String> strings = new ArrayList<String>();
+		StringBuilder text = new StringBuilder();
+		boolean inText = false; // inside element t
+		boolean inPhoneticRun = false; // inside element rPh
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if (localName.equals("si")) text.setLength(0);
+			else if (localName.equals("rPh")) inPhoneticRun = true;
+			else if (localName.equals("t") && !inPhoneticRun) inText = true;
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if (localName.equals("si")) strings.add(text.toString());
+			else if (localName.equals("rPh")) inPhoneticRun = false;
+			else if (localName.equals("t")) inText = false;
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inText) text.append(ch, start, length);
+		}
+	}
+
+	/**
+	 * Collects the values of the cells (elements c) row by row (elements row). The first row is the title row and is skipped,
+	 * as are rows without any value (for example rows of formatted empty cells).
+	 * By default, all rows are added to rows; subclasses may process them by overriding {@link #addRow(String[])}.
+	 */
+	static class SheetHandler extends DefaultHandler {
+		ArrayList<String> sharedStrings;
+		SheetRows rows; // receives the rows if addRow is not overridden
+		boolean titleRowSkipped = false;
+
+		// current row and cell
+		String[] cells = new String[16];
+		int numberOfCells = 0; // highest column index of the row + 1
+		int column = -1;
+		String type; // attribute t of the cell (null for numbers)
+		StringBuilder value = new StringBuilder();
+		boolean inValue = false; // inside element v, or t of an inline string
+
+		/**
+		 * Receives a row after the title row.
+		 * @param cells Cell values of the row, indexed by column (null for empty cells). The array belongs to the handler.
+		 */
+		void addRow(String[] cells) {
+			rows.addRow(cells);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if (localName.equals("row")) {
+				Arrays.fill(cells, 0, numberOfCells, null);
+				numberOfCells = 0;
+				column = -1;
+			}
+			else if (localName.equals("c")) {
+				String reference = attributes.getValue("r");
+				column = (reference == null) ? column+1 : getColumn(reference); // cells without reference follow the previous cell
+				type = attributes.getValue("t");
+				value.setLength(0);
+			}
+			else if (localName.equals("v") || (localName.equals("t") && "inlineStr".equals(type))) {
+				inValue = true;
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if (localName.equals("v") || localName.equals("t")) {
+				inValue = false;
+			}
+			else if (localName.equals("c")) {
+				if (value.length() == 0) return; // cell without value (for example only formatted)
+				if (column >= cells.length) cells = Arrays.copyOf(cells, Math.max(2*cells.length, column+1));
+				cells[column] = "s".equals(type) ? sharedStrings.get(Integer.parseInt(value.toString())) : value.toString();
+				numberOfCells = Math.max(numberOfCells, column+1);
+			}
+			else if (localName.equals("row")) {
+				if (!titleRowSkipped) titleRowSkipped = true;
+				else if (numberOfCells > 0) addRow(Arrays.copyOf(cells, numberOfCells));
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			if (inValue) value.append(ch, start, length);
+		}
+
+		/**
+		 * @param reference Cell reference, for example "H12".
+		 * @return Index of the column, 0-based.
+		 */
+		static int getColumn(String reference) {
+			int column = 0;
+			for (int i=0; i<reference.length() && Character.isLetter(reference.charAt(i)); i++) {
+				column = 26*column + (reference.charAt(i)-'A'+1);
+			}
+			return column-1;
+		}
+	}
+}
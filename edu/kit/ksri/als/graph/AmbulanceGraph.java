@@ -1,6 +1,8 @@
 package edu.kit.ksri.als.graph;
 
+import edu.kit.ksri.als.dataExchange.DrivingTimesCache;
 import edu.kit.ksri.als.dataExchange.ImportData;
+import edu.kit.ksri.als.dataExchange.NumberListTokenizer;
 //import model.ModelALWUDBound;
 
 import java.util.*;
@@ -18,10 +20,21 @@ import java.util.*;
  */
 public class AmbulanceGraph extends BasicGraph {
 	
+	public static final double DEFAULT_MAX_TIME = 13.0; // time limit of graphs that are created without one
+	
 	public ArrayList<Demand> demands = new ArrayList<Demand>(); // list of all demands
 	public ArrayList<Base> bases = new ArrayList<Base>(); // list of all bases
-	public double[][] drivingTimes; // driving time matrix for nodes
-	double maxTime = 13.0; // Time limit for reaching an emergency. Determines which bases may serve which demands.
+	public CoverageIndex coverage; // which bases cover which demands (by index of base and demand)
+	public ReachableDemands reachableDemands; // demands reachable from every base, sorted by driving time
+	public double[][] drivingTimes; // driving time matrix for nodes (for drivingTimesMethod 0 only the rows of base nodes exist, null for drivingTimesEncoding 1 and 2 and for rows mapped from the DrivingTimesCache)
+	DrivingTimes drivingTimesView; // read access to the driving times, see getDrivingTimes()
+	DemandSampler demandSampler; // alias tables of the demand probabilities, see getDemandSampler()
+	public ContractionHierarchy contractionHierarchy; // optional, answers driving times from nodes whose row is not stored (reset when edges change)
+	int drivingTimesEncoding = 0; // 0=double[][] matrix, 1=rows of base nodes as float, 2=rows of base nodes as 16-bit fixed point (0.01 minutes)
+	double maxTime = DEFAULT_MAX_TIME; // Time limit for reaching an emergency. Determines which bases may serve which demands.
+	double drivingTimesBound = DEFAULT_MAX_TIME; // for drivingTimesMethod 0, the rows of drivingTimes contain all driving times up to this bound (at least maxTime)
+	int modificationCount = 0; // increased whenever the coverage or the driving times change, see getModificationCount()
+	public int drivingTimesMethod = 0; // 0=bounded Dijkstra from the bases, 1=full matrix (Tripel algorithm), 2=full matrix (parallel tiled Tripel algorithm)
 	
 	// column numbers in the import Excel file where dedicated information is found (0-based)
 	int isBaseColumn 				= 2; // column C in Excel
@@ -43,21 +56,40 @@ public class AmbulanceGraph extends BasicGraph {
 	
 	/**
 	 * Creates an ambulance graph using the information of a dedicated Excel sheet.
+	 * The driving times are calculated with a bounded Dijkstra search from the bases.
 	 * @param graphName
 	 */
 	public AmbulanceGraph(String graphName, ImportData file) {
+		this(graphName, file, 0);
+	}
+	
+	/**
+	 * Creates an ambulance graph using the information of a dedicated Excel sheet.
+	 * @param graphName
+	 * @param drivingTimesMethod 0=bounded Dijkstra from the bases (only driving times up to maxTime), 1=full matrix (Tripel algorithm),
+	 * 2=full matrix (parallel tiled Tripel algorithm)
+	 */
+	public AmbulanceGraph(String graphName, ImportData file, int drivingTimesMethod) {
+		this(graphName, file, drivingTimesMethod, DEFAULT_MAX_TIME);
+	}
+	
+	/**
+	 * Creates an ambulance graph using the information of a dedicated Excel sheet.
+	 * @param graphName
+	 * @param drivingTimesMethod 0=bounded Dijkstra from the bases (only driving times up to maxTime), 1=full matrix (Tripel algorithm),
+	 * 2=full matrix (parallel tiled Tripel algorithm)
+	 * @param maxTime Time limit for reaching an emergency.
+	 */
+	public AmbulanceGraph(String graphName, ImportData file, int drivingTimesMethod, double maxTime) {
 		super(graphName, file); // create a basic graph as basis
+		this.drivingTimesMethod = drivingTimesMethod;
+		this.maxTime = maxTime;
 
+		int[] rowsOfGraph = file.getRowsOfGraph(name); // the nodes have been created in the order of the rows of the graph
+		NumberListTokenizer tokenizer = new NumberListTokenizer(); // parses the demand probabilities without creating Strings
 		for (Node node : nodes) {
 
-			// iterate through rows of the Excel file until the right graph and node are found
-			// (one row contains information about one node)
-			while (file.rowIterator.hasNext()) {
-				file.getNextRow();
-				graphName = file.getCellInCurrentRowAsString(graphNameColumn); // read graph name
-				String nodeName = file.getCellInCurrentRowAsString(nodeNameColumn); // read node name
-				if (graphName.equals(name) && nodeName.equals(node.name)) break; // if right graph and node are found, stop iteration
-			}
+			file.goToRow(rowsOfGraph[node.index-1]); // go to the row of the node (one row contains information about one node), node id is 1-based
 
 			// read node settings
 		    boolean isBase   = (file.getCellInCurrentRowAsDouble(isBaseColumn)==1); // read if node is base
@@ -72,29 +104,54 @@ public class AmbulanceGraph extends BasicGraph {
 		    
 		    // if a node is a demand, read and store demand information
 		    if (isDemand) {
-		    	String demandProbabilitiesStr = file.getCellInCurrentRowAsString(demandProbabilitiesColumn); // read demand information String
-		    	demandProbabilitiesStr = demandProbabilitiesStr.replaceAll(",","."); // replace "," (German number notation) with "." (English number notation)
-			    String[] demandProbabilitiesStrArr = demandProbabilitiesStr.split(";"); // read probability distribution into String array
-		    	//transform demand distribution array from String to double
-		    	double[] demandProbabilities = new double[demandProbabilitiesStrArr.length];
-		    	for (int i=0; i<demandProbabilities.length; i++) demandProbabilities[i] = new Double(demandProbabilitiesStrArr[i]);
+		    	double[] demandProbabilities = tokenizer.toProbabilities(file.getCellInCurrentRowAsString(demandProbabilitiesColumn)); // read probability distribution (separated by ";")
 		    	demands.add(new Demand(node,demandProbabilities)); //create demand and add to list of demands
 		    }		    
 		}		
 		
-		// initialize driving times
-		drivingTimes = new double[nodes.size()][nodes.size()];
-		for (int i=0; i<nodes.size(); i++) {
-			for (int j=0; j<nodes.size(); j++) {
-				drivingTimes[i][j] = 99999.9;
-			}
+		calculateCoverage();
+	}
+	
+	/**
+	 * Creates an ambulance graph without nodes. Nodes, edges, bases and demands are added by the caller 
+	 * (for example when a graph is loaded from a snapshot), followed by {@link #calculateCoverage()} or {@link #setDrivingTimes(double[][], double, ReachableDemands)}.
+	 * @param graphName
+	 * @param drivingTimesMethod 0=bounded Dijkstra from the bases (only driving times up to maxTime), 1=full matrix (Tripel algorithm),
+	 * 2=full matrix (parallel tiled Tripel algorithm)
+	 * @param maxTime Time limit for reaching an emergency.
+	 */
+	public AmbulanceGraph(String graphName, int drivingTimesMethod, double maxTime) {
+		super(graphName);
+		this.drivingTimesMethod = drivingTimesMethod;
+		this.maxTime = maxTime;
+	}
+	
+	/**
+	 * Indexes bases and demands, calculates the driving times (unless they are found in the {@link DrivingTimesCache}) 
+	 * and retrieves which bases cover which demands.
+	 */
+	public void calculateCoverage() {
+		assignIndices();
+		if (DrivingTimesCache.load(this)) return; // an identical graph has already been calculated
+		if (drivingTimesMethod == 1) {
+			calculateDrivingTimesTripel();
+			calculateCoverageFromMatrix();
 		}
-		// set driving time between adjacent nodes
-		for (Edge edge : edges) {
-			int fromIndex = edge.fromNode.index - 1;
-			int toIndex = edge.toNode.index - 1;
-			drivingTimes[fromIndex][toIndex] = edge.weight;
+		else if (drivingTimesMethod == 2) {
+			calculateDrivingTimesTiled(new FloydWarshall());
+			calculateCoverageFromMatrix();
 		}
+		else {
+			calculateCoverageBounded();
+		}
+		DrivingTimesCache.save(this);
+	}
+	
+	/**
+	 * Calculates the driving times between all nodes using the Tripel algorithm (full matrix).
+	 */
+	public void calculateDrivingTimesTripel() {
+		initializeDrivingTimes();
 		//calculate driving times between all nodes using the Tripel algorithm
 		for (int j=0; j<nodes.size(); j++){
 			for (int i=0; i<nodes.size(); i++){
@@ -106,34 +163,437 @@ public class AmbulanceGraph extends BasicGraph {
 				}
 			}
 		}
+	}
+	
+	/**
+	 * Calculates the driving times between all nodes using the blocked Tripel algorithm of {@link FloydWarshall} (full matrix).
+	 * The tiles are updated in parallel. The result is identical to {@link #calculateDrivingTimesTripel()}.
+	 * @param floydWarshall Algorithm defining tile size and worker threads.
+	 */
+	public void calculateDrivingTimesTiled(FloydWarshall floydWarshall) {
+		initializeDrivingTimes();
+		floydWarshall.calculate(drivingTimes);
+	}
+	
+	/**
+	 * Creates the full driving time matrix containing the driving times between adjacent nodes only.
+	 */
+	void initializeDrivingTimes() {
+		// initialize driving times
+		drivingTimes = new double[nodes.size()][nodes.size()];
+		for (int i=0; i<nodes.size(); i++) {
+			for (int j=0; j<nodes.size(); j++) {
+				drivingTimes[i][j] = 99999.9;
+			}
+		}
+		// set driving time between adjacent nodes
+		for (int fromIndex=0; fromIndex<nodes.size(); fromIndex++) {
+			for (int e=edgeOffsets[fromIndex]; e<edgeOffsets[fromIndex+1]; e++) {
+				drivingTimes[fromIndex][edgeTargets[e]] = edgeWeights[e];
+			}
+		}
+	}
+	
+	/**
+	 * Sets the index of every base and demand to its position in the respective list.
+	 */
+	public void assignIndices() {
+		for (int j=0; j<bases.size(); j++) bases.get(j).index = j;
+		for (int i=0; i<demands.size(); i++) demands.get(i).index = i;
+	}
+	
+	/**
+	 * Retrieves the demands covered by the bases and the bases covering the demands from the full driving time matrix.
+	 */
+	public void calculateCoverageFromMatrix() {
+		calculateReachableDemands(maxTime);
+		applyCoverage();
+	}
+	
+	/**
+	 * Creates the lists of demands reachable from every base up to a maximum driving time.
+	 * For drivingTimesMethod 0, the bounded search from the bases is run with this bound.
+	 * For the full matrix, the lists are read from the existing rows of the bases (the matrix is calculated again if only compact rows are stored).
+	 * @param maxDrivingTime Demands are listed up to this driving time.
+	 */
+	void calculateReachableDemands(double maxDrivingTime) {
+		if (drivingTimesMethod == 0) {
+			calculateDrivingTimesBounded(maxDrivingTime);
+		}
+		else {
+			if (drivingTimes == null) { // only compact rows are stored
+				if (drivingTimesMethod == 1) calculateDrivingTimesTripel();
+				else calculateDrivingTimesTiled(new FloydWarshall());
+			}
+			reachableDemands = new ReachableDemands(bases.size(), demands.size(), maxDrivingTime);
+			for (Base base : bases) reachableDemands.setFromRow(base.index, drivingTimes[base.node.index-1], demands); //node id is 1-based
+		}
+	}
+	
+	/**
+	 * Sets the coverage (index as well as the sets of bases and demands) to the demands reachable within maxTime.
+	 */
+	void applyCoverage() {
+		coverage = new CoverageIndex(bases.size(), demands.size());
+		for (Base base : bases) base.coveredDemands.clear();
+		for (Demand demand : demands) demand.basesCovering.clear();
+		for (Base base : bases) {
+			int numberOfCoveredDemands = reachableDemands.countWithin(base.index, maxTime); // covered demands are the first ones of the sorted list
+			for (int r=0; r<numberOfCoveredDemands; r++) addCoverage(base, demands.get(reachableDemands.demands[base.index][r]));
+		}
+	}
+	
+	/**
+	 * @return Time limit for reaching an emergency.
+	 */
+	public double getMaxTime() {
+		return maxTime;
+	}
+	
+	/**
+	 * Data derived from the coverage or the driving times (for example a SampleContext) is outdated once this number has changed.
+	 * @return Number of changes of the coverage and the driving times so far.
+	 */
+	public int getModificationCount() {
+		return modificationCount;
+	}
+	
+	/**
+	 * @return Bound up to which the rows of drivingTimes are complete (for drivingTimesMethod 0).
+	 */
+	public double getDrivingTimesBound() {
+		return drivingTimesBound;
+	}
+	
+	/**
+	 * Returns the alias tables for drawing demand volumes; they are built on first use.
+	 * Set demandSampler to null after changing the demand probabilities.
+	 * @return Sampler for the demands of this graph (by index of the demand).
+	 */
+	public DemandSampler getDemandSampler() {
+		if (demandSampler == null || demandSampler.numberOfDemands != demands.size()) demandSampler = new DemandSampler(demands);
+		return demandSampler;
+	}
+	
+	/**
+	 * @return Read access to the driving times (view on drivingTimes, rows mapped from the DrivingTimesCache or compact rows of the base nodes, depending on drivingTimesEncoding).
+	 */
+	public DrivingTimes getDrivingTimes() {
+		if (drivingTimesEncoding == 0 && drivingTimes != null && (drivingTimesView == null || drivingTimesView.rows != drivingTimes)) drivingTimesView = new DrivingTimes(drivingTimes);
+		return drivingTimesView;
+	}
+	
+	/**
+	 * @param from Origin node.
+	 * @param to Destination node.
+	 * @return Driving time from one node to another (99999.9 if it is not known or the destination cannot be reached).
+	 * If the row of the origin is not stored, the driving time is calculated by the contractionHierarchy (if there is one).
+	 * As in the matrix, the driving time from a node to itself is the length of the shortest cycle through the node.
+	 */
+	public double getDrivingTime(Node from, Node to) {
+		DrivingTimes drivingTimesOfNodes = getDrivingTimes();
+		if (contractionHierarchy != null && !drivingTimesOfNodes.hasRow(from.index-1)) { //node id is 1-based
+			if (from.index == to.index) return getCycleTime(from); // the hierarchy returns 0 for equal nodes
+			return contractionHierarchy.time(from, to);
+		}
+		return drivingTimesOfNodes.get(from.index-1, to.index-1);
+	}
+	
+	/**
+	 * Calculates the length of the shortest cycle through a node with the contractionHierarchy:
+	 * the shortest sum of an edge leaving the node and the driving time from its destination back to the node.
+	 * @param node
+	 * @return Driving time from the node to itself as in the matrix (99999.9 if there is no cycle).
+	 */
+	double getCycleTime(Node node) {
+		int i = node.index-1; //node id is 1-based
+		double time = 99999.9;
+		for (int e=edgeOffsets[i]; e<edgeOffsets[i+1]; e++) {
+			time = Math.min(time, edgeWeights[e] + contractionHierarchy.time(edgeTargets[e], i)); // a self-loop adds 0
+		}
+		return time;
+	}
+	
+	/**
+	 * Changes how the driving times are stored. With encodings 1 and 2, only the rows of the base nodes are kept 
+	 * in a compact {@link DrivingTimes} store and drivingTimes is set to null. 
+	 * The coverage is not affected since it has been retrieved from the exact driving times.
+	 * Rows mapped from the {@link DrivingTimesCache} are kept with encodings 1 and 2, since they use no heap.
+	 * Changing edges or raising the time limit beyond the calculated bound calculates the exact driving times again.
+	 * @param encoding 0=double[][] matrix, 1=rows of base nodes as float, 2=rows of base nodes as 16-bit fixed point (0.01 minutes)
+	 */
+	public void setDrivingTimesEncoding(int encoding) {
+		drivingTimesEncoding = encoding;
+		if (encoding == 0) expandDrivingTimes();
+		else compactDrivingTimes();
+	}
+	
+	/**
+	 * Replaces drivingTimes by a compact store of the rows of the base nodes (only for drivingTimesEncoding 1 and 2).
+	 */
+	void compactDrivingTimes() {
+		if (drivingTimesEncoding == 0 || drivingTimes == null) return;
+		int[] baseNodes = new int[bases.size()];
+		for (Base base : bases) baseNodes[base.index] = base.node.index-1; //node id is 1-based
+		drivingTimesView = new DrivingTimes(drivingTimes, baseNodes, drivingTimesEncoding);
+		drivingTimes = null;
+	}
+	
+	/**
+	 * Calculates the exact driving times and the reachable demands again if only the compact rows are stored.
+	 * @return True if they have been calculated again.
+	 */
+	boolean expandDrivingTimes() {
+		if (drivingTimes != null) return false;
+		calculateReachableDemands(reachableDemands.maxDrivingTime);
+		return true;
+	}
+	
+	/**
+	 * Sets driving times that have been calculated before (for example read from the {@link DrivingTimesCache}) and updates the coverage.
+	 * @param drivingTimes Driving time matrix (for drivingTimesMethod 0 only the rows of base nodes).
+	 * @param drivingTimesBound Bound up to which the rows are complete.
+	 * @param reachableDemands Demands reachable from every base, sorted by driving time.
+	 */
+	public void setDrivingTimes(double[][] drivingTimes, double drivingTimesBound, ReachableDemands reachableDemands) {
+		this.drivingTimes = drivingTimes;
+		this.drivingTimesBound = drivingTimesBound;
+		this.reachableDemands = reachableDemands;
+		applyCoverage();
+		compactDrivingTimes();
+	}
+	
+	/**
+	 * Sets driving times that are read without copying them into a matrix (rows mapped from the {@link DrivingTimesCache}) and updates the coverage.
+	 * drivingTimes is set to null, as for a compact drivingTimesEncoding: the matrix is only calculated again if it is needed (for example when an edge changes).
+	 * @param drivingTimes Read access to the rows (for drivingTimesMethod 0 only the rows of base nodes).
+	 * @param drivingTimesBound Bound up to which the rows are complete.
+	 * @param reachableDemands Demands reachable from every base, sorted by driving time.
+	 */
+	public void setDrivingTimes(DrivingTimes drivingTimes, double drivingTimesBound, ReachableDemands reachableDemands) {
+		this.drivingTimes = null;
+		this.drivingTimesView = drivingTimes;
+		this.drivingTimesBound = drivingTimesBound;
+		this.reachableDemands = reachableDemands;
+		applyCoverage();
+	}
+	
+	/**
+	 * Changes the time limit for reaching an emergency and updates the coverage. 
+	 * Driving times are only calculated again if the new time limit exceeds the bound of the reachable demands.
+	 * @param maxTime New time limit.
+	 */
+	public void setMaxTime(double maxTime) {
+		this.maxTime = maxTime;
+		if (reachableDemands.maxDrivingTime < maxTime) {
+			calculateReachableDemands(maxTime);
+			compactDrivingTimes();
+		}
+		applyCoverage();
+	}
+	
+	/**
+	 * Determines the coverage for several time limits at once (for example 8, 10, 12 and 15 minutes). 
+	 * The driving times are calculated at most once for the largest time limit and shared between all time limits.
+	 * The coverage of the graph itself (for maxTime) is not changed.
+	 * @param timeLimits Time limits in increasing order.
+	 * @return Coverage per time limit.
+	 */
+	public TreeMap<Double,CoverageIndex> calculateCoverages(TreeSet<Double> timeLimits) {
+		if (reachableDemands.maxDrivingTime < timeLimits.last()) {
+			calculateReachableDemands(timeLimits.last());
+			compactDrivingTimes();
+		}
+		TreeMap<Double,CoverageIndex> coverages = new TreeMap<Double,CoverageIndex>();
+		for (double timeLimit : timeLimits) coverages.put(timeLimit, reachableDemands.getCoverage(timeLimit));
+		return coverages;
+	}
+	
+	/**
+	 * Stores that a base covers a demand.
+	 * @param base
+	 * @param demand
+	 */
+	void addCoverage(Base base, Demand demand) {
+		modificationCount++;
+		coverage.add(base.index, demand.index);
+		base.coveredDemands.add(demand);
+		demand.basesCovering.add(base);
+	}
+	
+	/**
+	 * Calculates the driving times from every base with a {@link Dijkstra} search that stops as soon as its frontier passes maxTime.
+	 * The demands covered by a base and the bases covering a demand are retrieved directly from the search.
+	 * Only the rows of base nodes are created in drivingTimes. Nodes that cannot be reached in time keep the value 99999.9.
+	 */
+	public void calculateCoverageBounded() {
+		calculateDrivingTimesBounded(maxTime);
+		applyCoverage();
+	}
+	
+	/**
+	 * Calculates the driving times from every base with a {@link Dijkstra} search up to a bound 
+	 * and lists the reachable demands of every base sorted by driving time.
+	 * @param bound Bound of the search (at least maxTime).
+	 */
+	void calculateDrivingTimesBounded(double bound) {
+		Demand[] demandsAtNodes = new Demand[nodes.size()]; // demand located at a node (null if there is none)
+		for (Demand demand : demands) demandsAtNodes[demand.node.index-1] = demand; //node id is 1-based
 		
-		// retrieve the demands that are covered by the bases
+		drivingTimesBound = bound;
+		drivingTimes = new double[nodes.size()][]; // rows of non-base nodes are not created
+		reachableDemands = new ReachableDemands(bases.size(), demands.size(), bound);
+		Dijkstra dijkstra = new Dijkstra(this);
+		int[] sortedDemands = new int[demands.size()]; // reachable demands of a base in the order they are reached
+		double[] sortedDrivingTimes = new double[demands.size()];
 		for (Base base : bases) {
-			for (int i=0; i<drivingTimes[base.node.index-1].length; i++) { //node id is 1-based
-				if (drivingTimes[base.node.index-1][i]<=maxTime) { //if node i can be reached from the base in time...
-					for (Demand demand : demands) {
-						if (nodes.get(i) == demand.node) { // if node i is a demand node
-							base.coveredDemands.add(demand);
-						}
-					}
+			int baseIndex = base.node.index-1; //node id is 1-based
+			int numberOfReachedNodes = dijkstra.search(baseIndex, bound); // search all nodes that can be reached from the base within the bound
+			
+			double[] drivingTimesOfBase = new double[nodes.size()];
+			Arrays.fill(drivingTimesOfBase, 99999.9);
+			int numberOfReachableDemands = 0;
+			for (int r=0; r<numberOfReachedNodes; r++) { // nodes are reached in non-decreasing order of their driving time
+				int i = dijkstra.reachedNodes[r];
+				drivingTimesOfBase[i] = dijkstra.distances[i];
+				Demand demand = demandsAtNodes[i];
+				if (demand != null) { // if node i is a demand node
+					sortedDemands[numberOfReachableDemands] = demand.index;
+					sortedDrivingTimes[numberOfReachableDemands++] = dijkstra.distances[i];
 				}
 			}
+			drivingTimes[baseIndex] = drivingTimesOfBase;
+			reachableDemands.set(base.index, sortedDemands, sortedDrivingTimes, numberOfReachableDemands);
+		}
+	}
+	
+	/**
+	 * Changes the driving time of the edge between two nodes, for example because a road segment got slower.
+	 * If there is no such edge, it is added. Driving times and coverage are repaired incrementally.
+	 * @param from Origin node of the edge.
+	 * @param to Destination node of the edge.
+	 * @param weight New driving time of the edge.
+	 */
+	public void changeEdgeWeight(Node from, Node to, double weight) {
+		double oldWeight = setEdgeWeight(from.index-1, to.index-1, weight); //node id is 1-based
+		repairDrivingTimes(from.index-1, to.index-1, oldWeight, weight);
+	}
+	
+	/**
+	 * Adds an edge between two nodes, for example a new road. If the edge already exists, its driving time is replaced.
+	 * Driving times and coverage are repaired incrementally.
+	 * @param from Origin node of the edge.
+	 * @param to Destination node of the edge.
+	 * @param weight Driving time of the edge.
+	 */
+	public void addEdge(Node from, Node to, double weight) {
+		changeEdgeWeight(from, to, weight);
+	}
+	
+	/**
+	 * Removes the edge between two nodes, for example because a road is closed.
+	 * Driving times and coverage are repaired incrementally.
+	 * @param from Origin node of the edge.
+	 * @param to Destination node of the edge.
+	 */
+	public void removeEdge(Node from, Node to) {
+		double oldWeight = deleteEdge(from.index-1, to.index-1); //node id is 1-based
+		if (oldWeight < Double.POSITIVE_INFINITY) repairDrivingTimes(from.index-1, to.index-1, oldWeight, Double.POSITIVE_INFINITY);
+	}
+	
+	/**
+	 * Repairs the driving times and the coverage after the weight of the edge from node u to node v has changed.
+	 * Only the rows of drivingTimes that depend on the edge are updated:
+	 * if the edge got shorter, the improvement is propagated from node v (incremental update);
+	 * if the edge got longer or was removed, only the rows in which the edge lies on a shortest path are recalculated (decremental update).
+	 * Afterwards, the coverage of the bases whose rows changed is updated.
+	 * @param u Index of the origin node, 0-based.
+	 * @param v Index of the destination node, 0-based.
+	 * @param oldWeight Previous weight of the edge (Double.POSITIVE_INFINITY if the edge is new).
+	 * @param newWeight Current weight of the edge (Double.POSITIVE_INFINITY if the edge was removed).
+	 */
+	void repairDrivingTimes(int u, int v, double oldWeight, double newWeight) {
+		if (newWeight == oldWeight) return; // nothing changed
+		modificationCount++; // driving time rows are changed in place
+		contractionHierarchy = null; // the hierarchy does not know the changed edge
+		if (expandDrivingTimes()) { // only compact rows are stored: the exact driving times have been calculated again for the changed graph
+			applyCoverage();
+			compactDrivingTimes();
+			return;
 		}
 		
-		// retrieve the bases that cover the demands
-		for (Demand demand : demands) {
-			for (int i=0; i<drivingTimes.length; i++) {
-				if (drivingTimes[i][demand.node.index-1]<=maxTime ){ //if node i can reach the demand in time...
-					for (Base base : bases) { 
-						if (nodes.get(i) == base.node) { // if node i is a base
-							demand.basesCovering.add(base);
-						}
+		double maxDistance = (drivingTimesMethod == 0) ? drivingTimesBound : Double.POSITIVE_INFINITY; // rows are bounded for the bounded method only
+		Dijkstra dijkstra = new Dijkstra(this);
+		boolean[] changedRows = new boolean[nodes.size()];
+		
+		for (int s=0; s<drivingTimes.length; s++) { // for all source nodes with a row
+			double[] row = drivingTimes[s];
+			if (row == null) continue; // rows of non-base nodes do not exist for the bounded method
+			double distanceToU = (s == u) ? 0.0 : row[u]; // the source itself is left with distance 0
+			if (distanceToU >= 99999.9) continue; // u cannot be reached from the source, so the edge is irrelevant
+			
+			if (newWeight < oldWeight) { // edge got shorter or is new
+				double newDistance = distanceToU + newWeight;
+				if (newDistance > maxDistance || newDistance >= row[v]) continue; // no improvement
+				if (drivingTimesMethod == 0) {
+					dijkstra.improve(row, v, newDistance, maxDistance); // propagate the improvement from v
+				}
+				else {
+					// in the full matrix, the driving times from v are known: combine them with the new path to v
+					// (the row of v itself only changes at position v, so the order of the rows does not matter)
+					double[] rowV = drivingTimes[v];
+					row[v] = newDistance;
+					for (int j=0; j<row.length; j++) {
+						if (j != v && newDistance + rowV[j] < row[j]) row[j] = newDistance + rowV[j];
 					}
 				}
+				changedRows[s] = true;
 			}
+			else { // edge got longer or was removed
+				if (row[v] > maxDistance || distanceToU + oldWeight > row[v] + 1e-9) continue; // edge is not on a shortest path to v (and hence to no other node)
+				// recalculate the row
+				int numberOfReachedNodes = dijkstra.search(s, maxDistance);
+				Arrays.fill(row, 99999.9);
+				for (int r=0; r<numberOfReachedNodes; r++) {
+					int i = dijkstra.reachedNodes[r];
+					row[i] = dijkstra.distances[i];
+				}
+				changedRows[s] = true;
+			}
+		}
+		
+		// update coverage of the bases whose driving times changed
+		for (Base base : bases) {
+			if (changedRows[base.node.index-1]) updateCoverage(base); //node id is 1-based
 		}
 	}
 	
+	/**
+	 * Updates the reachable demands and the demands covered by a base according to its row in drivingTimes.
+	 * @param base
+	 */
+	void updateCoverage(Base base) {
+		double[] drivingTimesOfBase = drivingTimes[base.node.index-1]; //node id is 1-based
+		reachableDemands.setFromRow(base.index, drivingTimesOfBase, demands);
+		for (Demand demand : demands) {
+			boolean covered = drivingTimesOfBase[demand.node.index-1] <= maxTime;
+			if (covered && !coverage.covers(base.index, demand.index)) addCoverage(base, demand);
+			else if (!covered && coverage.covers(base.index, demand.index)) removeCoverage(base, demand);
+		}
+	}
+	
+	/**
+	 * Stores that a base no longer covers a demand.
+	 * @param base
+	 * @param demand
+	 */
+	void removeCoverage(Base base, Demand demand) {
+		modificationCount++;
+		coverage.remove(base.index, demand.index);
+		base.coveredDemands.remove(demand);
+		demand.basesCovering.remove(base);
+	}
+	
 	/**
 	 * Processes the bounds of the graph into a database-friendly export format. 
 	 * The maximum number of ambulances depends on the service level required.
@@ -161,14 +621,7 @@ public class AmbulanceGraph extends BasicGraph {
 	 */
 	public void calculateNumberOfBasesLB() {
 		// transform the information of bases covering demands into indices to be able to solve them in a mathematical model
-		ArrayList<HashSet<Integer>> basesCoveringDemandsIndices = new ArrayList<HashSet<Integer>>(); // J_i
-		for (Demand demand : demands) { // for all demands
-			HashSet<Integer> basesCoveringDemandIndices = new HashSet<Integer>();
-			for (Base base : demand.basesCovering) { // for all bases that cover a demand
-				basesCoveringDemandIndices.add(bases.indexOf(base)); //add ID of the base (not ID of the node)
-			}
-			basesCoveringDemandsIndices.add(basesCoveringDemandIndices);
-		}
+		ArrayList<HashSet<Integer>> basesCoveringDemandsIndices = CoverageIndex.toSets(coverage.basesCoveringDemand); // J_i
 		
 		// create and solve the model that determines the lower bound for the number of bases
 		// todo
@@ -13,6 +13,7 @@ public class Base {
 	public double costs; // costs of installing a base
 	public double costsPerAmbulance; // costs per ambulance
 	public Node node; // location in the graph
+	public int index = -1; // position in the list of bases of the graph (0-based), used as id in the {@link CoverageIndex}
 	
 	/**
 	 * Standard constructor.
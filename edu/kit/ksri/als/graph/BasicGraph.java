@@ -4,17 +4,32 @@ import edu.kit.ksri.als.dataExchange.*;
 import edu.kit.ksri.als.gui.GraphLayout;
 
 import java.awt.geom.Point2D;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * A regular directed graph specified by a name and sets of nodes and edges.
  * Contains only the information that is absolutely necessary to create a graph for the {@link GraphLayout}.
+ * 
+ * The edges are stored in compressed sparse row (CSR) format: the edges leaving the node with 0-based index i
+ * are stored at positions edgeOffsets[i] to edgeOffsets[i+1]-1 of edgeTargets (0-based index of the destination node)
+ * and edgeWeights. All shortest path calculations work on these arrays.
+ * The list of edges is only a view on the arrays.
  */
 public class BasicGraph{
 	
 	public String name; // name of the graph
 	public ArrayList<Node> nodes = new ArrayList<Node>(); // list of all nodes of the graph
-	public ArrayList<Edge> edges = new ArrayList<Edge>(); // list of all edges of the graph	
+	public List<Edge> edges = new EdgeView(); // list of all edges of the graph (view on the CSR arrays)
+	
+	// edges in CSR format
+	public int[] edgeOffsets = new int[] {0};
+	public int[] edgeTargets = new int[0];
+	public double[] edgeWeights = new double[0];
+	public int numberOfSkippedEdges = 0; // rows of the edge sheet skipped because of an unknown node (see readEdgeList)
 	
 	// column numbers in the import Excel file where dedicated information is found (0-based)
 	int graphNameColumn		= 0; // column A in Excel
@@ -22,22 +37,37 @@ public class BasicGraph{
 	int edgeWeightsColumn	= 7; // column H in Excel
 	int nodeXColumn 		= 8; // column I in Excel
 	int nodeYColumn 		= 9; // column J in Excel
+	
+	// column numbers in the edge sheet (sparse format, one row per edge)
+	int edgeFromColumn		= 1; // column B in Excel
+	int edgeToColumn		= 2; // column C in Excel
+	int edgeWeightColumn	= 3; // column D in Excel
+		
+	/**
+	 * Creates a graph without nodes and edges.
+	 * @param graphName
+	 */
+	public BasicGraph(String graphName) {
+		this.name = graphName;
+	}
 		
 	/**
 	 * Creates a basic graph using the information of a dedicated Excel sheet.
+	 * The edges are read from the node rows (dense format, column H) and from the edge sheet (sparse format), if present.
+	 * In the node rows, "-" means that there is no edge.
 	 * @param graphName
+	 * @throws NumberFormatException If an edge weight is empty or no number.
 	 */
 	public BasicGraph(String graphName, ImportData file) {
 		this.name = graphName;		
-		double[][] edgeWeights = null; // auxiliary field to create the edges
 		int nodeID = 0;
+		int numberOfEdges = 0;
+		NumberListTokenizer tokenizer = new NumberListTokenizer(); // parses the edge weights without creating Strings
 
 		// read from Excel
-		while(file.rowIterator.hasNext()) { //iterate through all rows of the Excel file (one row contains information about one node)
+		for (int row : file.getRowsOfGraph(name)) { //iterate through the rows of this graph (one row contains information about one node)
 
-			file.getNextRow();
-
-			if (!name.equals(file.getCellInCurrentRowAsString(graphNameColumn))) continue; // only read information if it is the correct graph, otherwise skip this row
+			file.goToRow(row);
 			
 			// read and create node
             String nodeName = file.getCellInCurrentRowAsString(nodeNameColumn);
@@ -48,26 +78,205 @@ public class BasicGraph{
 			}
 			nodes.add(new Node(++nodeID, nodeName, coordinates)); //create node and add it to list of nodes
 
-		    //read edge weights (preliminary step to creating the edges)		    
-		    String edgeWeightsStr = file.getCellInCurrentRowAsString(edgeWeightsColumn);
-		    edgeWeightsStr = edgeWeightsStr.replaceAll(",","."); // replace "," (German number notation) with "." (Java number notation)
-		    String[] edgeWeightsArrayStr = edgeWeightsStr.split(";"); // create edge weight array from String (";" as separator)
-	    	if (edgeWeights == null) edgeWeights = new double[edgeWeightsArrayStr.length][edgeWeightsArrayStr.length]; // create array for edge weights
-	    	for (int i=0; i<edgeWeightsArrayStr.length; i++) {
-	    		if (edgeWeightsArrayStr[i].equals("-")) edgeWeights[nodeID-1][i] = Double.MAX_VALUE; // if there is no edge, assign Double.MAX_VALUE as edge weight
-	    		else edgeWeights[nodeID-1][i] = new Double(edgeWeightsArrayStr[i]); // assign edge weight
+		    //read edge weights and append the edges of this node to the CSR arrays (rows are read in the order of the nodes)
+		    if (!file.isCellInCurrentRowNotNull(edgeWeightsColumn)) { // edges are given in the edge sheet
+		    	if (nodeID == edgeOffsets.length) edgeOffsets = Arrays.copyOf(edgeOffsets, 2*nodeID); // enlarge offsets if full
+		    	edgeOffsets[nodeID] = numberOfEdges;
+		    	continue;
+		    }
+		    tokenizer.setText(file.getCellInCurrentRowAsString(edgeWeightsColumn)); // edge weights separated by ";" (German or English number notation)
+	    	for (int i=0; tokenizer.hasNext(); i++) {
+	    		double edgeWeight = tokenizer.next();
+	    		if (Double.isNaN(edgeWeight)) continue; // if there is no edge ("-"), skip entry
+	    		if (numberOfEdges == edgeTargets.length) { // enlarge arrays if full
+	    			edgeTargets = Arrays.copyOf(edgeTargets, Math.max(16, 2*numberOfEdges));
+	    			edgeWeights = Arrays.copyOf(edgeWeights, edgeTargets.length);
+	    		}
+	    		edgeTargets[numberOfEdges] = i;
+	    		edgeWeights[numberOfEdges++] = edgeWeight;
 	    	}
+	    	if (nodeID == edgeOffsets.length) edgeOffsets = Arrays.copyOf(edgeOffsets, 2*nodeID); // enlarge offsets if full
+	    	edgeOffsets[nodeID] = numberOfEdges; // end of the edges of this node
 	    	
 		} //end reading Excel file		
 		
-		//create edges
-		for (Node node : nodes) { // for all nodes
-			for (int i=0; i<edgeWeights[node.index-1].length; i++) { // for all edge weights of a node that have been read (Remark: node.id is 1-based)
-				double edgeWeight = edgeWeights[node.index-1][i];
-				if (edgeWeight<Double.MAX_VALUE) { // if edge weight exists (Double.MAX_VALUE marks the lack of an edge)
-					edges.add(new Edge(node, nodes.get(i), edgeWeight)); // create edge
-				}
+		// trim CSR arrays to their actual size
+		edgeOffsets = Arrays.copyOf(edgeOffsets, nodes.size()+1);
+		edgeTargets = Arrays.copyOf(edgeTargets, numberOfEdges);
+		edgeWeights = Arrays.copyOf(edgeWeights, numberOfEdges);
+		
+		// read edges given in the sparse format
+		int[] edgeRows = file.getEdgeRowsOfGraph(name);
+		if (edgeRows.length > 0) readEdgeList(file, edgeRows);
+	}
+	
+	/**
+	 * Reads edges from the edge sheet (one row per edge: graph, origin node, destination node, weight) and adds them to the CSR arrays.
+	 * Edges between unknown nodes are skipped and counted in numberOfSkippedEdges. If an edge is given more than once, the last weight is used.
+	 * @param file
+	 * @param edgeRows Positions of the rows of this graph in the edge sheet.
+	 */
+	void readEdgeList(ImportData file, int[] edgeRows) {
+		HashMap<String,Integer> nodeIndices = new HashMap<String,Integer>(); // 0-based index per node name
+		for (Node node : nodes) nodeIndices.put(node.name, node.index-1); //node id is 1-based
+		
+		// read the edges and count them per origin node
+		int numberOfNodes = nodes.size();
+		int[] sources = new int[edgeRows.length];
+		int[] targets = new int[edgeRows.length];
+		double[] weights = new double[edgeRows.length];
+		int[] newEdgeOffsets = new int[numberOfNodes+1];
+		int numberOfNewEdges = 0;
+		for (int row : edgeRows) {
+			file.goToEdgeRow(row);
+			Integer from = nodeIndices.get(file.getCellInCurrentRowAsString(edgeFromColumn));
+			Integer to = nodeIndices.get(file.getCellInCurrentRowAsString(edgeToColumn));
+			if (from == null || to == null) { // unknown node
+				numberOfSkippedEdges++;
+				continue;
+			}
+			sources[numberOfNewEdges] = from;
+			targets[numberOfNewEdges] = to;
+			weights[numberOfNewEdges++] = file.getCellInCurrentRowAsDouble(edgeWeightColumn);
+			newEdgeOffsets[from+1]++;
+		}
+		
+		// merge the existing and the new edges per origin node (counting sort, new edges behind the existing ones)
+		for (int i=0; i<numberOfNodes; i++) newEdgeOffsets[i+1] += newEdgeOffsets[i] + (edgeOffsets[i+1]-edgeOffsets[i]);
+		int[] mergedTargets = new int[newEdgeOffsets[numberOfNodes]];
+		double[] mergedWeights = new double[newEdgeOffsets[numberOfNodes]];
+		int[] positions = Arrays.copyOf(newEdgeOffsets, numberOfNodes); // next free position per node
+		for (int i=0; i<numberOfNodes; i++) {
+			for (int e=edgeOffsets[i]; e<edgeOffsets[i+1]; e++) {
+				mergedTargets[positions[i]] = edgeTargets[e];
+				mergedWeights[positions[i]++] = edgeWeights[e];
 			}
 		}
+		for (int e=0; e<numberOfNewEdges; e++) {
+			mergedTargets[positions[sources[e]]] = targets[e];
+			mergedWeights[positions[sources[e]]++] = weights[e];
+		}
+		
+		// remove duplicate edges (keep the last one) and store the result
+		int[] lastOrigin = new int[numberOfNodes]; // origin node + 1 whose edges contained the target last
+		boolean[] duplicate = new boolean[mergedTargets.length];
+		for (int i=0; i<numberOfNodes; i++) {
+			for (int e=newEdgeOffsets[i+1]-1; e>=newEdgeOffsets[i]; e--) { // backwards: the last edge to a target is kept
+				duplicate[e] = (lastOrigin[mergedTargets[e]] == i+1);
+				lastOrigin[mergedTargets[e]] = i+1;
+			}
+		}
+		int numberOfEdges = 0;
+		edgeOffsets = new int[numberOfNodes+1];
+		for (int i=0; i<numberOfNodes; i++) {
+			for (int e=newEdgeOffsets[i]; e<newEdgeOffsets[i+1]; e++) {
+				if (duplicate[e]) continue;
+				mergedTargets[numberOfEdges] = mergedTargets[e];
+				mergedWeights[numberOfEdges++] = mergedWeights[e];
+			}
+			edgeOffsets[i+1] = numberOfEdges;
+		}
+		edgeTargets = Arrays.copyOf(mergedTargets, numberOfEdges);
+		edgeWeights = Arrays.copyOf(mergedWeights, numberOfEdges);
+	}
+	
+	/**
+	 * Finds the edge between two nodes.
+	 * @param fromIndex Index of the origin node, 0-based.
+	 * @param toIndex Index of the destination node, 0-based.
+	 * @return Position of the edge in the CSR arrays, -1 if there is no such edge.
+	 */
+	public int findEdge(int fromIndex, int toIndex) {
+		for (int e=edgeOffsets[fromIndex]; e<edgeOffsets[fromIndex+1]; e++) {
+			if (edgeTargets[e] == toIndex) return e;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Sets the weight of the edge between two nodes. If there is no such edge, it is added.
+	 * @param fromIndex Index of the origin node, 0-based.
+	 * @param toIndex Index of the destination node, 0-based.
+	 * @param weight New edge weight.
+	 * @return Previous weight of the edge, Double.POSITIVE_INFINITY if the edge did not exist.
+	 */
+	public double setEdgeWeight(int fromIndex, int toIndex, double weight) {
+		int edgeIndex = findEdge(fromIndex, toIndex);
+		if (edgeIndex >= 0) { // edge exists: replace weight
+			double oldWeight = edgeWeights[edgeIndex];
+			edgeWeights[edgeIndex] = weight;
+			return oldWeight;
+		}
+		
+		// edge does not exist: insert it behind the other edges of the origin node
+		int position = edgeOffsets[fromIndex+1];
+		int[] newEdgeTargets = new int[edgeTargets.length+1];
+		double[] newEdgeWeights = new double[edgeWeights.length+1];
+		System.arraycopy(edgeTargets, 0, newEdgeTargets, 0, position);
+		System.arraycopy(edgeWeights, 0, newEdgeWeights, 0, position);
+		newEdgeTargets[position] = toIndex;
+		newEdgeWeights[position] = weight;
+		System.arraycopy(edgeTargets, position, newEdgeTargets, position+1, edgeTargets.length-position);
+		System.arraycopy(edgeWeights, position, newEdgeWeights, position+1, edgeWeights.length-position);
+		for (int i=fromIndex+1; i<edgeOffsets.length; i++) edgeOffsets[i]++;
+		edgeTargets = newEdgeTargets;
+		edgeWeights = newEdgeWeights;
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Deletes the edge between two nodes.
+	 * @param fromIndex Index of the origin node, 0-based.
+	 * @param toIndex Index of the destination node, 0-based.
+	 * @return Weight of the deleted edge, Double.POSITIVE_INFINITY if the edge did not exist.
+	 */
+	public double deleteEdge(int fromIndex, int toIndex) {
+		int edgeIndex = findEdge(fromIndex, toIndex);
+		if (edgeIndex < 0) return Double.POSITIVE_INFINITY;
+		
+		double oldWeight = edgeWeights[edgeIndex];
+		int[] newEdgeTargets = new int[edgeTargets.length-1];
+		double[] newEdgeWeights = new double[edgeWeights.length-1];
+		System.arraycopy(edgeTargets, 0, newEdgeTargets, 0, edgeIndex);
+		System.arraycopy(edgeWeights, 0, newEdgeWeights, 0, edgeIndex);
+		System.arraycopy(edgeTargets, edgeIndex+1, newEdgeTargets, edgeIndex, newEdgeTargets.length-edgeIndex);
+		System.arraycopy(edgeWeights, edgeIndex+1, newEdgeWeights, edgeIndex, newEdgeWeights.length-edgeIndex);
+		for (int i=fromIndex+1; i<edgeOffsets.length; i++) edgeOffsets[i]--;
+		edgeTargets = newEdgeTargets;
+		edgeWeights = newEdgeWeights;
+		return oldWeight;
+	}
+	
+	/**
+	 * Returns the 0-based index of the origin node of an edge.
+	 * @param edgeIndex Position of the edge in the CSR arrays.
+	 * @return Index of the origin node, 0-based.
+	 */
+	public int getEdgeSource(int edgeIndex) {
+		// binary search for the last node whose edges start at or before the position
+		int low = 0;
+		int high = nodes.size()-1;
+		while (low < high) {
+			int middle = (low+high+1) >>> 1;
+			if (edgeOffsets[middle] <= edgeIndex) low = middle;
+			else high = middle-1;
+		}
+		return low;
+	}
+	
+	/**
+	 * Read-only list of {@link Edge} objects that are created on demand from the CSR arrays.
+	 */
+	class EdgeView extends AbstractList<Edge> {
+		
+		@Override
+		public Edge get(int edgeIndex) {
+			return new Edge(nodes.get(getEdgeSource(edgeIndex)), nodes.get(edgeTargets[edgeIndex]), edgeWeights[edgeIndex]);
+		}
+
+		@Override
+		public int size() {
+			return edgeTargets.length;
+		}
 	}
 }
@@ -0,0 +1,419 @@
+package edu.kit.ksri.als.graph;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Contraction hierarchy for point-to-point driving times on graphs for which no driving time matrix can be stored.
+ *
+ * Preprocessing: the nodes are contracted one after the other, in the order of their edge difference
+ * (number of shortcuts needed minus number of removed edges, plus number of already contracted neighbours).
+ * Contracting a node removes it from the remaining graph. A shortcut u->x is added for every path u->v->x through the contracted node v
+ * unless a bounded witness search finds a path from u to x of at most the same length that avoids v.
+ * The position of a node in this order is its rank.
+ *
+ * Query: a bidirectional Dijkstra search that only uses edges leading to nodes of higher rank,
+ * forward from the origin and backward from the destination. Both searches meet at the node of highest rank of a shortest path.
+ * The search spaces are small (typically a few hundred nodes), so a query takes microseconds.
+ *
+ * Unlike the driving time matrix, which holds the shortest cycle through a node as driving time from the node to itself,
+ * a query from a node to itself returns 0 ({@link AmbulanceGraph#getDrivingTime(Node, Node)} calculates the cycle instead).
+ *
+ * All node indices in this class are 0-based. Queries reuse internal arrays and must not run concurrently.
+ * Changes of the edges of the graph are not reflected; the hierarchy needs to be built again.
+ */
+public class ContractionHierarchy {
+
+	public static final double UNREACHABLE = 99999.9; // driving time of nodes that cannot be reached
+
+	int numberOfNodes;
+	int witnessSettledLimit = 500; // maximum number of nodes settled by a witness search (if exceeded, the shortcut is added)
+	public int[] rank; // position of a node in the contraction order
+	public int numberOfShortcuts = 0;
+
+	// upward graphs in CSR format: the forward graph contains the edges to nodes of higher rank,
+	// the backward graph contains the reversed edges from nodes of higher rank
+	int[] forwardOffsets, forwardTargets, backwardOffsets, backwardTargets;
+	double[] forwardWeights, backwardWeights;
+
+	// remaining graph during the contraction (adjacency lists per node)
+	int[][] outTargets, inSources;
+	double[][] outWeights, inWeights;
+	int[] outDegrees, inDegrees;
+
+	// auxiliary variables for the searches
+	double[] witnessDistances, forwardDistances, backwardDistances;
+	int[] touchedNodes;
+	int numberOfTouchedNodes = 0;
+	Heap heap, forwardHeap, backwardHeap;
+
+	/**
+	 * Builds the contraction hierarchy for the edges of a graph.
+	 * @param graph
+	 */
+	public ContractionHierarchy(BasicGraph graph) {
+		numberOfNodes = graph.nodes.size();
+		witnessDistances = new double[numberOfNodes];
+		forwardDistances = new double[numberOfNodes];
+		backwardDistances = new double[numberOfNodes];
+		Arrays.fill(witnessDistances, Double.POSITIVE_INFINITY);
+		Arrays.fill(forwardDistances, Double.POSITIVE_INFINITY);
+		Arrays.fill(backwardDistances, Double.POSITIVE_INFINITY);
+		touchedNodes = new int[2*numberOfNodes];
+		heap = new Heap();
+		forwardHeap = new Heap();
+		backwardHeap = new Heap();
+
+		initializeRemainingGraph(graph);
+		contractNodes();
+
+		// free the remaining graph
+		outTargets = null;
+		inSources = null;
+		outWeights = null;
+		inWeights = null;
+	}
+
+	/**
+	 * Calculates the driving time between two nodes.
+	 * @param from Index of the origin node, 0-based.
+	 * @param to Index of the destination node, 0-based.
+	 * @return Length of the shortest path (0 if both nodes are equal, UNREACHABLE if there is no path).
+	 */
+	public double time(int from, int to) {
+		if (from == to) return 0.0;
+
+		// reset the results of the last query
+		for (int t=0; t<numberOfTouchedNodes; t++) {
+			forwardDistances[touchedNodes[t]] = Double.POSITIVE_INFINITY;
+			backwardDistances[touchedNodes[t]] = Double.POSITIVE_INFINITY;
+		}
+		numberOfTouchedNodes = 0;
+		forwardHeap.clear();
+		backwardHeap.clear();
+
+		forwardDistances[from] = 0.0;
+		backwardDistances[to] = 0.0;
+		touchedNodes[numberOfTouchedNodes++] = from;
+		touchedNodes[numberOfTouchedNodes++] = to;
+		forwardHeap.push(from, 0.0);
+		backwardHeap.push(to, 0.0);
+
+		double shortestDistance = Double.POSITIVE_INFINITY;
+		while (true) {
+			// continue with the search whose next node is closer, as long as it may still improve the shortest distance
+			boolean forward = forwardHeap.size > 0 && forwardHeap.peekDistance() < shortestDistance;
+			boolean backward = backwardHeap.size > 0 && backwardHeap.peekDistance() < shortestDistance;
+			if (!forward && !backward) break;
+			if (forward && backward) forward = forwardHeap.peekDistance() <= backwardHeap.peekDistance();
+
+			Heap searchHeap = forward ? forwardHeap : backwardHeap;
+			double[] distances = forward ? forwardDistances : backwardDistances;
+			double[] otherDistances = forward ? backwardDistances : forwardDistances;
+			int[] offsets = forward ? forwardOffsets : backwardOffsets;
+			int[] targets = forward ? forwardTargets : backwardTargets;
+			double[] weights = forward ? forwardWeights : backwardWeights;
+
+			double distance = searchHeap.peekDistance();
+			int node = searchHeap.pop();
+			if (distance > distances[node]) continue; // outdated entry
+			if (distance + otherDistances[node] < shortestDistance) shortestDistance = distance + otherDistances[node]; // searches meet
+			for (int e=offsets[node]; e<offsets[node+1]; e++) {
+				int target = targets[e];
+				double newDistance = distance + weights[e];
+				if (newDistance >= distances[target]) continue;
+				if (forwardDistances[target] == Double.POSITIVE_INFINITY && backwardDistances[target] == Double.POSITIVE_INFINITY) touchedNodes[numberOfTouchedNodes++] = target;
+				distances[target] = newDistance;
+				searchHeap.push(target, newDistance);
+			}
+		}
+		return (shortestDistance == Double.POSITIVE_INFINITY) ? UNREACHABLE : shortestDistance;
+	}
+
+	/**
+	 * Calculates the driving time between two nodes.
+	 * @param from Origin node.
+	 * @param to Destination node.
+	 * @return Length of the shortest path (0 if both nodes are equal, UNREACHABLE if there is no path).
+	 */
+	public double time(Node from, Node to) {
+		return time(from.index-1, to.index-1); //node id is 1-based
+	}
+
+	/**
+	 * Copies the edges of the graph into adjacency lists (self-loops are irrelevant for shortest paths between different nodes).
+	 * @param graph
+	 */
+	void initializeRemainingGraph(BasicGraph graph) {
+		outTargets = new int[numberOfNodes][];
+		outWeights = new double[numberOfNodes][];
+		inSources = new int[numberOfNodes][4];
+		inWeights = new double[numberOfNodes][4];
+		outDegrees = new int[numberOfNodes];
+		inDegrees = new int[numberOfNodes];
+		for (int u=0; u<numberOfNodes; u++) {
+			int numberOfEdges = graph.edgeOffsets[u+1] - graph.edgeOffsets[u];
+			outTargets[u] = new int[Math.max(numberOfEdges, 4)];
+			outWeights[u] = new double[Math.max(numberOfEdges, 4)];
+		}
+		for (int u=0; u<numberOfNodes; u++) {
+			for (int e=graph.edgeOffsets[u]; e<graph.edgeOffsets[u+1]; e++) {
+				if (graph.edgeTargets[e] != u) addEdge(u, graph.edgeTargets[e], graph.edgeWeights[e]);
+			}
+		}
+	}
+
+	/**
+	 * Contracts all nodes in the order of their priority and builds the upward graphs.
+	 */
+	void contractNodes() {
+		rank = new int[numberOfNodes];
+		int[] contractedNeighbours = new int[numberOfNodes];
+		int[] priorities = new int[numberOfNodes];
+		PriorityQueue<Long> queue = new PriorityQueue<Long>(); // entries contain priority (upper 32 bits) and node (lower 32 bits)
+		for (int v=0; v<numberOfNodes; v++) {
+			priorities[v] = calculatePriority(v, contractedNeighbours);
+			queue.add(queueEntry(priorities[v], v));
+		}
+
+		// upward edges are collected per node while it is contracted: all its remaining neighbours have a higher rank
+		int[][] forwardTargetsOfNode = new int[numberOfNodes][];
+		double[][] forwardWeightsOfNode = new double[numberOfNodes][];
+		int[][] backwardTargetsOfNode = new int[numberOfNodes][];
+		double[][] backwardWeightsOfNode = new double[numberOfNodes][];
+
+		int nextRank = 0;
+		while (!queue.isEmpty()) {
+			long entry = queue.poll();
+			int v = (int) entry;
+			if ((int) (entry >> 32) != priorities[v] || outDegrees[v] < 0) continue; // outdated entry or already contracted
+
+			// lazy update: the priority may have increased since the entry was added
+			int priority = calculatePriority(v, contractedNeighbours);
+			if (priority != priorities[v]) {
+				priorities[v] = priority;
+				queue.add(queueEntry(priority, v));
+				continue;
+			}
+
+			rank[v] = nextRank++;
+			forwardTargetsOfNode[v] = Arrays.copyOf(outTargets[v], outDegrees[v]);
+			forwardWeightsOfNode[v] = Arrays.copyOf(outWeights[v], outDegrees[v]);
+			backwardTargetsOfNode[v] = Arrays.copyOf(inSources[v], inDegrees[v]);
+			backwardWeightsOfNode[v] = Arrays.copyOf(inWeights[v], inDegrees[v]);
+			contractNode(v, false);
+
+			// the priorities of the neighbours change
+			for (int[] neighbours : new int[][] {forwardTargetsOfNode[v], backwardTargetsOfNode[v]}) {
+				for (int neighbour : neighbours) {
+					contractedNeighbours[neighbour]++;
+					priorities[neighbour] = calculatePriority(neighbour, contractedNeighbours);
+					queue.add(queueEntry(priorities[neighbour], neighbour));
+				}
+			}
+		}
+
+		// build the CSR arrays of the upward graphs
+		forwardOffsets = new int[numberOfNodes+1];
+		backwardOffsets = new int[numberOfNodes+1];
+		for (int v=0; v<numberOfNodes; v++) {
+			forwardOffsets[v+1] = forwardOffsets[v] + forwardTargetsOfNode[v].length;
+			backwardOffsets[v+1] = backwardOffsets[v] + backwardTargetsOfNode[v].length;
+		}
+		forwardTargets = new int[forwardOffsets[numberOfNodes]];
+		forwardWeights = new double[forwardOffsets[numberOfNodes]];
+		backwardTargets = new int[backwardOffsets[numberOfNodes]];
+		backwardWeights = new double[backwardOffsets[numberOfNodes]];
+		for (int v=0; v<numberOfNodes; v++) {
+			System.arraycopy(forwardTargetsOfNode[v], 0, forwardTargets, forwardOffsets[v], forwardTargetsOfNode[v].length);
+			System.arraycopy(forwardWeightsOfNode[v], 0, forwardWeights, forwardOffsets[v], forwardWeightsOfNode[v].length);
+			System.arraycopy(backwardTargetsOfNode[v], 0, backwardTargets, backwardOffsets[v], backwardTargetsOfNode[v].length);
+			System.arraycopy(backwardWeightsOfNode[v], 0, backwardWeights, backwardOffsets[v], backwardWeightsOfNode[v].length);
+		}
+	}
+
+	/**
+	 * @param priority
+	 * @param node
+	 * @return Entry of the contraction queue, ordered by priority first.
+	 */
+	static long queueEntry(int priority, int node) {
+		return ((long) priority << 32) | node;
+	}
+
+	/**
+	 * @param v Index of the node, 0-based.
+	 * @param contractedNeighbours Number of contracted neighbours per node.
+	 * @return Priority for contracting the node (nodes with a smaller priority are contracted first).
+	 */
+	int calculatePriority(int v, int[] contractedNeighbours) {
+		int shortcuts = contractNode(v, true);
+		return shortcuts - outDegrees[v] - inDegrees[v] + contractedNeighbours[v];
+	}
+
+	/**
+	 * Contracts a node: adds the necessary shortcuts between its neighbours and removes it from the remaining graph.
+	 * @param v Index of the node, 0-based.
+	 * @param simulate If true, the shortcuts are only counted and nothing is changed.
+	 * @return Number of shortcuts needed.
+	 */
+	int contractNode(int v, boolean simulate) {
+		int shortcuts = 0;
+		double maxOutWeight = 0.0;
+		for (int b=0; b<outDegrees[v]; b++) maxOutWeight = Math.max(maxOutWeight, outWeights[v][b]);
+
+		for (int a=0; a<inDegrees[v]; a++) {
+			int u = inSources[v][a];
+			double weightUV = inWeights[v][a];
+			runWitnessSearch(u, v, weightUV + maxOutWeight);
+			for (int b=0; b<outDegrees[v]; b++) {
+				int x = outTargets[v][b];
+				if (x == u) continue;
+				double shortcutWeight = weightUV + outWeights[v][b];
+				if (witnessDistances[x] <= shortcutWeight) continue; // a path avoiding v is at least as short
+				shortcuts++;
+				if (!simulate) addEdge(u, x, shortcutWeight);
+			}
+		}
+
+		if (!simulate) {
+			numberOfShortcuts += shortcuts;
+			// remove the node from the remaining graph
+			for (int b=0; b<outDegrees[v]; b++) removeEntry(inSources, inWeights, inDegrees, outTargets[v][b], v);
+			for (int a=0; a<inDegrees[v]; a++) removeEntry(outTargets, outWeights, outDegrees, inSources[v][a], v);
+			outDegrees[v] = -1; // marks the node as contracted
+			inDegrees[v] = -1;
+		}
+		return shortcuts;
+	}
+
+	/**
+	 * Calculates the distances from a node in the remaining graph without a node, up to a maximum distance.
+	 * The search stops after witnessSettledLimit nodes.
+	 * @param source Index of the source node, 0-based.
+	 * @param ignoredNode Index of the node that is contracted, 0-based.
+	 * @param maxDistance
+	 */
+	void runWitnessSearch(int source, int ignoredNode, double maxDistance) {
+		for (int t=0; t<numberOfTouchedNodes; t++) witnessDistances[touchedNodes[t]] = Double.POSITIVE_INFINITY;
+		numberOfTouchedNodes = 0;
+		heap.clear();
+
+		witnessDistances[source] = 0.0;
+		touchedNodes[numberOfTouchedNodes++] = source;
+		heap.push(source, 0.0);
+		int settledNodes = 0;
+		while (heap.size > 0 && settledNodes < witnessSettledLimit) {
+			double distance = heap.peekDistance();
+			int node = heap.pop();
+			if (distance > witnessDistances[node]) continue; // outdated entry
+			settledNodes++;
+			for (int b=0; b<outDegrees[node]; b++) {
+				int target = outTargets[node][b];
+				double newDistance = distance + outWeights[node][b];
+				if (target == ignoredNode || newDistance > maxDistance || newDistance >= witnessDistances[target]) continue;
+				if (witnessDistances[target] == Double.POSITIVE_INFINITY) touchedNodes[numberOfTouchedNodes++] = target;
+				witnessDistances[target] = newDistance;
+				heap.push(target, newDistance);
+			}
+		}
+	}
+
+	/**
+	 * Adds an edge to the remaining graph or shortens it if it already exists with a larger weight.
+	 * @param u Index of the origin node, 0-based.
+	 * @param x Index of the destination node, 0-based.
+	 * @param weight
+	 */
+	void addEdge(int u, int x, double weight) {
+		for (int b=0; b<outDegrees[u]; b++) {
+			if (outTargets[u][b] != x) continue;
+			if (weight < outWeights[u][b]) { // shorten existing edge
+				outWeights[u][b] = weight;
+				for (int a=0; a<inDegrees[x]; a++) {
+					if (inSources[x][a] == u) inWeights[x][a] = weight;
+				}
+			}
+			return;
+		}
+		if (outDegrees[u] == outTargets[u].length) {
+			outTargets[u] = Arrays.copyOf(outTargets[u], 2*outDegrees[u]);
+			outWeights[u] = Arrays.copyOf(outWeights[u], 2*outDegrees[u]);
+		}
+		outTargets[u][outDegrees[u]] = x;
+		outWeights[u][outDegrees[u]++] = weight;
+		if (inDegrees[x] == inSources[x].length) {
+			inSources[x] = Arrays.copyOf(inSources[x], 2*inDegrees[x]);
+			inWeights[x] = Arrays.copyOf(inWeights[x], 2*inDegrees[x]);
+		}
+		inSources[x][inDegrees[x]] = u;
+		inWeights[x][inDegrees[x]++] = weight;
+	}
+
+	/**
+	 * Removes a neighbour from the adjacency list of a node (by moving the last entry to its position).
+	 */
+	static void removeEntry(int[][] neighbours, double[][] weights, int[] degrees, int node, int neighbour) {
+		for (int a=0; a<degrees[node]; a++) {
+			if (neighbours[node][a] != neighbour) continue;
+			degrees[node]--;
+			neighbours[node][a] = neighbours[node][degrees[node]];
+			weights[node][a] = weights[node][degrees[node]];
+			return;
+		}
+	}
+
+	/**
+	 * Binary min-heap of nodes and distances. A node may be contained several times; outdated entries are skipped by the searches.
+	 */
+	static class Heap {
+		int[] nodes = new int[16];
+		double[] distances = new double[16];
+		int size = 0;
+
+		void clear() {
+			size = 0;
+		}
+
+		double peekDistance() {
+			return distances[0];
+		}
+
+		void push(int node, double distance) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, 2*size);
+				distances = Arrays.copyOf(distances, 2*size);
+			}
+			int position = size++;
+			while (position > 0) { // sift up
+				int parent = (position-1) >>> 1;
+				if (distances[parent] <= distance) break;
+				nodes[position] = nodes[parent];
+				distances[position] = distances[parent];
+				position = parent;
+			}
+			nodes[position] = node;
+			distances[position] = distance;
+		}
+
+		int pop() {
+			int result = nodes[0];
+			size--;
+			int node = nodes[size];
+			double distance = distances[size];
+			int position = 0;
+			while (true) { // sift down
+				int child = 2*position+1;
+				if (child >= size) break;
+				if (child+1 < size && distances[child+1] < distances[child]) child++; // smaller child
+				if (distance <= distances[child]) break;
+				nodes[position] = nodes[child];
+				distances[position] = distances[child];
+				position = child;
+			}
+			nodes[position] = node;
+			distances[position] = distance;
+			return result;
+		}
+	}
+}
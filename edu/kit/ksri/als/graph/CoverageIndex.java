@@ -0,0 +1,200 @@
+package edu.kit.ksri.als.graph;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Index of which bases cover which demands in an {@link AmbulanceGraph}.
+ * Bases and demands are identified by their dense 0-based index, that is, their position in the lists of the graph.
+ *
+ * The demands covered by a base (I_j) and the bases covering a demand (J_i) are both stored as bitsets:
+ * bit i of demandsCoveredByBase[j] is set if base j covers demand i, and vice versa.
+ */
+public class CoverageIndex {
+
+	public int numberOfBases;
+	public int numberOfDemands;
+	public long[][] demandsCoveredByBase; // I_j as bitset over demands
+	public long[][] basesCoveringDemand; // J_i as bitset over bases
+
+	/**
+	 * Creates an empty index in which no demand is covered.
+	 * @param numberOfBases
+	 * @param numberOfDemands
+	 */
+	public CoverageIndex(int numberOfBases, int numberOfDemands) {
+		this.numberOfBases = numberOfBases;
+		this.numberOfDemands = numberOfDemands;
+		demandsCoveredByBase = new long[numberOfBases][(numberOfDemands+63) >>> 6];
+		basesCoveringDemand = new long[numberOfDemands][(numberOfBases+63) >>> 6];
+	}
+
+	/**
+	 * Creates a copy of an index that is not affected by later changes of the original.
+	 * @param other
+	 */
+	public CoverageIndex(CoverageIndex other) {
+		numberOfBases = other.numberOfBases;
+		numberOfDemands = other.numberOfDemands;
+		demandsCoveredByBase = new long[numberOfBases][];
+		for (int j=0; j<numberOfBases; j++) demandsCoveredByBase[j] = other.demandsCoveredByBase[j].clone();
+		basesCoveringDemand = new long[numberOfDemands][];
+		for (int i=0; i<numberOfDemands; i++) basesCoveringDemand[i] = other.basesCoveringDemand[i].clone();
+	}
+
+	/**
+	 * Marks a demand as covered by a base.
+	 * @param base Index of the base, 0-based.
+	 * @param demand Index of the demand, 0-based.
+	 */
+	public void add(int base, int demand) {
+		demandsCoveredByBase[base][demand >>> 6] |= 1L << demand;
+		basesCoveringDemand[demand][base >>> 6] |= 1L << base;
+	}
+
+	/**
+	 * Marks a demand as not covered by a base.
+	 * @param base Index of the base, 0-based.
+	 * @param demand Index of the demand, 0-based.
+	 */
+	public void remove(int base, int demand) {
+		demandsCoveredByBase[base][demand >>> 6] &= ~(1L << demand);
+		basesCoveringDemand[demand][base >>> 6] &= ~(1L << base);
+	}
+
+	/**
+	 * Checks if a base covers a demand.
+	 * @param base Index of the base, 0-based.
+	 * @param demand Index of the demand, 0-based.
+	 * @return True if the demand can be reached from the base in time.
+	 */
+	public boolean covers(int base, int demand) {
+		return (demandsCoveredByBase[base][demand >>> 6] & (1L << demand)) != 0;
+	}
+
+	/**
+	 * @param base Index of the base, 0-based.
+	 * @return Indices of all demands covered by the base in increasing order.
+	 */
+	public int[] getDemandsCoveredByBase(int base) {
+		return toIndices(demandsCoveredByBase[base]);
+	}
+
+	/**
+	 * @param demand Index of the demand, 0-based.
+	 * @return Indices of all bases covering the demand in increasing order.
+	 */
+	public int[] getBasesCoveringDemand(int demand) {
+		return toIndices(basesCoveringDemand[demand]);
+	}
+
+	/**
+	 * @param base Index of the base, 0-based.
+	 * @return Number of demands covered by the base.
+	 */
+	public int countDemandsCoveredByBase(int base) {
+		return popcount(demandsCoveredByBase[base]);
+	}
+
+	/**
+	 * @param demand Index of the demand, 0-based.
+	 * @return Number of bases covering the demand.
+	 */
+	public int countBasesCoveringDemand(int demand) {
+		return popcount(basesCoveringDemand[demand]);
+	}
+
+	/**
+	 * Determines the demands covered by a set of bases.
+	 * @param x Bases: the base j is part of the set if x[j] > 0.
+	 * @return Bitset of all demands covered by at least one base of the set.
+	 */
+	public long[] getDemandsCoveredByBases(int[] x) {
+		long[] result = new long[(numberOfDemands+63) >>> 6];
+		for (int j=0; j<numberOfBases; j++) {
+			if (x[j] > 0) unionInto(result, demandsCoveredByBase[j]);
+		}
+		return result;
+	}
+
+	/**
+	 * @param x Bases: the base j is part of the set if x[j] > 0.
+	 * @return Number of demands covered by at least one base of the set.
+	 */
+	public int countDemandsCoveredByBases(int[] x) {
+		return popcount(getDemandsCoveredByBases(x));
+	}
+
+	/**
+	 * @param base1 Index of the first base, 0-based.
+	 * @param base2 Index of the second base, 0-based.
+	 * @return Number of demands covered by both bases.
+	 */
+	public int countDemandsCoveredByBoth(int base1, int base2) {
+		long[] a = demandsCoveredByBase[base1];
+		long[] b = demandsCoveredByBase[base2];
+		int count = 0;
+		for (int w=0; w<a.length; w++) count += Long.bitCount(a[w] & b[w]);
+		return count;
+	}
+
+	/**
+	 * Converts the index into lists of sets as used by the models.
+	 * @param bitsets Either demandsCoveredByBase or basesCoveringDemand.
+	 * @return One set of indices per bitset.
+	 */
+	public static ArrayList<HashSet<Integer>> toSets(long[][] bitsets) {
+		ArrayList<HashSet<Integer>> result = new ArrayList<HashSet<Integer>>(bitsets.length);
+		for (long[] bitset : bitsets) {
+			HashSet<Integer> set = new HashSet<Integer>();
+			for (int index : toIndices(bitset)) set.add(index);
+			result.add(set);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds all elements of one bitset to another bitset of the same length.
+	 * @param target Bitset that is changed.
+	 * @param other Bitset whose elements are added.
+	 */
+	public static void unionInto(long[] target, long[] other) {
+		for (int w=0; w<target.length; w++) target[w] |= other[w];
+	}
+
+	/**
+	 * Removes all elements from a bitset that are not contained in another bitset of the same length.
+	 * @param target Bitset that is changed.
+	 * @param other Bitset to intersect with.
+	 */
+	public static void intersectInto(long[] target, long[] other) {
+		for (int w=0; w<target.length; w++) target[w] &= other[w];
+	}
+
+	/**
+	 * @param bitset
+	 * @return Number of elements in the bitset.
+	 */
+	public static int popcount(long[] bitset) {
+		int count = 0;
+		for (long word : bitset) count += Long.bitCount(word);
+		return count;
+	}
+
+	/**
+	 * @param bitset
+	 * @return Elements of the bitset in increasing order.
+	 */
+	public static int[] toIndices(long[] bitset) {
+		int[] result = new int[popcount(bitset)];
+		int position = 0;
+		for (int w=0; w<bitset.length; w++) {
+			long word = bitset[w];
+			while (word != 0) {
+				result[position++] = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word-1; // clear lowest set bit
+			}
+		}
+		return result;
+	}
+}
@@ -12,6 +12,7 @@ public class Demand {
 	public double[] probabilities;	// discrete probability distribution of demand (index as value for the volume of demand, double value as is its probability)
 	public HashSet<Base> basesCovering = new HashSet<Base>(); ;	// set of bases that can reach this demand node in time
 	public Node node; // location in the graph
+	public int index = -1; // position in the list of demands of the graph (0-based), used as id in the {@link CoverageIndex}
 	
 	/**
 	 * Standard constructor.
@@ -0,0 +1,78 @@
+package edu.kit.ksri.als.graph;
+
+import java.util.List;
+
+/**
+ * Draws demand volumes from the probability distributions of the demands of a graph in constant time per draw (alias method by Walker and Vose).
+ * The alias tables of all demands are built once and stored in flat arrays: the table of demand i covers the positions
+ * offsets[i] to offsets[i+1]-1. A draw uses one random number u in [0,1): u selects a column of the table and, by its remaining fraction,
+ * either the column itself or its alias.
+ *
+ * If the probabilities of a demand sum up to less than 1, the missing probability is added to the volume 0
+ * (as when searching the cumulative probabilities); if they sum up to more than 1, they are scaled down.
+ */
+public class DemandSampler {
+
+	public int numberOfDemands;
+	int[] offsets; // start of the table of every demand (numberOfDemands+1 entries)
+	double[] acceptance; // probability of keeping the column instead of taking its alias
+	int[] aliases; // alternative volume of every column
+
+	/**
+	 * Builds the alias tables.
+	 * @param demands Demands in the order of their indices.
+	 */
+	public DemandSampler(List<Demand> demands) {
+		numberOfDemands = demands.size();
+		offsets = new int[numberOfDemands+1];
+		for (int i=0; i<numberOfDemands; i++) offsets[i+1] = offsets[i] + Math.max(1, demands.get(i).probabilities.length);
+		acceptance = new double[offsets[numberOfDemands]];
+		aliases = new int[offsets[numberOfDemands]];
+
+		int[] small = new int[acceptance.length]; // stack of columns with less than average probability
+		int[] large = new int[acceptance.length]; // stack of columns with at least average probability
+		for (int i=0; i<numberOfDemands; i++) {
+			double[] probabilities = demands.get(i).probabilities;
+			int start = offsets[i];
+			int size = offsets[i+1]-start;
+			double sum = 0.0;
+			for (double probability : probabilities) sum += probability;
+			double total = Math.max(sum, 1.0);
+			for (int k=0; k<size; k++) {
+				double probability = (k < probabilities.length) ? probabilities[k] : 0.0;
+				if (k == 0 && sum < 1.0) probability += 1.0-sum; // missing probability means no demand
+				acceptance[start+k] = probability*size/total; // scaled so that the average column is 1
+				aliases[start+k] = k;
+			}
+
+			int numberOfSmall = 0, numberOfLarge = 0;
+			for (int k=size-1; k>=0; k--) {
+				if (acceptance[start+k] < 1.0) small[numberOfSmall++] = k;
+				else large[numberOfLarge++] = k;
+			}
+			while (numberOfSmall > 0 && numberOfLarge > 0) {
+				int less = small[--numberOfSmall];
+				int more = large[--numberOfLarge];
+				aliases[start+less] = more; // the rest of the column of less is filled by more
+				acceptance[start+more] -= 1.0-acceptance[start+less];
+				if (acceptance[start+more] < 1.0) small[numberOfSmall++] = more;
+				else large[numberOfLarge++] = more;
+			}
+			while (numberOfLarge > 0) acceptance[start+large[--numberOfLarge]] = 1.0;
+			while (numberOfSmall > 0) acceptance[start+small[--numberOfSmall]] = 1.0; // only due to rounding errors
+		}
+	}
+
+	/**
+	 * Draws the demand volume of a demand.
+	 * @param demand Index of the demand (0-based).
+	 * @param random Random number in [0,1).
+	 * @return Demand volume (index in the probabilities of the demand).
+	 */
+	public int sample(int demand, double random) {
+		int start = offsets[demand];
+		double column = random*(offsets[demand+1]-start);
+		int k = (int) column;
+		return (column-k < acceptance[start+k]) ? k : aliases[start+k];
+	}
+}
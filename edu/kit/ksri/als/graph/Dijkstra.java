@@ -0,0 +1,163 @@
+package edu.kit.ksri.als.graph;
+
+import java.util.Arrays;
+
+/**
+ * Heap-based shortest path search on the CSR edge arrays of a {@link BasicGraph}.
+ * A search starts at a single source node and may be bounded by a maximum distance.
+ * Nodes beyond the bound are never put on the heap, so the search stops as soon as its frontier passes the bound.
+ *
+ * Like the Tripel algorithm on the full driving time matrix, distances are lengths of paths with at least one edge.
+ * Hence, the source itself is only reached via a self-loop or a cycle.
+ *
+ * All node indices in this class are 0-based. The arrays are reused by consecutive searches.
+ */
+public class Dijkstra {
+
+	BasicGraph graph; // graph whose CSR arrays are searched
+	int numberOfNodes;
+
+	// results of the last search
+	public double[] distances; // distance from the source per node (Double.POSITIVE_INFINITY if not reached within the bound)
+	public int[] reachedNodes; // nodes reached within the bound, in non-decreasing order of their distance
+	public int numberOfReachedNodes = 0;
+
+	// auxiliary variables for the search
+	int[] heap; // binary min-heap of nodes ordered by their distance
+	int[] heapPositions; // position of a node in the heap (-1 if not in the heap)
+	int heapSize = 0;
+	int[] touchedNodes; // nodes with a finite distance in the last search (to reset them before the next search)
+	int numberOfTouchedNodes = 0;
+
+	/**
+	 * Creates a search engine for the edges of a graph.
+	 * @param graph
+	 */
+	public Dijkstra(BasicGraph graph) {
+		this.graph = graph;
+		numberOfNodes = graph.nodes.size();
+		distances = new double[numberOfNodes];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		reachedNodes = new int[numberOfNodes];
+		heap = new int[numberOfNodes];
+		heapPositions = new int[numberOfNodes];
+		Arrays.fill(heapPositions, -1);
+		touchedNodes = new int[numberOfNodes];
+	}
+
+	/**
+	 * Calculates the distances from a source node to all nodes that can be reached within a maximum distance.
+	 * @param source Index of the source node, 0-based.
+	 * @param maxDistance Bound for the search. Use Double.POSITIVE_INFINITY for an unbounded search.
+	 * @return Number of nodes reached. The nodes are stored in reachedNodes, their distances in distances.
+	 */
+	public int search(int source, double maxDistance) {
+		// reset the results of the last search
+		for (int t=0; t<numberOfTouchedNodes; t++) distances[touchedNodes[t]] = Double.POSITIVE_INFINITY;
+		numberOfTouchedNodes = 0;
+		numberOfReachedNodes = 0;
+
+		relaxEdges(source, 0.0, maxDistance); // start with the edges leaving the source (the source has no distance of its own)
+		while (heapSize > 0) {
+			int node = poll(); // node with the smallest distance is final
+			reachedNodes[numberOfReachedNodes++] = node;
+			relaxEdges(node, distances[node], maxDistance);
+		}
+		return numberOfReachedNodes;
+	}
+
+	/**
+	 * Propagates a shorter distance of a node through existing distances, for example after an edge weight has decreased.
+	 * Only nodes whose distance improves are visited.
+	 * @param distances Existing distances from a source (unreached nodes must have a value greater than maxDistance). They are updated in place.
+	 * @param node Index of the node whose distance has improved, 0-based.
+	 * @param distance New distance of the node.
+	 * @param maxDistance Bound for the search.
+	 * @return Number of nodes whose distance improved. The nodes are stored in reachedNodes.
+	 */
+	public int improve(double[] distances, int node, double distance, double maxDistance) {
+		double[] searchDistances = this.distances; // keep the distances of the last search
+		this.distances = distances;
+		numberOfReachedNodes = 0;
+		
+		distances[node] = distance;
+		heapPositions[node] = heapSize;
+		heap[heapSize++] = node;
+		while (heapSize > 0) {
+			int improvedNode = poll();
+			reachedNodes[numberOfReachedNodes++] = improvedNode;
+			relaxEdges(improvedNode, distances[improvedNode], maxDistance);
+		}
+		
+		this.distances = searchDistances;
+		return numberOfReachedNodes;
+	}
+	
+	/**
+	 * Updates the distances of all nodes adjacent to a node.
+	 * @param node Index of the node, 0-based.
+	 * @param distance Distance of the node.
+	 * @param maxDistance Bound for the search. Nodes beyond the bound are ignored.
+	 */
+	void relaxEdges(int node, double distance, double maxDistance) {
+		int[] edgeOffsets = graph.edgeOffsets;
+		int[] edgeTargets = graph.edgeTargets;
+		double[] edgeWeights = graph.edgeWeights;
+		for (int e=edgeOffsets[node]; e<edgeOffsets[node+1]; e++) {
+			int target = edgeTargets[e];
+			double newDistance = distance + edgeWeights[e];
+			if (newDistance > maxDistance || newDistance >= distances[target]) continue; // beyond the bound or no improvement
+			if (distances[target] == Double.POSITIVE_INFINITY) touchedNodes[numberOfTouchedNodes++] = target; // first time the node is reached
+			distances[target] = newDistance;
+			if (heapPositions[target] < 0) { // put node on the heap (a node that is already final is never improved)
+				heapPositions[target] = heapSize;
+				heap[heapSize++] = target;
+			}
+			siftUp(heapPositions[target]);
+		}
+	}
+
+	/**
+	 * Removes the node with the smallest distance from the heap.
+	 * @return Index of the node, 0-based.
+	 */
+	int poll() {
+		int node = heap[0];
+		heapPositions[node] = -1;
+		heapSize--;
+		if (heapSize > 0) {
+			heap[0] = heap[heapSize];
+			heapPositions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return node;
+	}
+
+	void siftUp(int position) {
+		int node = heap[position];
+		while (position > 0) {
+			int parent = (position-1) >>> 1;
+			if (distances[heap[parent]] <= distances[node]) break;
+			heap[position] = heap[parent];
+			heapPositions[heap[position]] = position;
+			position = parent;
+		}
+		heap[position] = node;
+		heapPositions[node] = position;
+	}
+
+	void siftDown(int position) {
+		int node = heap[position];
+		while (true) {
+			int child = 2*position+1;
+			if (child >= heapSize) break;
+			if (child+1 < heapSize && distances[heap[child+1]] < distances[heap[child]]) child++; // smaller child
+			if (distances[node] <= distances[heap[child]]) break;
+			heap[position] = heap[child];
+			heapPositions[heap[position]] = position;
+			position = child;
+		}
+		heap[position] = node;
+		heapPositions[node] = position;
+	}
+}
@@ -0,0 +1,157 @@
+package edu.kit.ksri.als.graph;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * Read access to the driving times of an {@link AmbulanceGraph}, independent of how they are stored.
+ *
+ * With encoding 0, this is a view on the double[][] matrix of the graph (no copy).
+ * With encodings 1 and 2, only the rows of the base nodes are kept in one flat primitive array,
+ * either as float or as unsigned 16-bit fixed-point numbers with a resolution of 0.01 minutes (up to 655.34 minutes).
+ * A graph with 20,000 nodes and 500 bases then needs 40 MB (float) or 20 MB (fixed point) instead of 3.2 GB for the full matrix.
+ * With encoding 3, the exact rows are read directly from a memory-mapped file (see DrivingTimesCache), so they take no heap at all
+ * and are shared with other processes mapping the same file.
+ *
+ * Node indices in this class are 0-based. Driving times that are not stored or cannot be represented are returned as UNREACHABLE.
+ */
+public class DrivingTimes {
+
+	public static final double UNREACHABLE = 99999.9; // driving time of nodes that cannot be reached
+	public static final double RESOLUTION = 0.01; // resolution of the fixed-point encoding (minutes)
+	static final char FIXED_POINT_UNREACHABLE = 0xFFFF; // largest 16-bit value, marks nodes that cannot be reached
+
+	public int encoding; // 0=view on double[][] rows, 1=float base rows, 2=16-bit fixed-point base rows, 3=double rows mapped from a file
+	public int numberOfNodes;
+	public int numberOfRows; // number of stored rows
+	public int[] rowOfNode; // position of the row of a node in the flat array (-1 if the row is not stored)
+
+	double[][] rows; // encoding 0
+	float[] floatTimes; // encoding 1: row r starts at r*numberOfNodes
+	char[] fixedPointTimes; // encoding 2: driving time in units of RESOLUTION (char is an unsigned 16-bit number)
+	DoubleBuffer[] mappedRows; // encoding 3: rowsPerWindow consecutive rows per mapped window
+	int rowsPerWindow;
+
+	/**
+	 * Creates a view on a driving time matrix.
+	 * @param rows Driving times (rows that do not exist are null).
+	 */
+	public DrivingTimes(double[][] rows) {
+		this.encoding = 0;
+		this.rows = rows;
+		numberOfNodes = rows.length;
+		rowOfNode = new int[numberOfNodes];
+		for (int i=0; i<numberOfNodes; i++) {
+			rowOfNode[i] = (rows[i] == null) ? -1 : i;
+			if (rows[i] != null) numberOfRows++;
+		}
+	}
+
+	/**
+	 * Creates a compact copy of some rows of a driving time matrix.
+	 * @param rows Driving times (rows that do not exist are null).
+	 * @param nodes Indices of the nodes whose rows are kept, 0-based (usually the base nodes).
+	 * @param encoding 1=float, 2=16-bit fixed point
+	 */
+	public DrivingTimes(double[][] rows, int[] nodes, int encoding) {
+		this.encoding = encoding;
+		numberOfNodes = rows.length;
+		rowOfNode = new int[numberOfNodes];
+		Arrays.fill(rowOfNode, -1);
+		for (int node : nodes) {
+			if (rows[node] != null && rowOfNode[node] < 0) rowOfNode[node] = numberOfRows++;
+		}
+
+		if (encoding == 1) floatTimes = new float[numberOfRows*numberOfNodes];
+		else fixedPointTimes = new char[numberOfRows*numberOfNodes];
+		for (int node=0; node<numberOfNodes; node++) {
+			if (rowOfNode[node] < 0) continue;
+			double[] row = rows[node];
+			int offset = rowOfNode[node]*numberOfNodes;
+			for (int i=0; i<numberOfNodes; i++) {
+				if (encoding == 1) floatTimes[offset+i] = (row[i] >= UNREACHABLE) ? Float.POSITIVE_INFINITY : (float) row[i];
+				else fixedPointTimes[offset+i] = encodeFixedPoint(row[i]);
+			}
+		}
+	}
+
+	/**
+	 * Creates a view on rows of a driving time matrix that are mapped from a file.
+	 * @param numberOfNodes
+	 * @param rowNodes Indices of the nodes whose rows are stored, 0-based, in the order of the rows.
+	 * @param mappedRows Windows of the file with the rows one after the other; every window except the last one holds the same number of whole rows.
+	 */
+	public DrivingTimes(int numberOfNodes, int[] rowNodes, DoubleBuffer[] mappedRows) {
+		this.encoding = 3;
+		this.numberOfNodes = numberOfNodes;
+		this.mappedRows = mappedRows;
+		numberOfRows = rowNodes.length;
+		rowsPerWindow = (mappedRows.length == 0 || numberOfNodes == 0) ? 1 : mappedRows[0].capacity()/numberOfNodes;
+		rowOfNode = new int[numberOfNodes];
+		Arrays.fill(rowOfNode, -1);
+		for (int r=0; r<numberOfRows; r++) rowOfNode[rowNodes[r]] = r;
+	}
+
+	/**
+	 * @param node Index of the node, 0-based.
+	 * @return True if the driving times from the node are stored.
+	 */
+	public boolean hasRow(int node) {
+		return rowOfNode[node] >= 0;
+	}
+
+	/**
+	 * @param from Index of the origin node, 0-based.
+	 * @param to Index of the destination node, 0-based.
+	 * @return Driving time from one node to another (UNREACHABLE if the row of the origin is not stored).
+	 */
+	public double get(int from, int to) {
+		int row = rowOfNode[from];
+		if (row < 0) return UNREACHABLE;
+		if (encoding == 0) return rows[from][to];
+		if (encoding == 3) return mappedRows[row/rowsPerWindow].get((row%rowsPerWindow)*numberOfNodes+to);
+		if (encoding == 1) {
+			float time = floatTimes[row*numberOfNodes+to];
+			return (time == Float.POSITIVE_INFINITY) ? UNREACHABLE : time;
+		}
+		return decodeFixedPoint(fixedPointTimes[row*numberOfNodes+to]);
+	}
+
+	/**
+	 * Decodes the driving times from a node to all nodes.
+	 * @param from Index of the origin node, 0-based.
+	 * @param target Array of length numberOfNodes that is filled.
+	 * @return The target array.
+	 */
+	public double[] getRow(int from, double[] target) {
+		for (int to=0; to<numberOfNodes; to++) target[to] = get(from, to);
+		return target;
+	}
+
+	/**
+	 * @return Number of bytes of the heap used for the driving times (0 for mapped rows, which are in the page cache of the operating system).
+	 */
+	public long getMemory() {
+		if (encoding == 1) return 4L*floatTimes.length;
+		if (encoding == 2) return 2L*fixedPointTimes.length;
+		if (encoding == 3) return 0;
+		return 8L*numberOfRows*numberOfNodes;
+	}
+
+	/**
+	 * @param time Driving time in minutes.
+	 * @return Nearest multiple of RESOLUTION as 16-bit number (FIXED_POINT_UNREACHABLE if the time is too large).
+	 */
+	static char encodeFixedPoint(double time) {
+		long units = Math.round(time/RESOLUTION);
+		return (units >= FIXED_POINT_UNREACHABLE) ? FIXED_POINT_UNREACHABLE : (char) units;
+	}
+
+	/**
+	 * @param units Driving time in units of RESOLUTION.
+	 * @return Driving time in minutes.
+	 */
+	static double decodeFixedPoint(char units) {
+		return (units == FIXED_POINT_UNREACHABLE) ? UNREACHABLE : units*RESOLUTION;
+	}
+}
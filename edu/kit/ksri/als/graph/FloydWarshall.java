@@ -0,0 +1,153 @@
+package edu.kit.ksri.als.graph;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Blocked (tiled) version of the Tripel algorithm (Floyd-Warshall) for a full driving time matrix.
+ * The matrix is divided into square tiles. The intermediate nodes are processed block by block:
+ *
+ * (1) The cross made up of the row strip and the column strip of the current block is updated
+ * one intermediate node after the other, exactly as in the sequential algorithm.
+ * Row k and column k are copied as soon as intermediate node k has been processed.
+ * (2) All remaining tiles are independent of each other and are updated in parallel using these copies.
+ *
+ * Since every tile sees the same values for row k and column k as the sequential algorithm at step k,
+ * the resulting matrix is identical to the one of the sequential triple loop.
+ */
+public class FloydWarshall {
+
+	int tileSize = 64; // edge length of a tile (number of nodes)
+	int parallelism = 0; // number of worker threads of a dedicated pool, 0=common pool
+
+	/**
+	 * Creates the algorithm with a dedicated pool of worker threads, which exists only while a matrix is calculated.
+	 * @param tileSize Edge length of a tile.
+	 * @param parallelism Number of worker threads.
+	 */
+	public FloydWarshall(int tileSize, int parallelism) {
+		this.tileSize = tileSize;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Creates the algorithm with the default tile size using the common pool (all available processors).
+	 */
+	public FloydWarshall() {
+	}
+
+	/**
+	 * Calculates the shortest paths between all nodes in place.
+	 * @param matrix Square matrix containing the edge weights (and a large value for missing edges).
+	 * After the calculation, it contains the length of the shortest path between every pair of nodes.
+	 */
+	public void calculate(double[][] matrix) {
+		ForkJoinPool pool = (parallelism == 0) ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism); // pool that updates the tiles in parallel
+		try {
+			calculate(matrix, pool);
+		} finally {
+			if (parallelism != 0) pool.shutdown();
+		}
+	}
+
+	/**
+	 * Calculates the shortest paths between all nodes in place, see above.
+	 * @param matrix
+	 * @param pool Pool that updates the tiles in parallel.
+	 */
+	void calculate(double[][] matrix, ForkJoinPool pool) {
+		int n = matrix.length;
+		int numberOfTiles = (n+tileSize-1)/tileSize;
+
+		for (int block=0; block<numberOfTiles; block++) { // for all blocks of intermediate nodes
+			int blockStart = block*tileSize;
+			int blockEnd = Math.min(blockStart+tileSize, n);
+
+			// (1) update cross of the block and copy row k and column k after every step k
+			double[][] rowCopies = new double[blockEnd-blockStart][]; // row k after step k
+			double[][] columnCopies = new double[blockEnd-blockStart][n]; // column k after step k
+			for (int k=blockStart; k<blockEnd; k++) {
+				double[] rowK = matrix[k];
+				for (int i=0; i<n; i++) { // column strip (all rows, columns of the block)
+					double[] rowI = matrix[i];
+					double ik = rowI[k];
+					for (int j=blockStart; j<blockEnd; j++) {
+						if (ik + rowK[j] < rowI[j]) rowI[j] = ik + rowK[j];
+					}
+				}
+				for (int i=blockStart; i<blockEnd; i++) { // row strip (rows of the block, all columns)
+					double[] rowI = matrix[i];
+					double ik = rowI[k];
+					for (int j=0; j<n; j++) {
+						if (ik + rowK[j] < rowI[j]) rowI[j] = ik + rowK[j];
+					}
+				}
+				rowCopies[k-blockStart] = rowK.clone();
+				for (int i=0; i<n; i++) columnCopies[k-blockStart][i] = matrix[i][k];
+			}
+
+			// (2) update all remaining tiles in parallel
+			ArrayList<TileUpdate> tileUpdates = new ArrayList<TileUpdate>();
+			for (int tileI=0; tileI<numberOfTiles; tileI++) {
+				if (tileI == block) continue; // part of the cross
+				for (int tileJ=0; tileJ<numberOfTiles; tileJ++) {
+					if (tileJ == block) continue; // part of the cross
+					tileUpdates.add(new TileUpdate(matrix, rowCopies, columnCopies, tileI*tileSize, tileJ*tileSize));
+				}
+			}
+			pool.invoke(new TileUpdates(tileUpdates));
+		}
+	}
+
+	/**
+	 * Updates one tile for all intermediate nodes of the current block.
+	 */
+	@SuppressWarnings("serial")
+	class TileUpdate extends RecursiveAction {
+		double[][] matrix, rowCopies, columnCopies;
+		int rowStart, columnStart;
+
+		TileUpdate(double[][] matrix, double[][] rowCopies, double[][] columnCopies, int rowStart, int columnStart) {
+			this.matrix = matrix;
+			this.rowCopies = rowCopies;
+			this.columnCopies = columnCopies;
+			this.rowStart = rowStart;
+			this.columnStart = columnStart;
+		}
+
+		@Override
+		protected void compute() {
+			int rowEnd = Math.min(rowStart+tileSize, matrix.length);
+			int columnEnd = Math.min(columnStart+tileSize, matrix.length);
+			for (int k=0; k<rowCopies.length; k++) { // for all intermediate nodes of the block (in order)
+				double[] rowK = rowCopies[k];
+				double[] columnK = columnCopies[k];
+				for (int i=rowStart; i<rowEnd; i++) {
+					double[] rowI = matrix[i];
+					double ik = columnK[i];
+					for (int j=columnStart; j<columnEnd; j++) {
+						if (ik + rowK[j] < rowI[j]) rowI[j] = ik + rowK[j];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs a list of independent tile updates.
+	 */
+	@SuppressWarnings("serial")
+	class TileUpdates extends RecursiveAction {
+		ArrayList<TileUpdate> tileUpdates;
+
+		TileUpdates(ArrayList<TileUpdate> tileUpdates) {
+			this.tileUpdates = tileUpdates;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tileUpdates);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package edu.kit.ksri.als.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A* search on the CSR edge arrays of a {@link BasicGraph} for the question whether a node can be reached from another node within a time limit,
+ * for example whether a candidate base location that is not part of the bases of the graph covers a demand.
+ *
+ * The search is directed towards the destination by a lower bound of the remaining driving time, which is the maximum of
+ * (1) the straight-line distance between the coordinates of the nodes divided by the maximum speed of the graph and
+ * (2) the landmark bound d(L,to) - d(L,node) for a few landmark nodes L whose driving times to all nodes are calculated in advance (ALT).
+ * The maximum speed is the largest ratio of straight-line distance to driving time over all edges, so bound (1) never overestimates.
+ * A node is not expanded if its driving time plus the lower bound exceeds the time limit. If the lower bound of the origin
+ * already exceeds the time limit, no search is needed at all.
+ *
+ * Like {@link Dijkstra}, driving times are lengths of paths with at least one edge. All node indices are 0-based.
+ * The search reuses internal arrays and must not run concurrently. If edges change, the search needs to be created again.
+ */
+public class GoalDirectedSearch {
+
+	static final double TOLERANCE = 1e-9; // tolerance for rounding errors of the lower bounds
+
+	BasicGraph graph;
+	int numberOfNodes;
+	public double maxSpeed; // straight-line distance per minute that is never exceeded (0 or Double.POSITIVE_INFINITY disables the coordinate bound)
+	public int[] landmarks; // indices of the landmark nodes, 0-based
+	double[][] landmarkDistances; // per landmark: driving times from the landmark to all nodes (Double.POSITIVE_INFINITY if not reachable)
+	double[] x, y; // coordinates per node
+
+	// auxiliary variables for the search
+	double[] distances; // driving time from the origin
+	double[] lowerBounds; // lower bound of the driving time to the destination (calculated once per search and node)
+	int[] touchedNodes;
+	int numberOfTouchedNodes = 0;
+	ContractionHierarchy.Heap heap = new ContractionHierarchy.Heap(); // ordered by driving time plus lower bound
+	public long expandedNodes = 0; // number of nodes expanded by all searches (for statistics)
+	Dijkstra dijkstra; // for checking several demands at once
+
+	/**
+	 * Prepares the search with 8 landmarks.
+	 * @param graph
+	 */
+	public GoalDirectedSearch(BasicGraph graph) {
+		this(graph, 8);
+	}
+
+	/**
+	 * Prepares the search: determines the maximum speed and calculates the driving times from the landmarks.
+	 * @param graph
+	 * @param numberOfLandmarks Number of landmarks (0 to use the coordinates only).
+	 */
+	public GoalDirectedSearch(BasicGraph graph, int numberOfLandmarks) {
+		this.graph = graph;
+		numberOfNodes = graph.nodes.size();
+		distances = new double[numberOfNodes];
+		lowerBounds = new double[numberOfNodes];
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		touchedNodes = new int[numberOfNodes];
+
+		x = new double[numberOfNodes];
+		y = new double[numberOfNodes];
+		for (Node node : graph.nodes) {
+			x[node.index-1] = node.coordinates.x; //node id is 1-based
+			y[node.index-1] = node.coordinates.y;
+		}
+		calculateMaxSpeed();
+		selectLandmarks(Math.min(numberOfLandmarks, numberOfNodes));
+	}
+
+	/**
+	 * Determines the largest ratio of straight-line distance to driving time over all edges.
+	 */
+	void calculateMaxSpeed() {
+		maxSpeed = 0.0;
+		for (int u=0; u<numberOfNodes; u++) {
+			for (int e=graph.edgeOffsets[u]; e<graph.edgeOffsets[u+1]; e++) {
+				double distance = straightLineDistance(u, graph.edgeTargets[e]);
+				if (distance > 0.0) maxSpeed = Math.max(maxSpeed, distance/graph.edgeWeights[e]); // infinite for edges without driving time
+			}
+		}
+	}
+
+	/**
+	 * Selects landmarks that are far away from each other: the first landmark is the node farthest from the center of the coordinates,
+	 * every further landmark is the node whose driving time from the nearest selected landmark is the largest.
+	 * @param numberOfLandmarks
+	 */
+	void selectLandmarks(int numberOfLandmarks) {
+		landmarks = new int[numberOfLandmarks];
+		landmarkDistances = new double[numberOfLandmarks][];
+		if (numberOfLandmarks == 0) return;
+
+		double centerX = 0.0, centerY = 0.0;
+		for (int i=0; i<numberOfNodes; i++) {
+			centerX += x[i]/numberOfNodes;
+			centerY += y[i]/numberOfNodes;
+		}
+		int landmark = 0;
+		for (int i=0; i<numberOfNodes; i++) {
+			if (Math.hypot(x[i]-centerX, y[i]-centerY) > Math.hypot(x[landmark]-centerX, y[landmark]-centerY)) landmark = i;
+		}
+
+		double[] distancesFromLandmarks = new double[numberOfNodes]; // driving time from the nearest selected landmark
+		Arrays.fill(distancesFromLandmarks, Double.POSITIVE_INFINITY);
+		Dijkstra dijkstra = new Dijkstra(graph);
+		for (int l=0; l<numberOfLandmarks; l++) {
+			landmarks[l] = landmark;
+			dijkstra.search(landmark, Double.POSITIVE_INFINITY);
+			landmarkDistances[l] = dijkstra.distances.clone();
+			landmarkDistances[l][landmark] = 0.0; // the landmark itself (the search only reaches it via a cycle)
+
+			// next landmark: farthest reachable node from the selected landmarks
+			for (int i=0; i<numberOfNodes; i++) distancesFromLandmarks[i] = Math.min(distancesFromLandmarks[i], landmarkDistances[l][i]);
+			for (int i=0; i<numberOfNodes; i++) {
+				double distance = distancesFromLandmarks[i];
+				if (distance < Double.POSITIVE_INFINITY && (distancesFromLandmarks[landmark] == Double.POSITIVE_INFINITY || distance > distancesFromLandmarks[landmark])) landmark = i;
+			}
+		}
+	}
+
+	/**
+	 * @param from Index of the origin node, 0-based.
+	 * @param to Index of the destination node, 0-based.
+	 * @return Lower bound of the driving time between the nodes (Double.POSITIVE_INFINITY if the destination cannot be reached).
+	 */
+	public double lowerBound(int from, int to) {
+		double bound = (maxSpeed == 0.0 || maxSpeed == Double.POSITIVE_INFINITY) ? 0.0 : straightLineDistance(from, to)/maxSpeed;
+		for (double[] distancesFromLandmark : landmarkDistances) {
+			if (distancesFromLandmark[from] == Double.POSITIVE_INFINITY) continue; // no information
+			bound = Math.max(bound, distancesFromLandmark[to] - distancesFromLandmark[from]); // triangle inequality d(L,to) <= d(L,from) + d(from,to)
+		}
+		return bound;
+	}
+
+	/**
+	 * Calculates the driving time between two nodes if it does not exceed a time limit.
+	 * @param from Index of the origin node, 0-based.
+	 * @param to Index of the destination node, 0-based.
+	 * @param maxTime Time limit.
+	 * @return Driving time (Double.POSITIVE_INFINITY if it exceeds the time limit).
+	 */
+	public double search(int from, int to, double maxTime) {
+		if (from != to && lowerBound(from, to) > maxTime + TOLERANCE) return Double.POSITIVE_INFINITY; // too far away
+
+		// reset the results of the last search
+		for (int t=0; t<numberOfTouchedNodes; t++) distances[touchedNodes[t]] = Double.POSITIVE_INFINITY;
+		numberOfTouchedNodes = 0;
+		heap.clear();
+
+		relaxEdges(from, 0.0, to, maxTime); // start with the edges leaving the origin (the origin has no driving time of its own)
+		while (heap.size > 0) {
+			double estimate = heap.peekDistance();
+			int node = heap.pop();
+			if (estimate > distances[node] + lowerBounds[node]) continue; // outdated entry
+			if (node == to) return distances[to];
+			expandedNodes++;
+			relaxEdges(node, distances[node], to, maxTime);
+		}
+		return Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * @param from Origin node.
+	 * @param to Destination node.
+	 * @param maxTime Time limit.
+	 * @return True if the destination can be reached from the origin within the time limit.
+	 */
+	public boolean isReachable(Node from, Node to, double maxTime) {
+		return search(from.index-1, to.index-1, maxTime) <= maxTime; //node id is 1-based
+	}
+
+	/**
+	 * Determines the demands a base at a candidate location would cover.
+	 * Demands whose lower bound exceeds the time limit are discarded without a search. If demands remain, 
+	 * they are checked with a single bounded {@link Dijkstra} search (cheaper than one A* search per demand).
+	 * @param candidate Node of the candidate base location.
+	 * @param demands Demands to check.
+	 * @param maxTime Time limit for reaching an emergency.
+	 * @return Demands that can be reached from the candidate within the time limit.
+	 */
+	public ArrayList<Demand> getCoveredDemands(Node candidate, ArrayList<Demand> demands, double maxTime) {
+		int from = candidate.index-1; //node id is 1-based
+		ArrayList<Demand> remainingDemands = new ArrayList<Demand>();
+		for (Demand demand : demands) {
+			if (demand.node.index-1 == from || lowerBound(from, demand.node.index-1) <= maxTime + TOLERANCE) remainingDemands.add(demand);
+		}
+		
+		ArrayList<Demand> coveredDemands = new ArrayList<Demand>();
+		if (remainingDemands.isEmpty()) return coveredDemands;
+		if (dijkstra == null) dijkstra = new Dijkstra(graph);
+		dijkstra.search(from, maxTime);
+		for (Demand demand : remainingDemands) {
+			if (dijkstra.distances[demand.node.index-1] <= maxTime) coveredDemands.add(demand);
+		}
+		return coveredDemands;
+	}
+
+	/**
+	 * Updates the driving times of all nodes adjacent to a node, unless they cannot reach the destination within the time limit.
+	 * @param node Index of the node, 0-based.
+	 * @param distance Driving time of the node.
+	 * @param to Index of the destination node, 0-based.
+	 * @param maxTime Time limit.
+	 */
+	void relaxEdges(int node, double distance, int to, double maxTime) {
+		int[] edgeOffsets = graph.edgeOffsets;
+		int[] edgeTargets = graph.edgeTargets;
+		double[] edgeWeights = graph.edgeWeights;
+		for (int e=edgeOffsets[node]; e<edgeOffsets[node+1]; e++) {
+			int target = edgeTargets[e];
+			double newDistance = distance + edgeWeights[e];
+			if (newDistance > maxTime || newDistance >= distances[target]) continue; // beyond the time limit or no improvement
+			if (distances[target] == Double.POSITIVE_INFINITY) { // first time the node is reached
+				touchedNodes[numberOfTouchedNodes++] = target;
+				lowerBounds[target] = (target == to) ? 0.0 : lowerBound(target, to);
+			}
+			distances[target] = newDistance;
+			if (newDistance + lowerBounds[target] > maxTime + TOLERANCE) continue; // destination cannot be reached in time via this node
+			heap.push(target, newDistance + lowerBounds[target]);
+		}
+	}
+
+	/**
+	 * @param from Index of the origin node, 0-based.
+	 * @param to Index of the destination node, 0-based.
+	 * @return Straight-line distance between the coordinates of the nodes.
+	 */
+	double straightLineDistance(int from, int to) {
+		return Math.hypot(x[from]-x[to], y[from]-y[to]);
+	}
+}
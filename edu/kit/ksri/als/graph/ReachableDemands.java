@@ -0,0 +1,127 @@
+package edu.kit.ksri.als.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Lists the demands that can be reached from every base up to a maximum driving time, sorted by their driving time.
+ * The coverage for any time limit up to this maximum is a prefix of each list.
+ * Thus, the coverage for different time limits can be retrieved without calculating driving times again.
+ *
+ * Bases and demands are identified by their index in the lists of the {@link AmbulanceGraph}, 0-based.
+ */
+public class ReachableDemands {
+
+	public double maxDrivingTime; // demands are listed up to this driving time
+	public int numberOfDemands;
+	public int[][] demands; // per base: indices of the reachable demands, sorted by driving time
+	public double[][] drivingTimes; // per base: driving times of the reachable demands (non-decreasing)
+
+	/**
+	 * Creates empty lists for all bases.
+	 * @param numberOfBases
+	 * @param numberOfDemands
+	 * @param maxDrivingTime Demands are listed up to this driving time.
+	 */
+	public ReachableDemands(int numberOfBases, int numberOfDemands, double maxDrivingTime) {
+		this.numberOfDemands = numberOfDemands;
+		this.maxDrivingTime = maxDrivingTime;
+		demands = new int[numberOfBases][0];
+		drivingTimes = new double[numberOfBases][0];
+	}
+
+	/**
+	 * Sets the list of a base from its row of driving times.
+	 * @param base Index of the base, 0-based.
+	 * @param drivingTimesOfBase Driving times from the base to all nodes (indexed by node, 0-based).
+	 * @param graphDemands List of all demands of the graph.
+	 */
+	public void setFromRow(int base, double[] drivingTimesOfBase, ArrayList<Demand> graphDemands) {
+		// collect reachable demands (in the order of the demands)
+		int[] reachable = new int[graphDemands.size()];
+		double[] times = new double[graphDemands.size()];
+		int numberOfReachableDemands = 0;
+		for (Demand demand : graphDemands) {
+			double time = drivingTimesOfBase[demand.node.index-1]; //node id is 1-based
+			if (time <= maxDrivingTime) {
+				reachable[numberOfReachableDemands] = demand.index;
+				times[numberOfReachableDemands++] = time;
+			}
+		}
+
+		// sort them by driving time: the times are sorted as primitives, then every demand is placed at the next free position of its time
+		// (demands with equal driving times keep their order)
+		double[] sortedTimes = Arrays.copyOf(times, numberOfReachableDemands);
+		Arrays.sort(sortedTimes);
+		int[] sortedDemands = new int[numberOfReachableDemands];
+		int[] placed = new int[numberOfReachableDemands]; // per first position of a driving time: number of demands placed so far
+		for (int r=0; r<numberOfReachableDemands; r++) {
+			int first = firstPosition(sortedTimes, times[r]);
+			sortedDemands[first + placed[first]++] = reachable[r];
+		}
+		demands[base] = sortedDemands;
+		drivingTimes[base] = sortedTimes;
+	}
+
+	/**
+	 * @param sortedTimes Sorted driving times.
+	 * @param time Driving time contained in sortedTimes.
+	 * @return First position of the driving time in sortedTimes (binary search).
+	 */
+	static int firstPosition(double[] sortedTimes, double time) {
+		int low = 0;
+		int high = sortedTimes.length;
+		while (low < high) {
+			int middle = (low+high) >>> 1;
+			if (Double.compare(sortedTimes[middle], time) < 0) low = middle+1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Sets the list of a base from demands that are already sorted by driving time.
+	 * @param base Index of the base, 0-based.
+	 * @param sortedDemands Indices of the reachable demands, sorted by driving time.
+	 * @param sortedDrivingTimes Driving times of the reachable demands (non-decreasing).
+	 * @param numberOfReachableDemands Number of valid entries in the arrays.
+	 */
+	public void set(int base, int[] sortedDemands, double[] sortedDrivingTimes, int numberOfReachableDemands) {
+		demands[base] = Arrays.copyOf(sortedDemands, numberOfReachableDemands);
+		drivingTimes[base] = Arrays.copyOf(sortedDrivingTimes, numberOfReachableDemands);
+	}
+
+	/**
+	 * Counts the demands of a base within a time limit.
+	 * The first entries of the list of the base up to this number are covered.
+	 * @param base Index of the base, 0-based.
+	 * @param timeLimit Must not be greater than maxDrivingTime.
+	 * @return Number of demands that can be reached from the base within the time limit.
+	 */
+	public int countWithin(int base, double timeLimit) {
+		double[] times = drivingTimes[base];
+		// binary search for the first driving time greater than the time limit
+		int low = 0;
+		int high = times.length;
+		while (low < high) {
+			int middle = (low+high) >>> 1;
+			if (times[middle] <= timeLimit) low = middle+1;
+			else high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Creates the coverage for a time limit.
+	 * @param timeLimit Must not be greater than maxDrivingTime.
+	 * @return Index of all demands that can be reached from the bases within the time limit.
+	 */
+	public CoverageIndex getCoverage(double timeLimit) {
+		CoverageIndex coverage = new CoverageIndex(demands.length, numberOfDemands);
+		for (int j=0; j<demands.length; j++) {
+			int numberOfCoveredDemands = countWithin(j, timeLimit);
+			for (int r=0; r<numberOfCoveredDemands; r++) coverage.add(j, demands[j][r]);
+		}
+		return coverage;
+	}
+}
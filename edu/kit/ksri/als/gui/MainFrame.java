@@ -1,8 +1,8 @@
 package edu.kit.ksri.als.gui;
 
 import  edu.kit.ksri.als.dataExchange.ExportData;
+import  edu.kit.ksri.als.dataExchange.GraphRegistry;
 import  edu.kit.ksri.als.dataExchange.ImportData;
-import  edu.kit.ksri.als.graph.AmbulanceGraph;
 
 import javax.swing.*;
 import java.awt.*;
@@ -21,7 +21,7 @@ import java.util.TreeSet;
 public class MainFrame extends JFrame {
 	
 	
-	TreeMap<String, AmbulanceGraph> graphs = new TreeMap<String,AmbulanceGraph>(); // set that stores all imported graphs
+	GraphRegistry graphs = new GraphRegistry(); // stores all imported graphs (built on first access, least recently used graphs are evicted beyond a memory budget)
 	
 	// export file variables
 	TreeMap<String,ExportData> exportDatas = new TreeMap<String,ExportData>(); // set that stores all export files	
@@ -2,12 +2,13 @@ package edu.kit.ksri.als.gui;
 
 import edu.kit.ksri.als.ambulanceLocation.ProblemAssignment;
 import edu.kit.ksri.als.ambulanceLocation.Solution;
+import edu.kit.ksri.als.ambulanceLocation.SolutionVector;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.TreeSet;
 
 /**
@@ -21,10 +22,13 @@ import java.util.TreeSet;
 public class TabAssignment extends JPanel{
 	
 	MainFrame menu;	
-	HashMap<String,HashSet<String>> solutions = new HashMap<String,HashSet<String>>(); //container for all solutions
-	JComboBox<String> graphComboBox, solutionComboBox;
+	HashMap<String,LinkedHashSet<SolutionVector>> solutions = new HashMap<String,LinkedHashSet<SolutionVector>>(); //container for all solutions (distinct per graph)
+	JComboBox<String> graphComboBox;
+	JComboBox<SolutionVector> solutionComboBox;
 	
 	JCheckBox iterateAllGraphsCheckBox, iterateAllSolutionsOfAGraphCheckBox;
+	JCheckBox mergeScenariosCheckBox; // dis-/enables merging identical demand scenarios of a sample (probabilities are added up)
+	JComboBox<String> samplingMethodComboBox; // selected index is the sampling method: 0=alias tables, 1=linear search through the cumulative probabilities (legacy)
 	JCheckBox exportSampleDemandsCheckBox, exportSampleSolutionsCheckBox,
 		exportAssignmentCompleteCheckBox, exportAssignmentPerNodeCheckBox;
     
@@ -32,7 +36,7 @@ public class TabAssignment extends JPanel{
 	JTextField mField, nField, alphaField, baseSeedField;
 	
 	TreeSet<String> graphSet = new TreeSet<String>();
-	HashMap<String,HashSet<String>> solutionsSet = new HashMap<String,HashSet<String>>();
+	HashMap<String,LinkedHashSet<SolutionVector>> solutionsSet = new HashMap<String,LinkedHashSet<SolutionVector>>();
 	TreeSet<Integer> mSet = new TreeSet<Integer>();
 	TreeSet<Integer> nSet = new TreeSet<Integer>();
 	TreeSet<Integer> baseSeedSet = new TreeSet<Integer>();
@@ -48,7 +52,7 @@ public class TabAssignment extends JPanel{
 		
 		// create GUI elements: (1) solutions
 		graphComboBox = new JComboBox<String>();
-		solutionComboBox = new JComboBox<String>();
+		solutionComboBox = new JComboBox<SolutionVector>();
 		JComboBox<String> assignmentTypeComboBox = new JComboBox<String>(new String[]{"whole scenarios","part scenarios","max service level"});
 	    
 		// procedure for displaying the corresponding solutions to a graph
@@ -60,7 +64,7 @@ public class TabAssignment extends JPanel{
 				if (selectedGraph == null) return; // if no graph is selected, exit
 				
 				solutionComboBox.removeAllItems(); // clear solution combo box
-				for (String solution : solutions.get(selectedGraph)) { // for all available solutions of the selected graph
+				for (SolutionVector solution : solutions.get(selectedGraph)) { // for all available solutions of the selected graph
 					solutionComboBox.addItem(solution); // fill solution combo box
 				};
 			}
@@ -75,6 +79,9 @@ public class TabAssignment extends JPanel{
 		
 		iterateAllGraphsCheckBox = new JCheckBox("", false);  // dis-/enables the batch execution of all imported graphs
 		iterateAllSolutionsOfAGraphCheckBox = new JCheckBox("", false);  // dis-/enables the batch execution of all available solutions for a graph
+		mergeScenariosCheckBox = new JCheckBox("", false);  // dis-/enables merging identical demand scenarios
+		samplingMethodComboBox = new JComboBox<String>(new String[]{"alias tables","linear search (legacy)"});
+		samplingMethodComboBox.setSelectedIndex(1); // legacy method by default: same samples as before for the same base seed
 	    // procedure to guarantee the correct selection of check boxes
 		iterateAllGraphsCheckBox.addActionListener(new ActionListener() {	
 			// if graph check box is selected, solutions check box must be selected too!
@@ -112,16 +119,20 @@ public class TabAssignment extends JPanel{
 				      public void run() {
 				    	  
 				    	  for (String graph : solutionsSet.keySet()) {
-				    	  for (String solutionStr : solutionsSet.get(graph)) {
+				    	  for (SolutionVector solutionVector : solutionsSet.get(graph)) {
 				    	  for (double alpha : alphaSet) {				    		  
 				    	  
 				    		  // create problem
-				    		  Solution solution = parseSolution(solutionStr);
-				    		  menu.log("Solving assignment for "+graph+" and solution "+solutionStr+" with alpha="+alpha+"...");
-				    		  ProblemAssignment problem = new ProblemAssignment(menu.graphs.get(graph), solution, alpha, assignmentTypeComboBox.getSelectedIndex());
-				    		  
-				    		  // solve problem and write output
-				    		  solveAndWriteOutput(problem);
+				    		  Solution solution = solutionVector.toSolution();
+				    		  menu.log("Solving assignment for "+graph+" and solution "+solutionVector+" with alpha="+alpha+"...");
+				    		  try {
+				    			  ProblemAssignment problem = new ProblemAssignment(menu.graphs.acquire(graph), solution, alpha, assignmentTypeComboBox.getSelectedIndex()); // the graph is not evicted meanwhile
+				    			  
+				    			  // solve problem and write output
+				    			  solveAndWriteOutput(problem);
+				    		  } finally {
+				    			  menu.graphs.release(graph);
+				    		  }
 				    	  }
 				    	  }
 				    	  }
@@ -142,19 +153,23 @@ public class TabAssignment extends JPanel{
 				Thread queryThread = new Thread() {
 					public void run() {				    	  
 						for (String graph : solutionsSet.keySet()) {
-						for (String solutionStr : solutionsSet.get(graph)) {
+						for (SolutionVector solutionVector : solutionsSet.get(graph)) {
 				    	for (double alpha : alphaSet) {	
 				    	for (int m : mSet) {
 				    	for (int n : nSet) {
 				    	for (int baseSeed : baseSeedSet) {
 				    		
 			    		    // create problem
-				    		Solution solution = parseSolution(solutionStr);
+				    		Solution solution = solutionVector.toSolution();
 				    		menu.log("Solving Assignment "+assignmentTypeComboBox.getSelectedIndex()+" for "+graph+" (m="+m+",n="+n+",base seed="+baseSeed+",alpha="+alpha+") with sampling method...");
-				    		ProblemAssignment problem = new ProblemAssignment(menu.graphs.get(graph),solution,m,n,baseSeed,alpha,assignmentTypeComboBox.getSelectedIndex());
-				    		
-				    		// solve problem and write output
-				    		solveAndWriteOutput(problem);
+				    		try {
+				    			ProblemAssignment problem = new ProblemAssignment(menu.graphs.acquire(graph),solution,m,n,baseSeed,alpha,assignmentTypeComboBox.getSelectedIndex(),samplingMethodComboBox.getSelectedIndex(),mergeScenariosCheckBox.isSelected()); // the graph is not evicted meanwhile
+				    			
+				    			// solve problem and write output
+				    			solveAndWriteOutput(problem);
+				    		} finally {
+				    			menu.graphs.release(graph);
+				    		}
 				    	}
 				    	}
 				    	}
@@ -193,7 +208,11 @@ public class TabAssignment extends JPanel{
 	    inputFieldsPanel.add(iterateAllGraphsCheckBox);
 	    inputFieldsPanel.add(new JLabel("<html>iterate all<br>solutions<br>of a graph</html>"));
 	    inputFieldsPanel.add(iterateAllSolutionsOfAGraphCheckBox);
-	    SpringUtilities.makeCompactGrid(inputFieldsPanel, 3, 4, 6, 6, 6, 6); // arrange elements in 3x4 grid
+	    inputFieldsPanel.add(new JLabel("<html>merge identical<br>scenarios</html>"));
+	    inputFieldsPanel.add(mergeScenariosCheckBox);
+	    inputFieldsPanel.add(new JLabel("<html>demand<br>sampling</html>"));
+	    inputFieldsPanel.add(samplingMethodComboBox);
+	    SpringUtilities.makeCompactGrid(inputFieldsPanel, 4, 4, 6, 6, 6, 6); // arrange elements in 4x4 grid
 	    
 	    // (3) panel for solve buttons and export settings
 		JPanel solveButtonsPanel = new JPanel(new SpringLayout());
@@ -235,19 +254,19 @@ public class TabAssignment extends JPanel{
 			String graph = (String) graphComboBox.getSelectedItem(); // get name of the selected graph
 			
 			// get solutions for this graph
-			HashSet<String> singleGraphSolutionSet = new HashSet<String>();
+			LinkedHashSet<SolutionVector> singleGraphSolutionSet = new LinkedHashSet<SolutionVector>();
 			if (!iterateAllGraphsCheckBox.isSelected()) { // if only the selected solution shall be part of the batch
 				if (solutionComboBox.getSelectedItem() == null) return; // abort if there is no solution selected
-				singleGraphSolutionSet.add((String) solutionComboBox.getSelectedItem()); // get only the selected solution
+				singleGraphSolutionSet.add((SolutionVector) solutionComboBox.getSelectedItem()); // get only the selected solution
 			}
 			else {
-				singleGraphSolutionSet.addAll((HashSet<String>) solutions.get(graph).clone()); // get all solutions to the selected graph
+				singleGraphSolutionSet.addAll((LinkedHashSet<SolutionVector>) solutions.get(graph).clone()); // get all solutions to the selected graph
 			}
 			solutionsSet.put(graph, singleGraphSolutionSet); // create solution set for the problem batch
 		}
 		else { // if all available graphs shall be part of the batch
 			for (String graph : solutions.keySet()) { // for all graphs of available solutions
-				solutionsSet.put(graph, (HashSet<String>) solutions.get(graph).clone()); // add graph and all its solutions to the batch
+				solutionsSet.put(graph, (LinkedHashSet<SolutionVector>) solutions.get(graph).clone()); // add graph and all its solutions to the batch
 			}
 		}
 	}
@@ -280,23 +299,6 @@ public class TabAssignment extends JPanel{
 		  
 	}
 	
-	/**
-	 * Parses String representation of the number of ambulances and their locations into the dedicated {@link Solution} format. 
-	 * @param solutionStr String representation of an Integer array, "," as separator of values.
-	 * @return 
-	 */
-	Solution parseSolution(String solutionStr) {
-		solutionStr = solutionStr.replaceAll("\\[", ""); // remove brackets
-		solutionStr = solutionStr.replaceAll("\\]", ""); // remove brackets
-		solutionStr = solutionStr.replaceAll(" ", ""); // remove spaces
-		String[] zStr = solutionStr.split(",");
-		int[] z = new int[zStr.length];
-		for (int i=0; i<z.length; i++) {
-			z[i] = Integer.parseInt(zStr[i]);
-		}
-		return new Solution(new int[0], new int[0][0][0], z, 0, 0, 0); //only z relevant
-	}
-	
 	/**
 	 * Updates the contents of the combo box for the selection of graphs.
 	 */
@@ -30,7 +30,7 @@ public class TabGraphLayout extends JPanel{
 				SwingUtilities.invokeLater(new Runnable() { // start a new thread...
 					@Override
 					public void run() { // ... that starts the layout program
-						BasicGraph graph = menu.graphs.get(graphComboBox.getSelectedItem()); // get graph defined in combo box
+						BasicGraph graph = menu.graphs.get((String) graphComboBox.getSelectedItem()); // get graph defined in combo box
 						new GraphLayout(graph); // start layout program
 					}
 				});
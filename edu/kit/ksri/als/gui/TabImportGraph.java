@@ -1,9 +1,11 @@
 package edu.kit.ksri.als.gui;
 
+import edu.kit.ksri.als.dataExchange.GraphImporter;
+import edu.kit.ksri.als.dataExchange.GraphRegistry;
+import edu.kit.ksri.als.dataExchange.GraphSnapshot;
 import edu.kit.ksri.als.dataExchange.ImportData;
+import edu.kit.ksri.als.dataExchange.OsmImport;
 import edu.kit.ksri.als.graph.AmbulanceGraph;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -12,12 +14,19 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.Iterator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.TreeSet;
 
 /**
  * GUI providing the means to operate the import of graphs from dedicated Excel files. 
  * The Excel file must contain the information on graphs in its first (and usually only) sheet.
+ * CSV and TSV files with the same columns can be imported as well.
+ * Imported graphs can be saved as binary snapshots ({@link GraphSnapshot}) and loaded from them without importing them again.
+ * Graphs can also be created from an OpenStreetMap extract ({@link OsmImport}) with bases and demands from a side file.
  *
  */
 @SuppressWarnings("serial")
@@ -28,6 +37,7 @@ public class TabImportGraph extends JPanel{
 	ImportData currentImportDataGraph; // currently opened file
 	
 	public JButton loadButton; // loads the file whose path is specified in the dedicated text field
+	JCheckBox fullMatrixCheckBox; // dis-/enables the calculation of the full driving time matrix (parallel tiled Tripel algorithm) instead of the bounded search from the bases
 	DefaultListModel<String> importedGraphsListModel; // list of all imported graphs
 	
 	/**
@@ -37,8 +47,19 @@ public class TabImportGraph extends JPanel{
 	public TabImportGraph(MainFrame menu) {
 		this.menu = menu;
 		
-		currentImportDataGraph = new ImportData(menu.defaultImportFilePathGraph); // set initial import file
-
+		currentImportDataGraph = new ImportData(menu.defaultImportFilePathGraph, true); // set initial import file (cell values only, the workbook is not kept)
+		menu.graphs.buildHandler = new GraphImporter.GraphHandler() { // imported graphs are built on first use, report skipped edges then
+			@Override
+			public void graphBuilt(String graphName, AmbulanceGraph graph) {
+				if (graph.numberOfSkippedEdges == 0) return;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						menu.log(graphName+" built, "+graph.numberOfSkippedEdges+" edges skipped (unknown node)."); // write log
+					}
+				});
+			}
+		};
+		fullMatrixCheckBox = new JCheckBox("Calculate full driving time matrix", false);
 
 		DefaultListModel<String> graphsInFileListModel = new DefaultListModel<String>();
 		importedGraphsListModel = new DefaultListModel<String>();
@@ -63,7 +84,7 @@ public class TabImportGraph extends JPanel{
 		        			    JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE, null, options, options[2]); // create user dialog
 		        		
 		        		if (answer == 0) { // if user chose to overwrite the existing graph
-		        			menu.graphs.put(graphName, new AmbulanceGraph(graphName, currentImportDataGraph)); // replace graph
+		        			menu.graphs.register(graphName, new GraphRegistry.GraphDescriptor(currentImportDataGraph, graphName, getDrivingTimesMethod())); // replace graph (built on first use)
 		        			menu.log(graphName+" replaced with "+graphName+" from "+currentImportDataGraph.file.getName()+"."); // write log
 		        		}
 		        		else if (answer == 1) { // if user chose to rename the graph
@@ -75,8 +96,7 @@ public class TabImportGraph extends JPanel{
 		        				JOptionPane.showMessageDialog(menu, "Graph name already exists.", "Import Error", JOptionPane.ERROR_MESSAGE);
 		        			}
 		        			else if (newGraphName != null) { // if new name is not empty
-		        				AmbulanceGraph graph = new AmbulanceGraph(graphName, currentImportDataGraph); // create graph from the information in the import file
-		        				menu.graphs.put(newGraphName, graph); //add graph to central graph list
+		        				menu.graphs.register(newGraphName, new GraphRegistry.GraphDescriptor(currentImportDataGraph, graphName, getDrivingTimesMethod())); //add graph to central graph list (built from the information in the import file on first use)
 		        				importedGraphsListModel.addElement(newGraphName); // add graph to the display list of all imported graphs
 				        		menu.log(graphName+" from "+currentImportDataGraph.file.getName()+" imported as "+newGraphName+"."); // write log
 		        			}
@@ -96,19 +116,12 @@ public class TabImportGraph extends JPanel{
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				
-				currentImportDataGraph = new ImportData(filePathField.getText()); // create new import file
+				currentImportDataGraph = new ImportData(filePathField.getText(), true); // create new import file (cell values only, the workbook is not kept)
 				menu.tabImportSolution.filePathFieldGraph.setText(filePathField.getText()); // update graph file in tab ImportSolution
 				graphsInFileListModel.clear(); // clear list of graphs
 
 				// display all graphs defined in the import file
-				TreeSet<String> graphs = new TreeSet<String>(); // ordered, non-duplicate set for the graph names
-				Iterator<Row> rowIterator = currentImportDataGraph.workbook.getSheetAt(0).iterator(); //create row iterator for the first sheet of the import file
-				rowIterator.next(); //skip first row (which is the title row)
-				while(rowIterator.hasNext()) { // iterate through all rows (one row contains information about one node)
-					Row row = rowIterator.next(); // get row
-					//row.getCell(0).setCellType(Cell.CELL_TYPE_STRING); // convert first field of the row (which contains the graph name) to String
-					graphs.add(row.getCell(0).getStringCellValue()); // add graph name of this row to set of graph names
-				}
+				TreeSet<String> graphs = currentImportDataGraph.getGraphNames(); // ordered, non-duplicate set for the graph names (read in a single pass that also indexes the rows of every graph)
 				
 				for (String graph : graphs)	graphsInFileListModel.addElement(graph); // display names of all graphs in the file
 				menu.log(filePathField.getText()+" loaded for graph import."); // write log
@@ -122,7 +135,7 @@ public class TabImportGraph extends JPanel{
 			public void actionPerformed(ActionEvent e) {
 
 				JFileChooser fileChooser = new JFileChooser(); // create file chooser...
-				fileChooser.setFileFilter(new FileNameExtensionFilter("Excel files (*.xlsx)", "xlsx")); // that selects only .xlsx files
+				fileChooser.setFileFilter(new FileNameExtensionFilter("Excel, CSV and TSV files (*.xlsx, *.csv, *.tsv)", "xlsx", "csv", "tsv")); // that selects only import files
 				int returnVal = fileChooser.showOpenDialog(menu); // open file chooser
 				if (returnVal == JFileChooser.APPROVE_OPTION) { // if file chooser confirms a file...
 					filePathField.setText(fileChooser.getSelectedFile().getAbsolutePath()); // ...write its file path in the file path text field
@@ -130,6 +143,79 @@ public class TabImportGraph extends JPanel{
 				}
 			}
 		});
+		// (3) import all selected graphs of the file at once
+		JButton importSelectedButton = new JButton("Import selected graphs");
+		importSelectedButton.addActionListener(new ActionListener() { // create button action listener
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				importGraphs(graphsInFile.getSelectedValuesList(), null); // graphs are built on first use, the window stays responsive
+			}
+		});
+		// (4) load a graph from a snapshot file
+		JButton loadSnapshotButton = new JButton("Load snapshot");
+		loadSnapshotButton.addActionListener(new ActionListener() { // create button action listener
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser fileChooser = new JFileChooser(); // create file chooser...
+				fileChooser.setFileFilter(new FileNameExtensionFilter("Graph snapshots (*.alsg)", "alsg")); // that selects only snapshots
+				if (fileChooser.showOpenDialog(menu) != JFileChooser.APPROVE_OPTION) return;
+				File file = fileChooser.getSelectedFile();
+				GraphSnapshot snapshot;
+				try {
+					snapshot = GraphSnapshot.open(file); // read only the header, the graph is built from the snapshot on first use
+				} catch (IOException exception) {
+					JOptionPane.showMessageDialog(menu, exception.getMessage(), "Import Error", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				if (menu.graphs.containsKey(snapshot.graphName)) { // make sure the graph name does not exist yet
+					JOptionPane.showMessageDialog(menu, "Graph name "+snapshot.graphName+" already exists.", "Import Error", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				menu.graphs.register(snapshot.graphName, new GraphRegistry.GraphDescriptor(snapshot));
+				updateGraphLists(Arrays.asList(snapshot.graphName));
+				menu.log(snapshot.graphName+" loaded from snapshot "+file.getName()+"."); // write log
+			}
+		});
+		// (5) save the selected imported graph as snapshot file
+		JButton saveSnapshotButton = new JButton("Save as snapshot");
+		saveSnapshotButton.addActionListener(new ActionListener() { // create button action listener
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				String graphName = importedGraphs.getSelectedValue(); // graph selected in the list of imported graphs
+				if (graphName == null) {
+					JOptionPane.showMessageDialog(menu, "Select an imported graph first.", "Export Error", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				JFileChooser fileChooser = new JFileChooser(); // create file chooser...
+				fileChooser.setFileFilter(new FileNameExtensionFilter("Graph snapshots (*.alsg)", "alsg")); // that selects only snapshots
+				fileChooser.setSelectedFile(new File(graphName+GraphSnapshot.FILE_EXTENSION));
+				if (fileChooser.showSaveDialog(menu) != JFileChooser.APPROVE_OPTION) return;
+				File file = fileChooser.getSelectedFile();
+				if (!file.getName().endsWith(GraphSnapshot.FILE_EXTENSION)) file = new File(file.getPath()+GraphSnapshot.FILE_EXTENSION);
+				try {
+					GraphSnapshot.save(menu.graphs.get(graphName), file, true); // including driving times and coverage
+					menu.log(graphName+" saved as snapshot "+file.getName()+"."); // write log
+				} catch (IOException exception) {
+					JOptionPane.showMessageDialog(menu, exception.getMessage(), "Export Error", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		});
+		// (6) create graphs from an OpenStreetMap extract with the bases and demands of a side file
+		JButton importOsmButton = new JButton("Import OpenStreetMap extract");
+		importOsmButton.addActionListener(new ActionListener() { // create button action listener
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser fileChooser = new JFileChooser(); // create file chooser...
+				fileChooser.setFileFilter(new FileNameExtensionFilter("OpenStreetMap extracts (*.osm.pbf)", "pbf")); // that selects only PBF files
+				if (fileChooser.showOpenDialog(menu) != JFileChooser.APPROVE_OPTION) return;
+				File osmFile = fileChooser.getSelectedFile();
+				fileChooser = new JFileChooser(osmFile.getParentFile()); // create file chooser for the side file...
+				fileChooser.setDialogTitle("Select the locations of bases and demands");
+				fileChooser.setFileFilter(new FileNameExtensionFilter("Excel, CSV and TSV files (*.xlsx, *.csv, *.tsv)", "xlsx", "csv", "tsv")); // that selects only import files
+				if (fileChooser.showOpenDialog(menu) != JFileChooser.APPROVE_OPTION) return;
+				importOsmGraphs(new OsmImport(osmFile.getAbsolutePath()), new ImportData(fileChooser.getSelectedFile().getAbsolutePath(), true));
+			}
+		});
 		
 		
 		// create and arrange GUI elements
@@ -143,11 +229,15 @@ public class TabImportGraph extends JPanel{
 		JPanel fileButtonPanel = new JPanel(new SpringLayout());
 		fileButtonPanel.add(loadButton);
 		fileButtonPanel.add(browseButton);
-		fileButtonPanel.add(new JPanel()); // empty space
-		fileButtonPanel.add(new JPanel()); // empty space
+		fileButtonPanel.add(loadSnapshotButton);
+		fileButtonPanel.add(saveSnapshotButton);
+		fileButtonPanel.add(fullMatrixCheckBox);
+		fileButtonPanel.add(importSelectedButton);
+		fileButtonPanel.add(importOsmButton);
+		fileButtonPanel.add(new JLabel());
 		fileButtonPanel.add(new JLabel("Graphs in loaded file"));
 		fileButtonPanel.add(new JLabel("Already imported graphs"));
-	    SpringUtilities.makeCompactGrid(fileButtonPanel, 3, 2, 6, 6, 6, 6);  // arrange elements of the panel in a 3x2 grid
+	    SpringUtilities.makeCompactGrid(fileButtonPanel, 5, 2, 6, 6, 6, 6);  // arrange elements of the panel in a 5x2 grid
 	    
 	    // (3a) panel for the table with importable and imported graphs
 		JPanel listPanel = new JPanel(new GridLayout(1,2));
@@ -168,14 +258,93 @@ public class TabImportGraph extends JPanel{
 	}
 	
 	/**
-	 * Creates a graph from the current import data file and updates the combo boxes for graph selection in all tabs.
+	 * Adds a graph of the current import data file and updates the combo boxes for graph selection in all tabs.
+	 * The graph is built from the file on first use (see {@link GraphRegistry}).
 	 * @param graphName Name of the graph to import.
 	 */
 	void importGraph(String graphName) {
-		AmbulanceGraph graph = new AmbulanceGraph(graphName, currentImportDataGraph); // create graph from the information in the import file
-		menu.graphs.put(graphName, graph); //add graph to central graph list
-		importedGraphsListModel.addElement(graphName); // add graph to the display list of all imported graphs
+		menu.graphs.register(graphName, new GraphRegistry.GraphDescriptor(currentImportDataGraph, graphName, getDrivingTimesMethod()));
+		updateGraphLists(Arrays.asList(graphName));
 		menu.log(graphName+" from "+currentImportDataGraph.file.getName()+" imported."); // write log
+	}
+	
+	/**
+	 * Adds several graphs of the current import file to the central graph list without building them:
+	 * every graph is built from the file on first use (see {@link GraphRegistry}), so the import does not block the event thread
+	 * and graphs that are evicted later can be built again from the file instead of being saved as snapshot.
+	 * @param graphNames Names of the graphs to import (graphs that have already been imported or are not in the file are skipped).
+	 * @param whenDone Called on the event thread after the graphs have been added (may be null).
+	 */
+	void importGraphs(Collection<String> graphNames, Runnable whenDone) {
+		ImportData file = currentImportDataGraph;
+		int drivingTimesMethod = getDrivingTimesMethod();
+		ArrayList<String> newGraphNames = new ArrayList<String>();
+		for (String graphName : graphNames) {
+			if (menu.graphs.containsKey(graphName) || newGraphNames.contains(graphName)) continue;
+			if (file.getRowsOfGraph(graphName).length == 0) continue; // not in the file
+			menu.graphs.register(graphName, new GraphRegistry.GraphDescriptor(file, graphName, drivingTimesMethod));
+			newGraphNames.add(graphName);
+		}
+		updateGraphLists(newGraphNames);
+		menu.log(newGraphNames.size()+" graphs from "+file.file.getName()+" imported."); // write log
+		if (whenDone != null) whenDone.run();
+	}
+	
+	/**
+	 * Creates a graph from an OpenStreetMap extract for every graph of a side file without blocking the event thread.
+	 * The road network is read only once; every graph is added to the central graph list as soon as it is built.
+	 * @param osmFile OpenStreetMap extract.
+	 * @param sideFile Locations of bases and demands per graph.
+	 */
+	void importOsmGraphs(OsmImport osmFile, ImportData sideFile) {
+		int drivingTimesMethod = getDrivingTimesMethod();
+		menu.log("Importing graphs from "+osmFile.file.getName()+" with the locations of "+sideFile.file.getName()+"..."); // write log
+		
+		// build the graphs in their own thread
+		Thread importThread = new Thread() {
+			public void run() {
+				ArrayList<String> importedGraphNames = new ArrayList<String>();
+				ArrayList<String> logEntries = new ArrayList<String>();
+				String error = null;
+				long start = System.nanoTime();
+				try {
+					for (String graphName : sideFile.getGraphNames()) {
+						if (menu.graphs.containsKey(graphName)) continue;
+						AmbulanceGraph graph = osmFile.createGraph(graphName, sideFile, drivingTimesMethod);
+						String skipped = (osmFile.numberOfSkippedLocations == 0) ? "" : ", "+osmFile.numberOfSkippedLocations+" locations skipped";
+						logEntries.add(graphName+" imported from "+osmFile.file.getName()+" ("+graph.nodes.size()+" nodes, "+graph.edgeTargets.length+" edges"+skipped+").");
+						menu.graphs.put(graphName, graph); //add graph to central graph list (may evict other graphs)
+						importedGraphNames.add(graphName);
+					}
+				} catch (IOException exception) {
+					error = exception.getMessage();
+				} catch (RuntimeException exception) { // for example invalid probabilities or missing cells in the side file
+					exception.printStackTrace();
+					error = exception.toString();
+				}
+				if (error != null) logEntries.add("Import from "+osmFile.file.getName()+" failed: "+error);
+				logEntries.add(importedGraphNames.size()+" graphs imported from "+osmFile.file.getName()+" in "+(System.nanoTime()-start)/1000000000+" s."); // including reading the road network
+				String message = error;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						updateGraphLists(importedGraphNames);
+						for (String logEntry : logEntries) menu.log(logEntry); // write log
+						if (message != null) JOptionPane.showMessageDialog(menu, message, "Import Error", JOptionPane.ERROR_MESSAGE);
+					}
+				});
+			}
+		};
+		importThread.start();
+	}
+	
+	/**
+	 * Displays new graphs in the list of imported graphs and updates the combo boxes for graph selection in all tabs.
+	 * @param graphNames Names of the new graphs.
+	 */
+	void updateGraphLists(Collection<String> graphNames) {
+		for (String graphName : graphNames) {
+			if (!importedGraphsListModel.contains(graphName)) importedGraphsListModel.addElement(graphName); // add graph to the display list of all imported graphs
+		}
 	
 		// update combo boxes for graphs in other tabs
 		menu.tabLocation.graphComboBox.removeAllItems(); // clear combo box in location tab
@@ -187,4 +356,12 @@ public class TabImportGraph extends JPanel{
 			menu.tabGraphLayout.graphComboBox.addItem(importedGraphsListModel.elementAt(i)); // add to combo box in graph layout tab	
     	}	
 	}
+	
+	/**
+	 * Reads the method for calculating the driving times of imported graphs.
+	 * @return 0=bounded Dijkstra from the bases, 2=full matrix (parallel tiled Tripel algorithm)
+	 */
+	int getDrivingTimesMethod() {
+		return fullMatrixCheckBox.isSelected() ? 2 : 0;
+	}
 }
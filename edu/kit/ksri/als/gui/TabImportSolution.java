@@ -1,18 +1,19 @@
 package edu.kit.ksri.als.gui;
 
-import edu.kit.ksri.als.ambulanceLocation.Solution;
-import edu.kit.ksri.als.dataExchange.ImportData;
+import edu.kit.ksri.als.ambulanceLocation.SolutionVector;
+import edu.kit.ksri.als.dataExchange.SolutionImport;
 import edu.kit.ksri.als.graph.AmbulanceGraph;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
 /**
  * GUI providing the means to operate the import of solutions from the Excel file output of the location problem.
@@ -27,7 +28,7 @@ public class TabImportSolution extends JPanel{
 	
 	MainFrame menu;
 
-	ImportData currentSolutionImportData;
+	SolutionImport currentSolutionImport;
 	JTextField filePathFieldGraph;
 	
 	public TabImportSolution(MainFrame menu) {
@@ -49,10 +50,10 @@ public class TabImportSolution extends JPanel{
 			@Override
 			public void actionPerformed(ActionEvent e) {
 				
-				currentSolutionImportData = new ImportData(filePathFieldSolution.getText());
+				currentSolutionImport = new SolutionImport(filePathFieldSolution.getText());
 				sheetComboBox.removeAllItems();
-				for (int i = 0; i < currentSolutionImportData.workbook.getNumberOfSheets(); i++) {
-					sheetComboBox.addItem(currentSolutionImportData.workbook.getSheetName(i));
+				for (String sheetName : currentSolutionImport.getSheetNames()) {
+					sheetComboBox.addItem(sheetName);
 				}
 				menu.log(filePathFieldSolution.getText()+" loaded for solution import.");
 			}
@@ -79,60 +80,69 @@ public class TabImportSolution extends JPanel{
 			public void actionPerformed(ActionEvent e) {
 				// import solutions...
 
-				// read from Excel
-				XSSFSheet sheet = currentSolutionImportData.workbook.getSheet((String) sheetComboBox.getSelectedItem()); //get selected sheet of the Excel file
-				Iterator<Row> rowIterator = sheet.iterator(); //create sheet iterator
-				rowIterator.next(); //skip first row (which is the title row)
-				
 				// parse column numbers: text field is 1-based, int values are 0-based
 				int columnGraph = Integer.parseInt(columnGraphTextField.getText()) - 1;
 				int columnSolution = Integer.parseInt(columnSolutionTextField.getText()) - 1;
-				
-				int successCounter = 0;
-				int failCounterGraph = 0;
-				int failCounterSolution = 0;
-				
-				while(rowIterator.hasNext()) { //iterate through all rows of the Excel file (one row contains information about one node)		
+				String sheetName = (String) sheetComboBox.getSelectedItem();
+				SolutionImport solutionImport = currentSolutionImport;
+				importSolutionsButton.setEnabled(false);
 
-					Row row = rowIterator.next();			
-					String graphName = row.getCell(columnGraph).getStringCellValue(); // read graph name
-					System.out.println(graphName);
-					AmbulanceGraph graph = menu.graphs.get(graphName);
-					if (graph == null) { // if graph not yet created
-						// create graph
-						menu.tabImportGraph.importGraph(graphName);
-						graph = menu.graphs.get(graphName);
-						if (graph == null) { // if graph could not be created
-							failCounterGraph++;
-							continue; // read next line
-						}						
-					}
-					
-					String solutionStr = row.getCell(columnSolution).getStringCellValue();
-					Solution solution = menu.tabAssignment.parseSolution(solutionStr);
-					System.out.println(solutionStr);
-
-					// check solution format (number of bases must be the same)
-					if (solution.z.length == graph.bases.size()) {
-						// save solution
-						if (menu.tabAssignment.solutions.containsKey(graphName)) {
-							menu.tabAssignment.solutions.get(graphName).add(solutionStr);
-						}
-						else {
-							menu.tabAssignment.solutions.put(graphName, new HashSet<String>(Arrays.asList(solutionStr)));
+				// read the sheet in the background (row by row, only the parsed solutions are kept),
+				// then add the graphs that have not been imported yet, look up their numbers of bases in the background and save the solutions;
+				// the button is enabled again on every path, also if one of the steps fails
+				Thread importThread = new Thread() {
+					public void run() {
+						LinkedHashMap<String,LinkedHashSet<SolutionVector>> solutions;
+						try {
+							solutions = solutionImport.read(sheetName, columnGraph, columnSolution);
+						} catch (IOException exception) {
+							importFailed(importSolutionsButton, exception.getMessage());
+							return;
+						} catch (RuntimeException exception) {
+							exception.printStackTrace();
+							importFailed(importSolutionsButton, exception.toString());
+							return;
 						}
-						successCounter++;
+						SwingUtilities.invokeLater(new Runnable() {
+							public void run() {
+								try {
+									menu.tabImportGraph.importGraphs(solutions.keySet(), new Runnable() {
+										public void run() {
+											// look up the numbers of bases in the background (graphs are built on first use)
+											Thread checkThread = new Thread() {
+												public void run() {
+													HashMap<String,Integer> numberOfBases;
+													try {
+														numberOfBases = getNumberOfBases(solutions.keySet());
+													} catch (RuntimeException exception) {
+														exception.printStackTrace();
+														importFailed(importSolutionsButton, exception.toString());
+														return;
+													}
+													SwingUtilities.invokeLater(new Runnable() {
+														public void run() {
+															try {
+																saveSolutions(solutionImport, solutions, numberOfBases);
+															} finally {
+																importSolutionsButton.setEnabled(true);
+															}
+														}
+													});
+												}
+											};
+											checkThread.start();
+										}
+									});
+								} catch (RuntimeException exception) {
+									exception.printStackTrace();
+									importSolutionsButton.setEnabled(true);
+									JOptionPane.showMessageDialog(menu, exception.toString(), "Import Error", JOptionPane.ERROR_MESSAGE);
+								}
+							}
+						});
 					}
-					else { // if solution format wrong
-						failCounterSolution++;
-						continue;						
-					}					
-				}
-				menu.tabAssignment.updateGraphComboBox();
-				String message = successCounter+" solutions imported successfully.";
-				message += "\n"+failCounterGraph+" solutions failed because of graph.";
-				message += "\n"+failCounterSolution+" solutions failed because of solution format.";
-				JOptionPane.showMessageDialog(menu, message, "Import Solutions", JOptionPane.INFORMATION_MESSAGE);
+				};
+				importThread.start();
 			}
 		});
 		
@@ -175,4 +185,80 @@ public class TabImportSolution extends JPanel{
 		this.add(mainPanel);
 			
 	}
+	
+	/**
+	 * Shows why an import of solutions failed and enables the import button again (on the event thread).
+	 * @param importSolutionsButton
+	 * @param message
+	 */
+	void importFailed(JButton importSolutionsButton, String message) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				importSolutionsButton.setEnabled(true);
+				JOptionPane.showMessageDialog(menu, message, "Import Error", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+	
+	/**
+	 * Reads the number of bases of graphs. Graphs that have been evicted are built again, so this is not called on the event thread.
+	 * @param graphNames
+	 * @return Number of bases per graph name (graphs that do not exist or cannot be built are missing).
+	 */
+	HashMap<String,Integer> getNumberOfBases(Collection<String> graphNames) {
+		HashMap<String,Integer> numberOfBases = new HashMap<String,Integer>();
+		for (String graphName : graphNames) {
+			AmbulanceGraph graph = menu.graphs.get(graphName);
+			if (graph != null) numberOfBases.put(graphName, graph.bases.size());
+		}
+		return numberOfBases;
+	}
+	
+	/**
+	 * Saves imported solutions for the assignment if their graph exists and their number of bases matches the graph.
+	 * Solutions that are already available for the assignment are not added again.
+	 * @param solutionImport Import the solutions have been read with (for the numbers of duplicate and invalid rows).
+	 * @param solutions Distinct solutions per graph name.
+	 * @param numberOfBases Number of bases per graph name (see {@link #getNumberOfBases(Collection)}).
+	 */
+	void saveSolutions(SolutionImport solutionImport, LinkedHashMap<String,LinkedHashSet<SolutionVector>> solutions, HashMap<String,Integer> numberOfBases) {
+		int successCounter = 0;
+		int failCounterGraph = 0;
+		int failCounterSolution = solutionImport.numberOfInvalidRows;
+		int duplicateCounter = solutionImport.numberOfDuplicates;
+		
+		for (Map.Entry<String,LinkedHashSet<SolutionVector>> entry : solutions.entrySet()) {
+			String graphName = entry.getKey();
+			Integer numberOfBasesOfGraph = numberOfBases.get(graphName);
+			if (numberOfBasesOfGraph == null) { // if graph could not be created
+				failCounterGraph += entry.getValue().size();
+				continue; // read solutions of next graph
+			}
+			
+			LinkedHashSet<SolutionVector> solutionsOfGraph = menu.tabAssignment.solutions.get(graphName);
+			if (solutionsOfGraph == null) {
+				solutionsOfGraph = new LinkedHashSet<SolutionVector>();
+				menu.tabAssignment.solutions.put(graphName, solutionsOfGraph);
+			}
+			for (SolutionVector solution : entry.getValue()) {
+				// check solution format (number of bases must be the same)
+				if (solution.z.length != numberOfBasesOfGraph) {
+					failCounterSolution++;
+				}
+				else if (solutionsOfGraph.add(solution)) { // save solution
+					successCounter++;
+				}
+				else { // already available for the assignment
+					duplicateCounter++;
+				}
+			}
+			if (solutionsOfGraph.isEmpty()) menu.tabAssignment.solutions.remove(graphName);
+		}
+		menu.tabAssignment.updateGraphComboBox();
+		String message = successCounter+" solutions imported successfully.";
+		message += "\n"+failCounterGraph+" solutions failed because of graph.";
+		message += "\n"+failCounterSolution+" solutions failed because of solution format.";
+		message += "\n"+duplicateCounter+" solutions skipped because they were duplicates.";
+		JOptionPane.showMessageDialog(menu, message, "Import Solutions", JOptionPane.INFORMATION_MESSAGE);
+	}
 }
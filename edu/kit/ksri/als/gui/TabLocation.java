@@ -3,12 +3,12 @@ package edu.kit.ksri.als.gui;
 
 import edu.kit.ksri.als.ambulanceLocation.ProblemLocation;
 import edu.kit.ksri.als.ambulanceLocation.Solution;
+import edu.kit.ksri.als.ambulanceLocation.SolutionVector;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.TreeSet;
 
 /**
@@ -27,6 +27,8 @@ public class TabLocation extends JPanel{
 	JComboBox<String> graphComboBox;
 	JTextField betaField, mField, nField, alphaField, baseSeedField;
 	JCheckBox iterateCheckBox;
+	JCheckBox mergeScenariosCheckBox; // dis-/enables merging identical demand scenarios of a sample (probabilities are added up)
+	JComboBox<String> samplingMethodComboBox; // selected index is the sampling method: 0=alias tables, 1=linear search through the cumulative probabilities (legacy)
 	
 	// parameter input sets (the combination of these sets makes up the batch)
 	TreeSet<String> graphSet = new TreeSet<String>();
@@ -55,6 +57,9 @@ public class TabLocation extends JPanel{
 	    alphaField = new JTextField("0.99", 4);
 	    baseSeedField = new JTextField("1", 4);	
 		iterateCheckBox = new JCheckBox("", false); // dis-/enables the batch execution of all imported graphs
+		mergeScenariosCheckBox = new JCheckBox("", false); // dis-/enables merging identical demand scenarios
+		samplingMethodComboBox = new JComboBox<String>(new String[]{"alias tables","linear search (legacy)"});
+		samplingMethodComboBox.setSelectedIndex(1); // legacy method by default: same samples as before for the same base seed
 
 		// (2) output interfaces
 		JCheckBox makeAvailableForAssignmentCheckBox = new JCheckBox("Make Solution Available for Assignment", true);
@@ -78,10 +83,15 @@ public class TabLocation extends JPanel{
 							
 							// create problem
 							menu.log("Solving "+graph+" (beta="+beta+",alpha="+alpha+") optimally..."); // write log						
-							ProblemLocation problem = new ProblemLocation(menu.graphs.get(graph), beta, alpha); //create problem for the given input
-							
-							// solve problem and write output
-							solveAndWriteOutput(problem);
+							ProblemLocation problem;
+							try {
+								problem = new ProblemLocation(menu.graphs.acquire(graph), beta, alpha); //create problem for the given input (the graph is not evicted meanwhile)
+								
+								// solve problem and write output
+								solveAndWriteOutput(problem);
+							} finally {
+								menu.graphs.release(graph);
+							}
 							
 							// make solution available for assignment process
 							if (makeAvailableForAssignmentCheckBox.isSelected()) {
@@ -115,10 +125,15 @@ public class TabLocation extends JPanel{
 				    		
 							// create problem
 				    		menu.log("Solving "+graph+" (beta="+beta+",m="+m+",n="+n+",base seed="+baseSeed+",alpha="+alpha+") with sampling method...");
-				    		ProblemLocation problem = new ProblemLocation(menu.graphs.get(graph),beta,m,n,baseSeed,alpha);
+				    		ProblemLocation problem;
+				    		try {
+				    			problem = new ProblemLocation(menu.graphs.acquire(graph),beta,m,n,baseSeed,alpha,samplingMethodComboBox.getSelectedIndex(),mergeScenariosCheckBox.isSelected()); // the graph is not evicted meanwhile
 
-				    		// solve problem and write output
-				    		solveAndWriteOutput(problem);
+				    			// solve problem and write output
+				    			solveAndWriteOutput(problem);
+				    		} finally {
+				    			menu.graphs.release(graph);
+				    		}
 				    		
 				    		// make solution available for assignment process
 				    		if (makeAvailableForAssignmentCheckBox.isSelected()) {
@@ -143,7 +158,7 @@ public class TabLocation extends JPanel{
 			public void actionPerformed(ActionEvent e) {
 				alphaSet = menu.parseTextFieldsDouble(alphaField); // read alphas
 				for (double alpha : alphaSet) {	// for all alphas
-					menu.currentExportData.write(menu.graphs.get(graphComboBox.getSelectedItem()).exportBounds(alpha), menu.currentExportPrefix+"_graph_bounds"); // write graph bound
+					menu.currentExportData.write(menu.graphs.get((String) graphComboBox.getSelectedItem()).exportBounds(alpha), menu.currentExportPrefix+"_graph_bounds"); // write graph bound
 					menu.log("Bounds of "+graphComboBox.getSelectedItem()+" (alpha="+alpha+") written in "+menu.currentExportData.fileName+"\\"+menu.currentExportPrefix+"_graph_bounds"+"."); // write log
 				}
 			}
@@ -172,7 +187,11 @@ public class TabLocation extends JPanel{
 	    inputFieldsPanel.add(betaField);
 	    inputFieldsPanel.add(new JLabel("iterate all graphs"));
 	    inputFieldsPanel.add(iterateCheckBox);
-	    SpringUtilities.makeCompactGrid(inputFieldsPanel, 3, 4, 6, 6, 6, 6); // arrange elements in 3x4 grid
+	    inputFieldsPanel.add(new JLabel("<html>merge identical<br>scenarios</html>"));
+	    inputFieldsPanel.add(mergeScenariosCheckBox);
+	    inputFieldsPanel.add(new JLabel("<html>demand<br>sampling</html>"));
+	    inputFieldsPanel.add(samplingMethodComboBox);
+	    SpringUtilities.makeCompactGrid(inputFieldsPanel, 4, 4, 6, 6, 6, 6); // arrange elements in 4x4 grid
 
 	    // (3) panel for entering output settings and starting the solving process
 	    JPanel solveButtonsPanel = new JPanel(new SpringLayout());
@@ -252,9 +271,9 @@ public class TabLocation extends JPanel{
 	 */
 	void saveSolutionForAssignment(String graph, Solution solution) {
 		if (menu.tabAssignment.solutions.get(graph) == null) { //if no entry for this graph yet
-			menu.tabAssignment.solutions.put(graph, new HashSet<String>()); //create entry
+			menu.tabAssignment.solutions.put(graph, new LinkedHashSet<SolutionVector>()); //create entry
 		}
-		menu.tabAssignment.solutions.get(graph).add(Arrays.toString(solution.z)); //add solution
+		menu.tabAssignment.solutions.get(graph).add(new SolutionVector(solution.z)); //add solution (identical solutions are stored once)
 		menu.tabAssignment.updateGraphComboBox();
 	}
 	